@@ -0,0 +1,114 @@
+package streamhics_contrast;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import fullsystem.Contrast;
+import statisticaltests.KolmogorovSmirnov;
+import statisticaltests.StatisticalTest;
+import streamdatastructures.DataBundle;
+import streamdatastructures.SlidingWindowAdapter;
+import streamdatastructures.SummarisationAdapter;
+import subspace.Subspace;
+import weka.core.DenseInstance;
+
+/**
+ * Measures the bytes allocated per contrast evaluation. The allocating path
+ * (projected and sliced {@link DataBundle}s per Monte Carlo iteration) is
+ * compared to the evaluation working on the reusable scratch arenas. Run as a
+ * main class, it is not part of the unit tests.
+ *
+ * @author agent
+ *
+ */
+public class AllocationBenchmark {
+
+	private static final int numInstances = 2000;
+	private static final int numberOfDimensions = 5;
+	private static final int m = 100;
+	private static final double alpha = 0.1;
+	private static final int warmUp = 20;
+	private static final int runs = 100;
+
+	private static SummarisationAdapter adapter;
+	private static Contrast contrastEvaluator;
+	private static Subspace subspace;
+	private static com.sun.management.ThreadMXBean threadBean;
+
+	/**
+	 * Runs the benchmark and prints the bytes per evaluation.
+	 * 
+	 * @param args
+	 *            Command-line arguments, not used
+	 */
+	public static void main(String[] args) {
+		setUp();
+		allocationPerEvaluation();
+	}
+
+	/**
+	 * Fills a {@link SlidingWindowAdapter} with correlated instances.
+	 */
+	private static void setUp() {
+		adapter = new SlidingWindowAdapter(numberOfDimensions, numInstances);
+		Random generator = new Random(1);
+		for (int i = 0; i < numInstances; i++) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			double x = generator.nextGaussian();
+			for (int j = 0; j < numberOfDimensions; j++) {
+				instance.setValue(j, x + 0.3 * generator.nextGaussian());
+			}
+			adapter.add(instance);
+		}
+		contrastEvaluator = new Contrast(m, alpha, adapter);
+		contrastEvaluator.setSeed(1);
+		subspace = new Subspace(0, 1, 2);
+		threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	}
+
+	/**
+	 * Measures both paths and prints their bytes per evaluation.
+	 */
+	private static void allocationPerEvaluation() {
+		final int[] dimensions = subspace.getDimensions();
+		final StatisticalTest statisticalTest = new KolmogorovSmirnov();
+		final Random generator = new Random(1);
+		Runnable before = new Runnable() {
+			@Override
+			public void run() {
+				double selectionAlpha = Math.pow(alpha, 1.0 / (dimensions.length - 1));
+				for (int i = 0; i < m; i++) {
+					DataBundle projectedData = adapter.getProjectedData(dimensions[dimensions.length - 1]);
+					DataBundle slicedData = adapter.getSlicedData(dimensions, selectionAlpha, generator);
+					statisticalTest.calculateWeightedDeviation(projectedData, slicedData);
+				}
+			}
+		};
+		Runnable after = new Runnable() {
+			@Override
+			public void run() {
+				contrastEvaluator.evaluateSubspaceContrast(subspace);
+			}
+		};
+
+		double bytesBefore = measure(before);
+		double bytesAfter = measure(after);
+		System.out.println("Bytes per evaluation before: " + bytesBefore + ", after: " + bytesAfter);
+	}
+
+	/**
+	 * Returns the mean number of bytes allocated by the current thread per
+	 * run of the evaluation.
+	 */
+	private static double measure(Runnable evaluation) {
+		long threadId = Thread.currentThread().getId();
+		for (int i = 0; i < warmUp; i++) {
+			evaluation.run();
+		}
+		long start = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < runs; i++) {
+			evaluation.run();
+		}
+		return (threadBean.getThreadAllocatedBytes(threadId) - start) / (double) runs;
+	}
+}
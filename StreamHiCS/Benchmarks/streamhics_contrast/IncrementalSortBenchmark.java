@@ -0,0 +1,118 @@
+package streamhics_contrast;
+
+import java.util.Random;
+
+import streamdatastructures.MCAdapter;
+import streamdatastructures.Snapshot;
+import streamdatastructures.SummarisationAdapter;
+import weka.core.DenseInstance;
+
+/**
+ * Compares the time to sort the marginals of a {@link Snapshot} when the
+ * sorted orders of the previous {@link Snapshot} are repaired and when every
+ * column is sorted from scratch. Between two snapshots a few instances arrive,
+ * which move a few of the micro-clusters. Run as a main class, it is not part
+ * of the unit tests.
+ *
+ * @author agent
+ *
+ */
+public class IncrementalSortBenchmark {
+
+	private static final int[] numbersOfElements = { 1000, 2500, 5000, 10000 };
+	private static final int numberOfDimensions = 10;
+	private static final int checkInterval = 100;
+	private static final double radius = 0.05;
+	private static final int warmUp = 5;
+	private static final int rounds = 20;
+
+	/**
+	 * Runs the benchmark and prints the times per snapshot.
+	 * 
+	 * @param args
+	 *            Command-line arguments, not used
+	 */
+	public static void main(String[] args) {
+		for (int numberOfElements : numbersOfElements) {
+			SummarisationAdapter incremental = createAdapter(numberOfElements);
+			SummarisationAdapter full = createAdapter(numberOfElements);
+			incremental.setIncrementalSorting(true);
+			full.setIncrementalSorting(false);
+			double[][] seeds = createSeeds(numberOfElements);
+			Random generator = new Random(2);
+			double incrementalTime = 0;
+			double fullTime = 0;
+			for (int round = 0; round < warmUp + rounds; round++) {
+				for (int i = 0; i < checkInterval; i++) {
+					DenseInstance instance = createInstance(seeds[generator.nextInt(numberOfElements)], generator);
+					incremental.add(instance);
+					full.add(instance);
+				}
+				long start = System.nanoTime();
+				sortMarginals(incremental);
+				long middle = System.nanoTime();
+				sortMarginals(full);
+				long end = System.nanoTime();
+				if (round >= warmUp) {
+					incrementalTime += (middle - start) / 1000000.0;
+					fullTime += (end - middle) / 1000000.0;
+				}
+			}
+			System.out.println("n = " + numberOfElements + ": repaired " + incrementalTime / rounds + " ms, sorted "
+					+ fullTime / rounds + " ms per snapshot, " + incremental.getNumberOfRepairedSorts() + " of "
+					+ (warmUp + rounds) * numberOfDimensions + " columns repaired");
+		}
+	}
+
+	/**
+	 * Creates an {@link MCAdapter} holding one micro-cluster for every seed.
+	 */
+	private static SummarisationAdapter createAdapter(int numberOfElements) {
+		SummarisationAdapter adapter = new MCAdapter(1000000, radius, 0.1, "adapting");
+		for (double[] seed : createSeeds(numberOfElements)) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			for (int j = 0; j < numberOfDimensions; j++) {
+				instance.setValue(j, seed[j]);
+			}
+			adapter.add(instance);
+		}
+		return adapter;
+	}
+
+	/**
+	 * Creates uniformly distributed seeds, which are far apart from each other
+	 * compared to the radius.
+	 */
+	private static double[][] createSeeds(int numberOfElements) {
+		Random generator = new Random(1);
+		double[][] seeds = new double[numberOfElements][numberOfDimensions];
+		for (int i = 0; i < numberOfElements; i++) {
+			for (int j = 0; j < numberOfDimensions; j++) {
+				seeds[i][j] = generator.nextDouble();
+			}
+		}
+		return seeds;
+	}
+
+	/**
+	 * Creates an instance close to the given seed, so that it is absorbed by
+	 * the micro-cluster of the seed.
+	 */
+	private static DenseInstance createInstance(double[] seed, Random generator) {
+		DenseInstance instance = new DenseInstance(numberOfDimensions);
+		for (int j = 0; j < numberOfDimensions; j++) {
+			instance.setValue(j, seed[j] + 0.005 * generator.nextGaussian());
+		}
+		return instance;
+	}
+
+	/**
+	 * Takes a {@link Snapshot} and sorts all its marginals.
+	 */
+	private static void sortMarginals(SummarisationAdapter adapter) {
+		Snapshot snapshot = adapter.getSnapshot();
+		for (int dim = 0; dim < numberOfDimensions; dim++) {
+			snapshot.getMarginal(dim);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package streamhics_contrast;
+
+import java.util.Random;
+
+import fullsystem.Contrast;
+import streamdatastructures.SlidingWindowAdapter;
+import streamdatastructures.SummarisationAdapter;
+import streamdatastructures.SummarisationAdapter.SlicingMethod;
+import subspace.Subspace;
+import weka.core.DenseInstance;
+
+/**
+ * Compares the time per contrast evaluation of the {@link SlicingMethod}s for
+ * data of 10 to 200 dimensions. The full space and a three dimensional
+ * {@link Subspace} are evaluated. Run as a main class, it is not part of the
+ * unit tests.
+ *
+ * @author agent
+ *
+ */
+public class SlicingBenchmark {
+
+	private static final int numInstances = 2000;
+	private static final int[] numbersOfDimensions = { 10, 25, 50, 100, 200 };
+	private static final int m = 50;
+	private static final double alpha = 0.1;
+	private static final int warmUp = 3;
+	private static final int runs = 10;
+
+	/**
+	 * Runs the benchmark and prints the times per evaluation.
+	 * 
+	 * @param args
+	 *            Command-line arguments, not used
+	 */
+	public static void main(String[] args) {
+		for (int numberOfDimensions : numbersOfDimensions) {
+			int[] all = new int[numberOfDimensions];
+			for (int i = 0; i < numberOfDimensions; i++) {
+				all[i] = i;
+			}
+			Subspace fullSpace = new Subspace(all);
+			Subspace subspace = new Subspace(0, 1, 2);
+			for (SlicingMethod slicingMethod : SlicingMethod.values()) {
+				SummarisationAdapter adapter = createAdapter(numberOfDimensions);
+				adapter.setSlicingMethod(slicingMethod);
+				Contrast contrastEvaluator = new Contrast(m, alpha, adapter);
+				contrastEvaluator.setSeed(1);
+				double fullSpaceTime = measure(contrastEvaluator, fullSpace);
+				double subspaceTime = measure(contrastEvaluator, subspace);
+				System.out.println("d = " + numberOfDimensions + ", " + slicingMethod + ": full space "
+						+ fullSpaceTime + " ms, " + subspace + " " + subspaceTime + " ms");
+			}
+		}
+	}
+
+	/**
+	 * Creates a {@link SlidingWindowAdapter} where the first three dimensions
+	 * are correlated and the others are independent.
+	 */
+	private static SummarisationAdapter createAdapter(int numberOfDimensions) {
+		SummarisationAdapter adapter = new SlidingWindowAdapter(numberOfDimensions, numInstances);
+		Random generator = new Random(1);
+		for (int i = 0; i < numInstances; i++) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			double x = generator.nextGaussian();
+			for (int j = 0; j < numberOfDimensions; j++) {
+				if (j < 3) {
+					instance.setValue(j, x + 0.3 * generator.nextGaussian());
+				} else {
+					instance.setValue(j, generator.nextGaussian());
+				}
+			}
+			adapter.add(instance);
+		}
+		return adapter;
+	}
+
+	/**
+	 * Returns the mean time per evaluation of the {@link Subspace} in
+	 * milliseconds.
+	 */
+	private static double measure(Contrast contrastEvaluator, Subspace subspace) {
+		for (int i = 0; i < warmUp; i++) {
+			contrastEvaluator.evaluateSubspaceContrast(subspace);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			contrastEvaluator.evaluateSubspaceContrast(subspace);
+		}
+		return (System.nanoTime() - start) / 1000000.0 / runs;
+	}
+}
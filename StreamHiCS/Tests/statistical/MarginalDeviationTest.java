@@ -0,0 +1,86 @@
+package statistical;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import statisticaltests.KolmogorovSmirnov;
+import streamdatastructures.DataBundle;
+
+/**
+ * Compares the deviation of a sample to a presorted marginal
+ * {@link DataBundle} with its cached cumulative weights to the weighted
+ * Kolmogorov-Smirnov statistic calculated from unsorted copies.
+ * 
+ * @author agent
+ *
+ */
+public class MarginalDeviationTest {
+
+	private KolmogorovSmirnov statTest = new KolmogorovSmirnov();
+	private Random generator = new Random(1);
+
+	@Test
+	public void distinctValues() {
+		for (int r = 0; r < 20; r++) {
+			compare(createBundle(500, 0, 0), createBundle(40, 0.3, 0));
+		}
+	}
+
+	@Test
+	public void tiedValues() {
+		for (int r = 0; r < 20; r++) {
+			compare(createBundle(500, 0, 3), createBundle(40, 0.3, 3));
+		}
+	}
+
+	@Test
+	public void cumulativeWeights() {
+		DataBundle marginal = createBundle(500, 0, 3);
+		marginal.sort();
+		double[] weights = marginal.getSortedWeights();
+		double[] cdf = marginal.getSortedCumulativeWeights();
+		double total = 0;
+		for (double weight : weights) {
+			total += weight;
+		}
+		double sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			sum += weights[i];
+			assertEquals(sum / total, cdf[i], 1e-12);
+		}
+		assertEquals(1, cdf[cdf.length - 1], 0);
+	}
+
+	/**
+	 * Asserts that the presorted and the plain calculation agree. The plain
+	 * calculation works on copies, since it may reorder its input.
+	 */
+	private void compare(DataBundle marginal, DataBundle sample) {
+		DataBundle marginalCopy = new DataBundle(marginal.getData().clone(), marginal.getWeights().clone());
+		DataBundle sampleCopy = new DataBundle(sample.getData().clone(), sample.getWeights().clone());
+		double expected = statTest.calculateWeightedDeviation(marginalCopy, sampleCopy);
+		marginal.sort();
+		assertEquals(expected, statTest.calculateWeightedDeviationToMarginal(marginal, sample), 1e-12);
+	}
+
+	/**
+	 * Creates a {@link DataBundle} with random weights. The values are shifted
+	 * by the given amount and rounded to multiples of 1 / resolution if the
+	 * resolution is positive.
+	 */
+	private DataBundle createBundle(int size, double shift, int resolution) {
+		double[] data = new double[size];
+		double[] weights = new double[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = generator.nextGaussian() + shift;
+			if (resolution > 0) {
+				data[i] = Math.round(resolution * data[i]) / (double) resolution;
+			}
+			weights[i] = 0.1 + generator.nextDouble();
+		}
+		return new DataBundle(data, weights);
+	}
+}
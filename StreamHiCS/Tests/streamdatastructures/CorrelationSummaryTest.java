@@ -0,0 +1,309 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.core.DenseInstance;
+
+/**
+ * Tests the {@link CorrelationSummary}.
+ *
+ * @author agent
+ *
+ */
+public class CorrelationSummaryTest {
+
+	@Test
+	public void candidateIndex() {
+		checkCandidateIndex(60);
+	}
+
+	@Test
+	public void candidateIndexSeveralColumnBlocks() {
+		// More dimensions than a column block of the batch update
+		checkCandidateIndex(600);
+	}
+
+	@Test
+	public void globalScale() {
+		// Long horizon without rescaling and short horizon rescaling the sums
+		// every ~100 instances
+		for (int horizon : new int[] { 1000, 10 }) {
+			CorrelationSummary summary = new CorrelationSummary(20, horizon);
+			FadedSummary faded = new FadedSummary(20, horizon);
+			Random generator = new Random(2);
+			for (int t = 0; t < 3000; t++) {
+				DenseInstance instance = createInstance(20, t, generator);
+				summary.addInstance(instance);
+				faded.addInstance(instance);
+				if (t % 250 == 249) {
+					for (int i = 0; i < 20; i++) {
+						for (int j = i + 1; j < 20; j++) {
+							assertEquals(faded.calculateCorrelation(i, j), summary.calculateCorrelation(i, j), 1e-12);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void batches() {
+		// The products of the batched update are added in the same order as
+		// the ones of the reference, so the coefficients are bitwise equal
+		// for every batch size, also when reading in the middle of a batch
+		// and across rescalings
+		int numberOfDimensions = 300;
+		for (int horizon : new int[] { 1000, 10 }) {
+			ScaledSummary reference = new ScaledSummary(numberOfDimensions, horizon);
+			CorrelationSummary[] summaries = new CorrelationSummary[] {
+					new CorrelationSummary(numberOfDimensions, horizon, 1),
+					new CorrelationSummary(numberOfDimensions, horizon, 7),
+					new CorrelationSummary(numberOfDimensions, horizon, 64) };
+			Random generator = new Random(3);
+			for (int t = 0; t < 1000; t++) {
+				DenseInstance instance = createInstance(numberOfDimensions, t, generator);
+				reference.addInstance(instance);
+				for (CorrelationSummary summary : summaries) {
+					summary.addInstance(instance);
+				}
+				if (t % 97 == 96) {
+					for (CorrelationSummary summary : summaries) {
+						assertMatrix(reference, summary.getCorrelationMatrix());
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void matrixExport() {
+		int numberOfDimensions = 300;
+		ScaledSummary reference = new ScaledSummary(numberOfDimensions, 1000);
+		CorrelationSummary summary = new CorrelationSummary(numberOfDimensions, 1000);
+		Random generator = new Random(4);
+		double[][] reused = null;
+		for (int t = 0; t < 2000; t++) {
+			DenseInstance instance = createInstance(numberOfDimensions, t, generator);
+			reference.addInstance(instance);
+			summary.addInstance(instance);
+			if (t % 500 == 499) {
+				summary.setParallelism(1);
+				double[][] sequential = summary.getCorrelationMatrix();
+				assertMatrix(reference, sequential);
+				summary.setParallelism(4);
+				double[][] parallel = summary.getCorrelationMatrix(reused);
+				if (reused != null) {
+					assertSame(reused, parallel);
+				}
+				reused = parallel;
+				for (int i = 0; i < numberOfDimensions; i++) {
+					assertArrayEquals(sequential[i], parallel[i], 0);
+					for (int j = i + 1; j < numberOfDimensions; j++) {
+						assertEquals(sequential[i][j], summary.calculateCorrelation(i, j), 0);
+						assertEquals(sequential[i][j], summary.calculateCorrelation(j, i), 0);
+					}
+				}
+			}
+		}
+		// A matrix of the wrong size is not reused
+		double[][] wrongSize = new double[numberOfDimensions - 1][numberOfDimensions - 1];
+		assertNotSame(wrongSize, summary.getCorrelationMatrix(wrongSize));
+		summary.setParallelism(1);
+	}
+
+	/**
+	 * Reads the candidate index after every few batches and compares it to
+	 * the pairs found by calculating all coefficients, while the threshold,
+	 * the maximal number of candidates and the data change.
+	 */
+	private void checkCandidateIndex(int numberOfDimensions) {
+		CorrelationSummary summary = new CorrelationSummary(numberOfDimensions, 1000);
+		summary.setCandidateThreshold(0.3);
+		Random generator = new Random(1);
+		for (int t = 0; t < 6000; t++) {
+			summary.addInstance(createInstance(numberOfDimensions, t, generator));
+			if (t % 500 == 499) {
+				if (t == 1999) {
+					summary.requireCandidateThreshold(0.1);
+				} else if (t == 2999) {
+					summary.setMaximumNumberOfCandidates(7);
+				} else if (t == 3999) {
+					summary.clear();
+				}
+				assertCandidates(summary);
+			}
+		}
+	}
+
+	/**
+	 * Creates an instance in which the dimensions 0 to 4 are correlated, and
+	 * from time 2500 on also the dimensions 5 to 8.
+	 */
+	private DenseInstance createInstance(int numberOfDimensions, int t, Random generator) {
+		DenseInstance instance = new DenseInstance(numberOfDimensions);
+		double x = generator.nextGaussian();
+		double y = generator.nextGaussian();
+		for (int j = 0; j < numberOfDimensions; j++) {
+			if (j < 5) {
+				instance.setValue(j, x + 0.5 * generator.nextGaussian());
+			} else if (j < 9 && t >= 2500) {
+				instance.setValue(j, y + generator.nextGaussian());
+			} else {
+				instance.setValue(j, generator.nextGaussian());
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Asserts that the matrix is symmetric with a diagonal of 0 and bitwise
+	 * equal to the coefficients of the reference.
+	 */
+	private void assertMatrix(ScaledSummary reference, double[][] matrix) {
+		int numberOfDimensions = matrix.length;
+		for (int i = 0; i < numberOfDimensions; i++) {
+			assertEquals(0, matrix[i][i], 0);
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				assertEquals(reference.calculateCorrelation(i, j), matrix[i][j], 0);
+				assertEquals(matrix[i][j], matrix[j][i], 0);
+			}
+		}
+	}
+
+	/**
+	 * Asserts that the candidate index contains exactly the pairs reaching the
+	 * threshold, or the ones with the highest coefficients among them, in the
+	 * order of the pairs and with the coefficients of
+	 * {@link CorrelationSummary#calculateCorrelation(int, int)}.
+	 */
+	private void assertCandidates(CorrelationSummary summary) {
+		int numberOfDimensions = summary.getNumberOfDimensions();
+		double threshold = summary.getCandidateThreshold();
+		ArrayList<double[]> expected = new ArrayList<double[]>();
+		for (int i = 0; i < numberOfDimensions; i++) {
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				double coefficient = summary.calculateCorrelation(i, j);
+				if (coefficient >= threshold) {
+					expected.add(new double[] { i, j, coefficient });
+				}
+			}
+		}
+		// Drop the lowest coefficients, the last one of equal coefficients
+		// first
+		while (expected.size() > summary.getMaximumNumberOfCandidates()) {
+			int lowest = 0;
+			for (int c = 1; c < expected.size(); c++) {
+				if (expected.get(c)[2] <= expected.get(lowest)[2]) {
+					lowest = c;
+				}
+			}
+			expected.remove(lowest);
+		}
+		assertEquals(expected.size(), summary.getNumberOfCandidates());
+		for (int c = 0; c < expected.size(); c++) {
+			assertEquals((int) expected.get(c)[0], summary.getCandidateFirstDimension(c));
+			assertEquals((int) expected.get(c)[1], summary.getCandidateSecondDimension(c));
+			assertEquals(expected.get(c)[2], summary.getCandidateCoefficient(c), 0);
+		}
+	}
+
+	/**
+	 * The summary as it was before the global scale: all sums are faded with
+	 * every instance, which is added with a weight of 1.
+	 */
+	private static class FadedSummary {
+
+		private double n;
+		private double[] linearSums;
+		private double[] squaredSums;
+		private double[][] products;
+		private double fadingFactor;
+
+		public FadedSummary(int numberOfDimensions, int horizon) {
+			linearSums = new double[numberOfDimensions];
+			squaredSums = new double[numberOfDimensions];
+			products = new double[numberOfDimensions][numberOfDimensions];
+			fadingFactor = CorrelationEstimator.calculateFadingFactor(horizon);
+		}
+
+		public void addInstance(DenseInstance instance) {
+			int numberOfDimensions = linearSums.length;
+			n = fadingFactor * n + 1;
+			for (int i = 0; i < numberOfDimensions; i++) {
+				double x = instance.value(i);
+				linearSums[i] = fadingFactor * linearSums[i] + x;
+				squaredSums[i] = fadingFactor * squaredSums[i] + x * x;
+				for (int j = i + 1; j < numberOfDimensions; j++) {
+					products[i][j] = fadingFactor * products[i][j] + x * instance.value(j);
+				}
+			}
+		}
+
+		public double calculateCorrelation(int i, int j) {
+			double a = linearSums[i];
+			double b = linearSums[j];
+			return (products[i][j] - a * b / n)
+					/ (Math.sqrt(squaredSums[i] - a * a / n) * Math.sqrt(squaredSums[j] - b * b / n));
+		}
+	}
+
+	/**
+	 * The global scale of the {@link CorrelationSummary} applied to a full
+	 * product matrix, adding one instance at a time.
+	 */
+	private static class ScaledSummary {
+
+		private double n;
+		private double[] linearSums;
+		private double[] squaredSums;
+		private double[][] products;
+		private double fadingFactor;
+		private double weight = 1;
+
+		public ScaledSummary(int numberOfDimensions, int horizon) {
+			linearSums = new double[numberOfDimensions];
+			squaredSums = new double[numberOfDimensions];
+			products = new double[numberOfDimensions][numberOfDimensions];
+			fadingFactor = CorrelationEstimator.calculateFadingFactor(horizon);
+		}
+
+		public void addInstance(DenseInstance instance) {
+			int numberOfDimensions = linearSums.length;
+			if (weight > Math.pow(2, 64)) {
+				double scale = 1 / weight;
+				for (int i = 0; i < numberOfDimensions; i++) {
+					linearSums[i] *= scale;
+					squaredSums[i] *= scale;
+					for (int j = i + 1; j < numberOfDimensions; j++) {
+						products[i][j] *= scale;
+					}
+				}
+				n *= scale;
+				weight = 1;
+			}
+			weight /= fadingFactor;
+			n += weight;
+			for (int i = 0; i < numberOfDimensions; i++) {
+				double x = instance.value(i);
+				double weightedValue = weight * x;
+				linearSums[i] += weightedValue;
+				squaredSums[i] += weightedValue * x;
+				for (int j = i + 1; j < numberOfDimensions; j++) {
+					products[i][j] += weightedValue * instance.value(j);
+				}
+			}
+		}
+
+		public double calculateCorrelation(int i, int j) {
+			double a = linearSums[i];
+			double b = linearSums[j];
+			return (products[i][j] - a * b / n)
+					/ (Math.sqrt(squaredSums[i] - a * a / n) * Math.sqrt(squaredSums[j] - b * b / n));
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import moa.clusterers.clustree.ClusTree;
+import weka.core.DenseInstance;
+
+/**
+ * Compares the marginals of {@link Snapshot}s sorted by repairing the sorted
+ * orders of the previous {@link Snapshot} to the ones sorted from scratch.
+ *
+ * @author agent
+ *
+ */
+public class IncrementalSortTest {
+
+	private static final int numberOfElements = 1000;
+	private static final int numberOfDimensions = 5;
+
+	@Test
+	public void repairedOrders() {
+		SummarisationAdapter incremental = createAdapter();
+		SummarisationAdapter full = createAdapter();
+		full.setIncrementalSorting(false);
+		double[][] seeds = createSeeds();
+		Random generator = new Random(2);
+		for (int round = 0; round < 20; round++) {
+			// A few instances move a few micro-clusters, some create new ones
+			for (int i = 0; i < 100; i++) {
+				double[] seed = seeds[generator.nextInt(numberOfElements)];
+				double spread = i % 10 == 0 ? 0.5 : 0.005;
+				DenseInstance instance = new DenseInstance(numberOfDimensions);
+				for (int j = 0; j < numberOfDimensions; j++) {
+					instance.setValue(j, seed[j] + spread * generator.nextGaussian());
+				}
+				incremental.add(instance);
+				full.add(instance);
+			}
+			Snapshot expected = full.getSnapshot();
+			Snapshot actual = incremental.getSnapshot();
+			for (int dim = 0; dim < numberOfDimensions; dim++) {
+				DataBundle expectedMarginal = expected.getMarginal(dim);
+				DataBundle actualMarginal = actual.getMarginal(dim);
+				assertArrayEquals(expectedMarginal.getSortedOrder(), actualMarginal.getSortedOrder());
+				assertArrayEquals(expectedMarginal.getRanks(), actualMarginal.getRanks());
+				assertArrayEquals(expectedMarginal.getSortedCumulativeWeights(),
+						actualMarginal.getSortedCumulativeWeights(), 0);
+			}
+		}
+		assertTrue(incremental.getNumberOfRepairedSorts() > 0);
+		assertEquals(0, full.getNumberOfRepairedSorts());
+	}
+
+	@Test
+	public void enabledForStableKeysOnly() {
+		assertTrue(new MCAdapter(1000, 0.1, 0.1, "adapting").isIncrementalSorting());
+		assertFalse(new MCAdapter(1000, 0.1, 0.1, "radius").isIncrementalSorting());
+		assertFalse(new MicroclusteringAdapter(new ClusTree()).isIncrementalSorting());
+		assertFalse(new SlidingWindowAdapter(numberOfDimensions, 100).isIncrementalSorting());
+	}
+
+	/**
+	 * Creates an {@link MCAdapter} of adapting micro-clusters holding one
+	 * micro-cluster for every seed.
+	 */
+	private SummarisationAdapter createAdapter() {
+		SummarisationAdapter adapter = new MCAdapter(1000000, 0.05, 0.1, "adapting");
+		for (double[] seed : createSeeds()) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			for (int j = 0; j < numberOfDimensions; j++) {
+				instance.setValue(j, seed[j]);
+			}
+			adapter.add(instance);
+		}
+		return adapter;
+	}
+
+	/**
+	 * Creates uniformly distributed seeds, which are far apart from each other
+	 * compared to the radius.
+	 */
+	private double[][] createSeeds() {
+		Random generator = new Random(1);
+		double[][] seeds = new double[numberOfElements][numberOfDimensions];
+		for (int i = 0; i < numberOfElements; i++) {
+			for (int j = 0; j < numberOfDimensions; j++) {
+				seeds[i][j] = generator.nextDouble();
+			}
+		}
+		return seeds;
+	}
+}
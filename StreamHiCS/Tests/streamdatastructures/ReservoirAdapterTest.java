@@ -0,0 +1,102 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import weka.core.DenseInstance;
+
+/**
+ * Tests the size of the {@link ReservoirAdapter}, the ages of the instances it
+ * retains and the weights it hands out.
+ *
+ * @author agent
+ *
+ */
+public class ReservoirAdapterTest {
+
+	private static final int capacity = 1000;
+
+	@Test
+	public void size() {
+		ReservoirAdapter adapter = new ReservoirAdapter(capacity, 1);
+		int previous = 0;
+		for (int t = 0; t < 20 * capacity; t++) {
+			adapter.add(createInstance(t));
+			int size = adapter.getNumberOfElements();
+			assertTrue(size <= capacity);
+			assertTrue(size == previous || size == previous + 1);
+			previous = size;
+		}
+		// After many insertions the reservoir is (almost) full
+		assertTrue(adapter.getNumberOfElements() > 0.99 * capacity);
+		adapter.clear();
+		assertEquals(0, adapter.getNumberOfElements());
+		assertNull(adapter.getData());
+	}
+
+	@Test
+	public void ages() {
+		ReservoirAdapter adapter = new ReservoirAdapter(capacity, 2);
+		int numberOfInstances = 50 * capacity;
+		for (int t = 0; t < numberOfInstances; t++) {
+			adapter.add(createInstance(t));
+		}
+		// The instance added at time t carries t in its first dimension
+		double[] times = adapter.getData()[0].getData();
+		double totalAge = 0;
+		int old = 0;
+		for (double time : times) {
+			double age = numberOfInstances - 1 - time;
+			totalAge += age;
+			if (age >= capacity) {
+				old++;
+			}
+		}
+		// The probability of an instance to be retained decays exponentially
+		// with its age and a rate of 1 / capacity, so the mean age is about
+		// the capacity and a fraction of 1 / e is older than the capacity
+		assertEquals(capacity, totalAge / times.length, 0.1 * capacity);
+		assertEquals(Math.exp(-1), old / (double) times.length, 0.05);
+	}
+
+	@Test
+	public void seeded() {
+		ReservoirAdapter first = new ReservoirAdapter(capacity, 3);
+		ReservoirAdapter second = new ReservoirAdapter(capacity, 3);
+		for (int t = 0; t < 5 * capacity; t++) {
+			first.add(createInstance(t));
+			second.add(createInstance(t));
+		}
+		assertArrayEquals(first.getData()[0].getData(), second.getData()[0].getData(), 0);
+	}
+
+	@Test
+	public void unsharedWeights() {
+		ReservoirAdapter adapter = new ReservoirAdapter(capacity, 4);
+		for (int t = 0; t < 2 * capacity; t++) {
+			adapter.add(createInstance(t));
+		}
+		Snapshot snapshot = adapter.acquireSnapshot();
+		DataBundle[] data = adapter.getData();
+		assertNotSame(data[0].getWeights(), data[1].getWeights());
+		assertNotSame(snapshot.getMarginal(0).getWeights(), data[0].getWeights());
+		// Manipulating the weights handed out changes neither the snapshot nor
+		// later data
+		data[0].getWeights()[0] = 0.5;
+		assertEquals(1, snapshot.getMarginal(0).getWeights()[0], 0);
+		assertEquals(1, adapter.getData()[0].getWeights()[0], 0);
+		snapshot.release();
+	}
+
+	/**
+	 * Creates an instance carrying the time it is added at in its first
+	 * dimension.
+	 */
+	private DenseInstance createInstance(int t) {
+		DenseInstance instance = new DenseInstance(2);
+		instance.setValue(0, t);
+		instance.setValue(1, -t);
+		return instance;
+	}
+}
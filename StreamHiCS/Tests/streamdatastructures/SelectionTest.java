@@ -0,0 +1,165 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the slicing of the {@link Selection}.
+ * 
+ * @author agent
+ *
+ */
+public class SelectionTest {
+
+	private static final int n = 2000;
+	private static final int numberOfDimensions = 3;
+	private static final double selectionAlpha = Math.pow(0.1, 1.0 / numberOfDimensions);
+
+	@Test
+	public void ranksWithWeights() {
+		compareRanksToSorting(0, false);
+	}
+
+	@Test
+	public void ranksWithTies() {
+		// With ties the order within the block may differ, but the block
+		// is broadened over the ties
+		compareRanksToSorting(4, true);
+	}
+
+	/**
+	 * Slices random data on all dimensions once by sorting the selected
+	 * indexes by value and once by their precomputed ranks, and asserts that
+	 * the same instances are selected. The values are rounded to multiples of
+	 * 1 / resolution if the resolution is positive; then all weights are 1.
+	 */
+	private void compareRanksToSorting(int resolution, boolean unitWeights) {
+		Random generator = new Random(1);
+		double[][] data = new double[numberOfDimensions][n];
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			for (int d = 0; d < numberOfDimensions; d++) {
+				data[d][i] = generator.nextGaussian();
+				if (resolution > 0) {
+					data[d][i] = Math.round(resolution * data[d][i]) / (double) resolution;
+				}
+			}
+			weights[i] = unitWeights ? 1 : 0.1 + generator.nextDouble();
+		}
+		DataBundle[] bundles = new DataBundle[numberOfDimensions];
+		for (int d = 0; d < numberOfDimensions; d++) {
+			bundles[d] = new DataBundle(data[d].clone(), weights.clone());
+			bundles[d].sort();
+		}
+		Selection sorting = new Selection(n, selectionAlpha);
+		Selection ranking = new Selection(n, selectionAlpha);
+		for (int r = 0; r < 200; r++) {
+			sorting.reset(n, selectionAlpha, new Random(r));
+			ranking.reset(n, selectionAlpha, new Random(r));
+			for (int d = 0; d < numberOfDimensions; d++) {
+				sorting.selectWithWeights(data[d], weights);
+				ranking.selectByRanks(bundles[d], weights);
+				assertArrayEquals(sortedIndexes(sorting), sortedIndexes(ranking));
+			}
+		}
+	}
+
+	@Test
+	public void blocksByBinarySearch() {
+		Random generator = new Random(1);
+		// 300000 blocks on short and long data, with and without ties and unit
+		// weights
+		for (int round = 0; round < 3000; round++) {
+			int size = 2 + generator.nextInt(round % 2 == 0 ? 50 : 5000);
+			int resolution = generator.nextInt(3) * 4;
+			boolean unitWeights = generator.nextBoolean();
+			double alpha = 0.05 + 0.9 * generator.nextDouble();
+			double[] data = new double[size];
+			double[] weights = new double[size];
+			for (int i = 0; i < size; i++) {
+				data[i] = generator.nextGaussian();
+				if (resolution > 0) {
+					data[i] = Math.round(resolution * data[i]) / (double) resolution;
+				}
+				weights[i] = unitWeights ? 1 : 0.01 + generator.nextDouble();
+			}
+			Arrays.sort(data);
+			double[] prefixWeights = new double[size + 1];
+			for (int i = 0; i < size; i++) {
+				prefixWeights[i + 1] = prefixWeights[i] + weights[i];
+			}
+			Selection selection = new Selection(0, alpha);
+			for (int r = 0; r < 100; r++) {
+				int startingPoint = generator.nextInt(size);
+				selection.selectBlock(startingPoint, data, prefixWeights, size, 0.000001);
+				int[] expected = growBlock(startingPoint, data, weights, alpha, 0.000001);
+				assertEquals(expected[0], selection.getLower());
+				assertEquals(expected[1], selection.getUpper());
+			}
+		}
+	}
+
+	/**
+	 * Selects the block around the starting point by growing it one element
+	 * at a time, the way blocks were selected before the binary search.
+	 * 
+	 * @return The lower and upper end of the block (inclusive).
+	 */
+	private int[] growBlock(int startingPoint, double[] data, double[] weights, double alpha, double tolerance) {
+		int n = data.length;
+		double totalWeight = 0;
+		for (int i = 0; i < n; i++) {
+			totalWeight += weights[i];
+		}
+		double selectionSize = totalWeight * alpha;
+		int lower = startingPoint;
+		int upper = startingPoint;
+		double lowerWeight = 0;
+		double upperWeight = 0;
+		double accumulatedWeight = weights[startingPoint];
+		double selectionPerSide = (selectionSize - weights[startingPoint]) / 2;
+		boolean searchOn = false;
+		while (accumulatedWeight < selectionSize - tolerance) {
+			while ((lowerWeight < selectionPerSide || (searchOn && accumulatedWeight < selectionSize)) && lower > 0) {
+				lower--;
+				lowerWeight += weights[lower];
+				accumulatedWeight += weights[lower];
+			}
+			while ((upperWeight < selectionPerSide || (searchOn && accumulatedWeight < selectionSize))
+					&& upper < n - 1) {
+				upper++;
+				upperWeight += weights[upper];
+				accumulatedWeight += weights[upper];
+			}
+			searchOn = true;
+		}
+		if (upper - lower == 0) {
+			if (lower > 0) {
+				lower--;
+			}
+			if (upper < n - 1) {
+				upper++;
+			}
+		}
+		while (lower > 0 && data[lower - 1] == data[lower]) {
+			lower--;
+		}
+		while (upper < n - 1 && data[upper] == data[upper + 1]) {
+			upper++;
+		}
+		return new int[] { lower, upper };
+	}
+
+	/**
+	 * Returns the indexes of the selection in ascending order.
+	 */
+	private int[] sortedIndexes(Selection selection) {
+		int[] indexes = Arrays.copyOf(selection.getIndexes(), selection.size());
+		Arrays.sort(indexes);
+		return indexes;
+	}
+}
@@ -0,0 +1,119 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import streams.GaussianStream;
+import weka.core.Instance;
+
+/**
+ * Compares the coefficients estimated by a {@link SketchCorrelationSummary}
+ * to the exact ones of a {@link CorrelationSummary} on the same
+ * {@link GaussianStream}.
+ *
+ * @author agent
+ *
+ */
+public class SketchCorrelationSummaryTest {
+
+	private static CorrelationSummary exact;
+	private static SketchCorrelationSummary sketch;
+	private static final int numberOfDimensions = 30;
+	private static final int numInstances = 20000;
+	private static final int horizon = 10000;
+	private static final int sketchSize = 1024;
+	/**
+	 * The maximal deviation of an estimate, about six standard errors.
+	 */
+	private static final double tolerance = 6 / Math.sqrt(sketchSize);
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		// Dimensions 0 to 4 are positively correlated, 5 and 6 negatively, the
+		// others are independent
+		double[][] covarianceMatrix = new double[numberOfDimensions][numberOfDimensions];
+		for (int i = 0; i < numberOfDimensions; i++) {
+			covarianceMatrix[i][i] = 1;
+		}
+		for (int i = 0; i < 5; i++) {
+			for (int j = 0; j < 5; j++) {
+				if (i != j) {
+					covarianceMatrix[i][j] = 0.8;
+				}
+			}
+		}
+		covarianceMatrix[5][6] = -0.7;
+		covarianceMatrix[6][5] = -0.7;
+		double[] mean = new double[numberOfDimensions];
+		for (int i = 0; i < numberOfDimensions; i++) {
+			mean[i] = 10 * i;
+		}
+		GaussianStream stream = new GaussianStream(mean, covarianceMatrix, 1);
+
+		exact = new CorrelationSummary(numberOfDimensions, horizon);
+		sketch = new SketchCorrelationSummary(numberOfDimensions, horizon, sketchSize, 1);
+		for (int i = 0; i < numInstances; i++) {
+			Instance instance = stream.nextInstance();
+			exact.addInstance(instance);
+			sketch.addInstance(instance);
+		}
+	}
+
+	@Test
+	public void coefficients() {
+		double[][] exactMatrix = exact.getCorrelationMatrix();
+		double[][] sketchMatrix = sketch.getCorrelationMatrix();
+		double maxDeviation = 0;
+		for (int i = 0; i < numberOfDimensions; i++) {
+			assertEquals(0, sketchMatrix[i][i], 0);
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				assertEquals(sketchMatrix[i][j], sketchMatrix[j][i], 0);
+				assertEquals(sketchMatrix[i][j], sketch.calculateCorrelation(i, j), 1e-9);
+				maxDeviation = Math.max(maxDeviation, Math.abs(sketchMatrix[i][j] - exactMatrix[i][j]));
+			}
+		}
+		assertTrue(maxDeviation < tolerance);
+		assertEquals(0.8, sketch.calculateCorrelation(0, 1), tolerance);
+		assertEquals(-0.7, sketch.calculateCorrelation(5, 6), tolerance);
+		assertEquals(0, sketch.calculateCorrelation(10, 20), tolerance);
+	}
+
+	@Test
+	public void candidates() {
+		double threshold = 0.5;
+		sketch.requireCandidateThreshold(threshold - sketch.getScreeningMargin());
+		exact.requireCandidateThreshold(threshold);
+		int numberOfExactCandidates = exact.getNumberOfCandidates();
+		int numberOfSketchCandidates = sketch.getNumberOfCandidates();
+		// The ten pairs of the first five dimensions
+		assertEquals(10, numberOfExactCandidates);
+		for (int c = 0; c < numberOfExactCandidates; c++) {
+			boolean found = false;
+			for (int s = 0; s < numberOfSketchCandidates; s++) {
+				if (sketch.getCandidateFirstDimension(s) == exact.getCandidateFirstDimension(c)
+						&& sketch.getCandidateSecondDimension(s) == exact.getCandidateSecondDimension(c)) {
+					found = true;
+				}
+			}
+			assertTrue(found);
+		}
+		// Only few uncorrelated pairs pass the screening
+		assertTrue(numberOfSketchCandidates < 20);
+	}
+
+	@Test
+	public void derivedSketchSize() {
+		SketchCorrelationSummary derived = new SketchCorrelationSummary(1000, horizon);
+		assertEquals(SketchCorrelationSummary.calculateSketchSize(1000, SketchCorrelationSummary.defaultMargin,
+				SketchCorrelationSummary.defaultFailureProbability), derived.getSketchSize());
+		assertTrue(derived.getScreeningMargin() <= SketchCorrelationSummary.defaultMargin);
+		assertEquals(SketchCorrelationSummary.defaultMargin, derived.getScreeningMargin(), 0.001);
+		// A lower failure probability widens the margin
+		derived.setFailureProbability(1e-6);
+		assertTrue(derived.getScreeningMargin() > SketchCorrelationSummary.defaultMargin);
+		// More dimensions need larger sketches for the same margin
+		assertTrue(SketchCorrelationSummary.calculateSketchSize(10000, 0.2, 0.01) > derived.getSketchSize());
+	}
+}
@@ -0,0 +1,125 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.core.DenseInstance;
+
+/**
+ * Tests the circular buffers of the {@link SlidingWindow} and the sharing of
+ * the buffers with the {@link Snapshot}s of the {@link SlidingWindowAdapter}.
+ * 
+ * @author agent
+ *
+ */
+public class SlidingWindowTest {
+
+	private static final int numberOfDimensions = 2;
+	private static final int windowLength = 7;
+	private Random generator = new Random(1);
+
+	@Test
+	public void contents() {
+		SlidingWindow window = new SlidingWindow(numberOfDimensions, windowLength);
+		ArrayDeque<Double> expected = new ArrayDeque<Double>();
+		for (int t = 0; t < 30; t++) {
+			if (t == 20) {
+				window.clear();
+				expected.clear();
+			}
+			DenseInstance instance = createInstance();
+			window.add(instance);
+			expected.addLast(instance.value(1));
+			if (expected.size() > windowLength) {
+				expected.removeFirst();
+			}
+			assertEquals(expected.size(), window.getNumberOfInstances());
+			assertArrayEquals(toArray(expected), window.getDimensionData(1), 0);
+		}
+	}
+
+	@Test
+	public void detach() {
+		SlidingWindow window = new SlidingWindow(numberOfDimensions, windowLength);
+		for (int t = 0; t < 10; t++) {
+			window.add(createInstance());
+		}
+		double[] column = window.getColumn(0);
+		double[] copy = column.clone();
+		double[] data = window.getDimensionData(0);
+		window.detach();
+		assertArrayEquals(data, window.getDimensionData(0), 0);
+		for (int t = 0; t < 10; t++) {
+			window.add(createInstance());
+		}
+		// The buffer handed out before is not overwritten
+		assertArrayEquals(copy, column, 0);
+		assertNotSame(column, window.getColumn(0));
+	}
+
+	@Test
+	public void sharedColumns() {
+		SummarisationAdapter adapter = new SlidingWindowAdapter(numberOfDimensions, windowLength);
+		for (int t = 0; t < windowLength; t++) {
+			adapter.add(createInstance());
+		}
+		// Without a reference to the snapshot, the buffers are reused
+		double[] column = adapter.getSnapshot().getMarginal(0).getData();
+		adapter.add(createInstance());
+		assertSame(column, adapter.getSnapshot().getMarginal(0).getData());
+		// A referenced snapshot keeps its buffers
+		Snapshot snapshot = adapter.acquireSnapshot();
+		column = snapshot.getMarginal(0).getData();
+		double[] copy = column.clone();
+		adapter.add(createInstance());
+		assertNotSame(column, adapter.getSnapshot().getMarginal(0).getData());
+		assertArrayEquals(copy, snapshot.getMarginal(0).getData(), 0);
+		snapshot.release();
+	}
+
+	@Test
+	public void unsharedData() {
+		SummarisationAdapter adapter = new SlidingWindowAdapter(numberOfDimensions, windowLength);
+		for (int t = 0; t < windowLength; t++) {
+			adapter.add(createInstance());
+		}
+		Snapshot snapshot = adapter.acquireSnapshot();
+		DataBundle[] data = adapter.getData();
+		// Neither the buffers nor the weights of the snapshot are handed out
+		assertNotSame(snapshot.getMarginal(0).getData(), data[0].getData());
+		assertNotSame(snapshot.getMarginal(0).getWeights(), data[0].getWeights());
+		assertNotSame(data[0].getWeights(), data[1].getWeights());
+		assertArrayEquals(snapshot.getMarginal(0).getData(), data[0].getData(), 0);
+		data[0].getWeights()[0] = 0.5;
+		assertEquals(1, snapshot.getMarginal(1).getWeights()[0], 0);
+		snapshot.release();
+	}
+
+	/**
+	 * Creates an instance with random values.
+	 */
+	private DenseInstance createInstance() {
+		DenseInstance instance = new DenseInstance(numberOfDimensions);
+		for (int d = 0; d < numberOfDimensions; d++) {
+			instance.setValue(d, generator.nextGaussian());
+		}
+		return instance;
+	}
+
+	/**
+	 * Unboxes the values of the deque.
+	 */
+	private double[] toArray(ArrayDeque<Double> deque) {
+		double[] array = new double[deque.size()];
+		int i = 0;
+		for (double value : deque) {
+			array[i] = value;
+			i++;
+		}
+		return array;
+	}
+}
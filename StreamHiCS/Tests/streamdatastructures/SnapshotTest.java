@@ -0,0 +1,171 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fullsystem.Contrast;
+import subspace.Subspace;
+import weka.core.DenseInstance;
+
+/**
+ * Tests that a {@link Snapshot} keeps the state it was taken of while
+ * instances are added concurrently, its reference counting and the
+ * materialisation of its columns on demand.
+ * 
+ * @author agent
+ *
+ */
+public class SnapshotTest {
+
+	private static final int numberOfDimensions = 3;
+	private static final int windowLength = 500;
+
+	@Test
+	public void copyOnWrite() throws InterruptedException {
+		SummarisationAdapter adapter = createAdapter();
+		Snapshot snapshot = adapter.acquireSnapshot();
+		double[][] columns = new double[numberOfDimensions][windowLength];
+		for (int d = 0; d < numberOfDimensions; d++) {
+			snapshot.copyColumn(d, columns[d]);
+		}
+		double[] sorted = snapshot.getMarginal(0).getSortedData().clone();
+		Thread writer = startWriter(adapter, 100 * windowLength);
+		double[] column = new double[windowLength];
+		while (writer.isAlive()) {
+			for (int d = 0; d < numberOfDimensions; d++) {
+				snapshot.copyColumn(d, column);
+				assertArrayEquals(columns[d], column, 0);
+			}
+			assertArrayEquals(sorted, snapshot.getMarginal(0).getSortedData(), 0);
+		}
+		writer.join();
+		for (int d = 0; d < numberOfDimensions; d++) {
+			snapshot.copyColumn(d, column);
+			assertArrayEquals(columns[d], column, 0);
+		}
+		assertNotSame(snapshot, adapter.getSnapshot());
+		assertEquals(snapshot.getEpoch() + 100 * windowLength, adapter.getEpoch());
+		snapshot.release();
+		assertTrue(snapshot.isReleased());
+	}
+
+	@Test
+	public void referenceCounting() {
+		SummarisationAdapter adapter = createAdapter();
+		Snapshot first = adapter.acquireSnapshot();
+		Snapshot second = adapter.acquireSnapshot();
+		// The same state yields the same snapshot
+		assertSame(first, second);
+		first.release();
+		second.release();
+		// The adapter holds a reference until the next change
+		assertFalse(first.isReleased());
+		addInstances(adapter, new Random(2), 1);
+		assertTrue(first.isReleased());
+		try {
+			first.retain();
+			fail("A released snapshot was retained.");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void pinnedContrast() throws InterruptedException {
+		SummarisationAdapter adapter = createAdapter();
+		Contrast contrast = new Contrast(50, 0.1, adapter);
+		Subspace subspace = new Subspace(0, 1, 2);
+		contrast.pinSnapshot();
+		contrast.setSeed(3);
+		double expected = contrast.evaluateSubspaceContrast(subspace);
+		Thread writer = startWriter(adapter, 100 * windowLength);
+		while (writer.isAlive()) {
+			contrast.setSeed(3);
+			assertEquals(expected, contrast.evaluateSubspaceContrast(subspace), 0);
+		}
+		writer.join();
+		contrast.setSeed(3);
+		assertEquals(expected, contrast.evaluateSubspaceContrast(subspace), 0);
+		contrast.releaseSnapshot();
+		// Afterwards the evaluation runs on the current state
+		contrast.setSeed(3);
+		assertNotEquals(expected, contrast.evaluateSubspaceContrast(subspace), 0);
+	}
+
+	@Test
+	public void columnsOnDemandOfMicroclusters() {
+		checkColumnsOnDemand(new MCAdapter(2000, 5, 0.1, "adapting"));
+	}
+
+	@Test
+	public void columnsOnDemandOfCoresets() {
+		checkColumnsOnDemand(new CoresetAdapter(1000, 200));
+	}
+
+	/**
+	 * Asserts that an evaluation only materialises the columns of the
+	 * evaluated dimensions, that they share one weight array and that they
+	 * equal the columns of {@link SummarisationAdapter#getData()}.
+	 */
+	private void checkColumnsOnDemand(SummarisationAdapter adapter) {
+		int highDimensionality = 30;
+		Random generator = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			DenseInstance instance = new DenseInstance(highDimensionality);
+			for (int d = 0; d < highDimensionality; d++) {
+				instance.setValue(d, generator.nextGaussian());
+			}
+			adapter.add(instance);
+		}
+		Snapshot snapshot = adapter.getSnapshot();
+		assertEquals(0, snapshot.getNumberOfMaterialisedColumns());
+		new Contrast(20, 0.1, adapter).evaluateSubspaceContrast(new Subspace(3, 7, 11));
+		assertEquals(3, snapshot.getNumberOfMaterialisedColumns());
+		assertSame(snapshot.getMarginal(3).getWeights(), snapshot.getMarginal(7).getWeights());
+		DataBundle[] data = adapter.getData();
+		for (int d : new int[] { 3, 7, 11 }) {
+			assertArrayEquals(data[d].getData(), snapshot.getMarginal(d).getData(), 0);
+			assertArrayEquals(data[d].getWeights(), snapshot.getMarginal(d).getWeights(), 0);
+		}
+	}
+
+	/**
+	 * Creates a full {@link SlidingWindowAdapter}.
+	 */
+	private SummarisationAdapter createAdapter() {
+		SummarisationAdapter adapter = new SlidingWindowAdapter(numberOfDimensions, windowLength);
+		addInstances(adapter, new Random(1), windowLength);
+		return adapter;
+	}
+
+	/**
+	 * Starts a thread adding the given number of instances to the adapter.
+	 */
+	private Thread startWriter(final SummarisationAdapter adapter, final int number) {
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				addInstances(adapter, new Random(2), number);
+			}
+		};
+		writer.start();
+		return writer;
+	}
+
+	/**
+	 * Adds instances whose dimensions are correlated.
+	 */
+	private void addInstances(SummarisationAdapter adapter, Random generator, int number) {
+		for (int i = 0; i < number; i++) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			double x = generator.nextGaussian();
+			for (int d = 0; d < numberOfDimensions; d++) {
+				instance.setValue(d, x + 0.5 * generator.nextGaussian());
+			}
+			adapter.add(instance);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package streamdatastructures;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fullsystem.Contrast;
+import subspace.Subspace;
+import weka.core.DenseInstance;
+
+/**
+ * Compares the incrementally maintained sorted order of the
+ * {@link SortedSlidingWindowAdapter} to full sorts.
+ * 
+ * @author agent
+ *
+ */
+public class SortedSlidingWindowTest {
+
+	@Test
+	public void blockedSortedOrder() {
+		// Long enough to split blocks, with many ties
+		int length = 5000;
+		Random generator = new Random(1);
+		double[] values = new double[length];
+		BlockedSortedOrder order = new BlockedSortedOrder();
+		for (int phase = 0; phase < 2; phase++) {
+			// Slide over the positions several times
+			for (int t = 0; t < 4 * length; t++) {
+				int position = t % length;
+				if (t >= length) {
+					order.remove(position, values);
+				}
+				values[position] = Math.round(8 * generator.nextGaussian());
+				order.insert(position, values);
+				if (t % 997 == 0) {
+					assertOrder(order, values, 0, Math.min(t + 1, length));
+				}
+			}
+			assertOrder(order, values, 0, length);
+			if (phase == 0) {
+				order.clear();
+			} else {
+				// Empty the blocks one after another
+				for (int position = 0; position < length; position++) {
+					order.remove(position, values);
+					if (position % 499 == 0) {
+						assertOrder(order, values, position + 1, length);
+					}
+				}
+				assertEquals(0, order.size());
+			}
+		}
+	}
+
+	@Test
+	public void marginalsAndContrasts() {
+		int numberOfDimensions = 4;
+		int windowLength = 3000;
+		SummarisationAdapter plain = new SlidingWindowAdapter(numberOfDimensions, windowLength);
+		SummarisationAdapter sorted = new SortedSlidingWindowAdapter(numberOfDimensions, windowLength);
+		Random generator = new Random(7);
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < (round == 0 ? 1500 : 700); i++) {
+				// Dimensions 0 and 1 are correlated and have ties, dimension 3
+				// has only four values
+				DenseInstance instance = new DenseInstance(numberOfDimensions);
+				double z = generator.nextGaussian();
+				instance.setValue(0, Math.rint(3 * (z + 0.3 * generator.nextGaussian())));
+				instance.setValue(1, Math.rint(3 * (z + 0.3 * generator.nextGaussian())));
+				instance.setValue(2, generator.nextGaussian());
+				instance.setValue(3, generator.nextInt(4));
+				plain.add(instance);
+				sorted.add(instance);
+			}
+			if (round == 6) {
+				plain.clear();
+				sorted.clear();
+			}
+			Snapshot expected = plain.getSnapshot();
+			Snapshot actual = sorted.getSnapshot();
+			for (int d = 0; d < numberOfDimensions; d++) {
+				DataBundle expectedMarginal = expected.getMarginal(d);
+				DataBundle actualMarginal = actual.getMarginal(d);
+				assertArrayEquals(expectedMarginal.getSortedOrder(), actualMarginal.getSortedOrder());
+				assertArrayEquals(expectedMarginal.getRanks(), actualMarginal.getRanks());
+				assertArrayEquals(expectedMarginal.getSortedCumulativeWeights(),
+						actualMarginal.getSortedCumulativeWeights(), 0);
+			}
+			if (expected.getNumberOfElements() > 0) {
+				Contrast plainContrast = new Contrast(50, 0.1, plain);
+				Contrast sortedContrast = new Contrast(50, 0.1, sorted);
+				plainContrast.setSeed(1);
+				sortedContrast.setSeed(1);
+				Subspace subspace = new Subspace(0, 1, 3);
+				assertEquals(plainContrast.evaluateSubspaceContrast(subspace),
+						sortedContrast.evaluateSubspaceContrast(subspace), 0);
+			}
+		}
+	}
+
+	/**
+	 * Asserts that the order contains the positions from (inclusive) to to
+	 * (exclusive), sorted by their values and then by the positions.
+	 */
+	private void assertOrder(BlockedSortedOrder order, final double[] values, int from, int to) {
+		assertEquals(to - from, order.size());
+		Integer[] positions = new Integer[to - from];
+		for (int i = from; i < to; i++) {
+			positions[i - from] = i;
+		}
+		Arrays.sort(positions, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int comparison = Double.compare(values[a], values[b]);
+				return comparison != 0 ? comparison : Integer.compare(a, b);
+			}
+		});
+		int[] sortedPositions = new int[to - from];
+		order.copyTo(sortedPositions);
+		for (int i = 0; i < positions.length; i++) {
+			assertEquals((int) positions[i], sortedPositions[i]);
+		}
+	}
+}
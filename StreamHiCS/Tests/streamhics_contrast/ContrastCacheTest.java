@@ -0,0 +1,168 @@
+package streamhics_contrast;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fullsystem.Contrast;
+import fullsystem.Contrast.SamplingStrategy;
+import fullsystem.ContrastCache;
+import streamdatastructures.SlidingWindowAdapter;
+import streamdatastructures.Snapshot;
+import streamdatastructures.SummarisationAdapter;
+import streamdatastructures.SummarisationAdapter.SlicingMethod;
+import subspace.Subspace;
+import weka.core.DenseInstance;
+
+/**
+ * Tests the validity rules, the eviction and the counters of the
+ * {@link ContrastCache}.
+ *
+ * @author agent
+ *
+ */
+public class ContrastCacheTest {
+
+	private static final int numberOfDimensions = 3;
+	private SummarisationAdapter adapter;
+	private Random generator;
+
+	@Before
+	public void setUp() {
+		adapter = new SlidingWindowAdapter(numberOfDimensions, 1000);
+		generator = new Random(1);
+		for (int i = 0; i < 500; i++) {
+			addInstance();
+		}
+	}
+
+	@Test
+	public void epoch() {
+		ContrastCache cache = new ContrastCache(10);
+		Snapshot snapshot = adapter.getSnapshot();
+		cache.put(new int[] { 0, 1 }, Double.NaN, snapshot, 0.5);
+		// The order of the dimensions does not matter
+		assertEquals(0.5, cache.get(new int[] { 1, 0 }, Double.NaN, snapshot), 0);
+		addInstance();
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot())));
+	}
+
+	@Test
+	public void tolerance() {
+		ContrastCache cache = new ContrastCache(10, 3);
+		cache.put(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot(), 0.5);
+		// Valid while fewer than three instances were added
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0.5, cache.get(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot()), 0);
+			addInstance();
+		}
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot())));
+	}
+
+	@Test
+	public void pinnedOlderSnapshot() {
+		ContrastCache cache = new ContrastCache(10, 3);
+		Snapshot older = adapter.acquireSnapshot();
+		addInstance();
+		Snapshot newer = adapter.getSnapshot();
+		cache.put(new int[] { 0, 1 }, Double.NaN, newer, 0.5);
+		// The entry of the newer state is not valid for the pinned snapshot
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, Double.NaN, older)));
+		// A contrast of the pinned snapshot does not replace the newer entry
+		cache.put(new int[] { 0, 1 }, Double.NaN, older, 0.7);
+		assertEquals(0.5, cache.get(new int[] { 0, 1 }, Double.NaN, newer), 0);
+		older.release();
+	}
+
+	@Test
+	public void clearOfAdapter() {
+		ContrastCache cache = new ContrastCache(10, 100);
+		cache.put(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot(), 0.5);
+		adapter.clear();
+		addInstance();
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot())));
+	}
+
+	@Test
+	public void decisionThreshold() {
+		ContrastCache cache = new ContrastCache(10);
+		Snapshot snapshot = adapter.getSnapshot();
+		// An early stopped contrast is only valid for its threshold
+		cache.put(new int[] { 0, 1 }, 0.3, snapshot, 0.5);
+		assertEquals(0.5, cache.get(new int[] { 0, 1 }, 0.3, snapshot), 0);
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, 0.4, snapshot)));
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, Double.NaN, snapshot)));
+		// A full evaluation is valid for every threshold
+		cache.put(new int[] { 0, 1 }, Double.NaN, snapshot, 0.6);
+		assertEquals(0.6, cache.get(new int[] { 0, 1 }, 0.4, snapshot), 0);
+	}
+
+	@Test
+	public void slicingMethod() {
+		ContrastCache cache = new ContrastCache(10);
+		cache.put(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot(), 0.5);
+		adapter.setSlicingMethod(SlicingMethod.BITMASK);
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, Double.NaN, adapter.getSnapshot())));
+	}
+
+	@Test
+	public void leastRecentlyUsedEviction() {
+		ContrastCache cache = new ContrastCache(2);
+		Snapshot snapshot = adapter.getSnapshot();
+		cache.put(new int[] { 0, 1 }, Double.NaN, snapshot, 0.1);
+		cache.put(new int[] { 0, 2 }, Double.NaN, snapshot, 0.2);
+		// Accessing {0, 1} makes {0, 2} the least recently used entry
+		assertEquals(0.1, cache.get(new int[] { 0, 1 }, Double.NaN, snapshot), 0);
+		cache.put(new int[] { 1, 2 }, Double.NaN, snapshot, 0.3);
+		assertEquals(2, cache.size());
+		assertEquals(0.1, cache.get(new int[] { 0, 1 }, Double.NaN, snapshot), 0);
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 2 }, Double.NaN, snapshot)));
+		assertEquals(0.3, cache.get(new int[] { 1, 2 }, Double.NaN, snapshot), 0);
+	}
+
+	@Test
+	public void counters() {
+		ContrastCache cache = new ContrastCache(10);
+		Snapshot snapshot = adapter.getSnapshot();
+		assertTrue(Double.isNaN(cache.get(new int[] { 0, 1 }, Double.NaN, snapshot)));
+		cache.put(new int[] { 0, 1 }, Double.NaN, snapshot, 0.5);
+		cache.get(new int[] { 0, 1 }, Double.NaN, snapshot);
+		cache.get(new int[] { 0, 1 }, Double.NaN, snapshot);
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		cache.resetCounters();
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+	}
+
+	@Test
+	public void settingsOfContrast() {
+		ContrastCache cache = new ContrastCache(10);
+		Contrast contrast = new Contrast(20, 0.1, adapter);
+		contrast.setCache(cache);
+		Subspace subspace = new Subspace(0, 1);
+		contrast.evaluateSubspaceContrast(subspace);
+		assertEquals(1, cache.size());
+		contrast.evaluateSubspaceContrast(subspace);
+		assertEquals(1, cache.getHits());
+		// Settings changing the contrast invalidate the entries
+		contrast.setSamplingStrategy(SamplingStrategy.STRATIFIED);
+		assertEquals(0, cache.size());
+		contrast.evaluateSubspaceContrast(subspace);
+		contrast.setTwoDimensionalSweep(true);
+		assertEquals(0, cache.size());
+		contrast.evaluateSubspaceContrast(subspace);
+		assertEquals(1, cache.getHits());
+	}
+
+	private void addInstance() {
+		DenseInstance instance = new DenseInstance(numberOfDimensions);
+		for (int j = 0; j < numberOfDimensions; j++) {
+			instance.setValue(j, generator.nextGaussian());
+		}
+		adapter.add(instance);
+	}
+}
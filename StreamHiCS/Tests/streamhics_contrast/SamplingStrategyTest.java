@@ -0,0 +1,108 @@
+package streamhics_contrast;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fullsystem.Contrast;
+import fullsystem.Contrast.SamplingStrategy;
+import streamdatastructures.SlidingWindowAdapter;
+import streamdatastructures.SummarisationAdapter;
+import subspace.Subspace;
+import weka.core.DenseInstance;
+
+/**
+ * Compares the variance of the contrast estimates of the
+ * {@link SamplingStrategy}s. The variance reducing strategies should reach
+ * the accuracy of independent sampling with a fraction of the iterations.
+ *
+ * @author agent
+ *
+ */
+public class SamplingStrategyTest {
+
+	private static SummarisationAdapter adapter;
+	private static final int numInstances = 2000;
+	private static final int numberOfDimensions = 5;
+	private static final double alpha = 0.1;
+	/**
+	 * The number of repeated evaluations per configuration.
+	 */
+	private static final int repetitions = 50;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		// Dimensions 0 and 1 are correlated, the others are independent
+		adapter = new SlidingWindowAdapter(numberOfDimensions, numInstances);
+		Random generator = new Random(1);
+		for (int i = 0; i < numInstances; i++) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			double x = generator.nextGaussian();
+			for (int j = 0; j < numberOfDimensions; j++) {
+				if (j < 2) {
+					instance.setValue(j, x + 0.3 * generator.nextGaussian());
+				} else {
+					instance.setValue(j, generator.nextGaussian());
+				}
+			}
+			adapter.add(instance);
+		}
+	}
+
+	@Test
+	public void correlated2D() {
+		Subspace subspace = new Subspace(0, 1);
+		double[] random = estimate(SamplingStrategy.RANDOM, 100, subspace);
+		double[] stratified = estimate(SamplingStrategy.STRATIFIED, 25, subspace);
+		double[] halton = estimate(SamplingStrategy.HALTON, 50, subspace);
+		assertEquals(random[0], stratified[0], 0.02);
+		assertEquals(random[0], halton[0], 0.02);
+		assertTrue(stratified[1] < random[1]);
+		assertTrue(halton[1] < random[1]);
+	}
+
+	@Test
+	public void correlated3D() {
+		Subspace subspace = new Subspace(0, 1, 2);
+		double[] random = estimate(SamplingStrategy.RANDOM, 100, subspace);
+		double[] stratified = estimate(SamplingStrategy.STRATIFIED, 50, subspace);
+		double[] halton = estimate(SamplingStrategy.HALTON, 50, subspace);
+		assertEquals(random[0], stratified[0], 0.02);
+		assertEquals(random[0], halton[0], 0.02);
+		assertTrue(stratified[1] < random[1]);
+		assertTrue(halton[1] < random[1]);
+	}
+
+	@Test
+	public void uncorrelated3D() {
+		Subspace subspace = new Subspace(2, 3, 4);
+		double[] random = estimate(SamplingStrategy.RANDOM, 50, subspace);
+		double[] stratified = estimate(SamplingStrategy.STRATIFIED, 50, subspace);
+		double[] halton = estimate(SamplingStrategy.HALTON, 50, subspace);
+		assertEquals(random[0], stratified[0], 0.005);
+		assertEquals(random[0], halton[0], 0.005);
+	}
+
+	/**
+	 * Evaluates the contrast of the {@link Subspace} repeatedly and returns
+	 * the mean and the standard deviation of the estimates.
+	 */
+	private double[] estimate(SamplingStrategy strategy, int m, Subspace subspace) {
+		Contrast contrastEvaluator = new Contrast(m, alpha, adapter);
+		contrastEvaluator.setSamplingStrategy(strategy);
+		contrastEvaluator.setSeed(11);
+		double sum = 0;
+		double squaredSum = 0;
+		for (int i = 0; i < repetitions; i++) {
+			double contrast = contrastEvaluator.evaluateSubspaceContrast(subspace);
+			sum += contrast;
+			squaredSum += contrast * contrast;
+		}
+		double mean = sum / repetitions;
+		double sd = Math.sqrt(squaredSum / repetitions - mean * mean);
+		return new double[] { mean, sd };
+	}
+}
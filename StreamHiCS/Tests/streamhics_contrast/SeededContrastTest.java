@@ -0,0 +1,148 @@
+package streamhics_contrast;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fullsystem.Contrast;
+import streamdatastructures.SlidingWindowAdapter;
+import streamdatastructures.SummarisationAdapter;
+import subspace.Subspace;
+import subspace.SubspaceSet;
+import weka.core.DenseInstance;
+
+/**
+ * Checks that seeded contrast evaluations are reproducible, independent of
+ * the way the Monte Carlo iterations are carried out.
+ * 
+ * @author agent
+ *
+ */
+public class SeededContrastTest {
+
+	private static SummarisationAdapter adapter;
+	private static final int numInstances = 2000;
+	private static final int numberOfDimensions = 5;
+	private static final int m = 50;
+	private static final double alpha = 0.1;
+	private static final long seed = 42;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		// Dimensions 0, 1 and 2 are correlated, the others are independent
+		adapter = new SlidingWindowAdapter(numberOfDimensions, numInstances);
+		Random generator = new Random(1);
+		for (int i = 0; i < numInstances; i++) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			double x = generator.nextGaussian();
+			for (int j = 0; j < numberOfDimensions; j++) {
+				if (j < 3) {
+					instance.setValue(j, x + 0.5 * generator.nextGaussian());
+				} else {
+					instance.setValue(j, generator.nextGaussian());
+				}
+			}
+			adapter.add(instance);
+		}
+	}
+
+	@Test
+	public void parallelism() {
+		Subspace[] subspaces = { new Subspace(0, 1), new Subspace(0, 1, 2), new Subspace(1, 3),
+				new Subspace(0, 2, 3, 4) };
+		Contrast sequential = createContrast(1);
+		Contrast parallel = createContrast(4);
+		for (Subspace subspace : subspaces) {
+			double expected = sequential.evaluateSubspaceContrast(subspace);
+			assertEquals(expected, parallel.evaluateSubspaceContrast(subspace), 0);
+		}
+		// Reseeding repeats the sequence of evaluations
+		Contrast reseeded = createContrast(3);
+		sequential = createContrast(1);
+		for (Subspace subspace : subspaces) {
+			assertEquals(sequential.evaluateSubspaceContrast(subspace), reseeded.evaluateSubspaceContrast(subspace),
+					0);
+		}
+	}
+
+	@Test
+	public void batch() {
+		SubspaceSet subspaceSet = new SubspaceSet();
+		subspaceSet.addSubspace(new Subspace(0, 1));
+		subspaceSet.addSubspace(new Subspace(2, 4));
+		subspaceSet.addSubspace(new Subspace(0, 1, 2));
+		subspaceSet.addSubspace(new Subspace(1, 2, 3, 4));
+		// The batch draws the seeds in the order of the set, like single
+		// evaluations one after another
+		Contrast single = createContrast(1);
+		double[] expected = new double[subspaceSet.size()];
+		for (int i = 0; i < subspaceSet.size(); i++) {
+			expected[i] = single.evaluateSubspaceContrast(subspaceSet.getSubspace(i));
+		}
+		for (int parallelism = 1; parallelism <= 4; parallelism *= 2) {
+			createContrast(parallelism).evaluateSubspaceContrasts(subspaceSet);
+			for (int i = 0; i < subspaceSet.size(); i++) {
+				assertEquals(expected[i], subspaceSet.getSubspace(i).getContrast(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void sharedSlices() {
+		// The slices of a conditioning dimension only depend on the seed and
+		// the dimension, so a pair evaluated alone gets the same contrast as
+		// in the matrix
+		double[][] expected = new double[numberOfDimensions][numberOfDimensions];
+		for (int i = 0; i < numberOfDimensions; i++) {
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				Subspace pair = new Subspace(i, j);
+				Contrast contrast = createContrast(1);
+				contrast.setSharedTwoDimensionalSlices(true);
+				contrast.evaluateTwoDimensionalContrasts(Collections.singletonList(pair), Double.NaN);
+				expected[i][j] = pair.getContrast();
+				expected[j][i] = pair.getContrast();
+			}
+		}
+		assertTrue(expected[0][1] > expected[0][3]);
+		for (int parallelism = 1; parallelism <= 4; parallelism *= 2) {
+			Contrast contrast = createContrast(parallelism);
+			contrast.setSharedTwoDimensionalSlices(true);
+			double[][] matrix = contrast.evaluateContrastMatrix(numberOfDimensions);
+			for (int i = 0; i < numberOfDimensions; i++) {
+				assertArrayEquals(expected[i], matrix[i], 0);
+			}
+		}
+	}
+
+	@Test
+	public void separateSlicesByDefault() {
+		// Without shared slices, a batch of pairs gets the contrasts of the
+		// pairs evaluated one by one
+		Contrast single = createContrast(1);
+		double[][] expected = new double[numberOfDimensions][numberOfDimensions];
+		for (int i = 0; i < numberOfDimensions; i++) {
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				expected[i][j] = single.evaluateSubspaceContrast(new Subspace(i, j));
+				expected[j][i] = expected[i][j];
+			}
+		}
+		double[][] matrix = createContrast(1).evaluateContrastMatrix(numberOfDimensions);
+		for (int i = 0; i < numberOfDimensions; i++) {
+			assertArrayEquals(expected[i], matrix[i], 0);
+		}
+	}
+
+	/**
+	 * Creates a seeded {@link Contrast} instance with the given parallelism.
+	 */
+	private Contrast createContrast(int parallelism) {
+		Contrast contrast = new Contrast(m, alpha, adapter);
+		contrast.setParallelism(parallelism);
+		contrast.setSeed(seed);
+		return contrast;
+	}
+}
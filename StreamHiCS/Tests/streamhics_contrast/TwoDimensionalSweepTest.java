@@ -0,0 +1,120 @@
+package streamhics_contrast;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fullsystem.TwoDimensionalSweep;
+import streamdatastructures.DataBundle;
+import streamdatastructures.Selection;
+import streamdatastructures.SlidingWindowAdapter;
+import streamdatastructures.Snapshot;
+import streamdatastructures.SummarisationAdapter;
+import weka.core.DenseInstance;
+
+/**
+ * Compares the {@link TwoDimensionalSweep} to a brute force calculation, which
+ * selects the window of every instance and calculates its deviation from the
+ * marginal distribution from scratch.
+ *
+ * @author agent
+ *
+ */
+public class TwoDimensionalSweepTest {
+
+	private static SummarisationAdapter adapter;
+	private static final int numInstances = 300;
+	private static final int numberOfDimensions = 3;
+	private static final double alpha = 0.1;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		// Dimensions 0 and 1 are correlated, dimension 2 is independent and has
+		// many tied values
+		adapter = new SlidingWindowAdapter(numberOfDimensions, numInstances);
+		Random generator = new Random(1);
+		for (int i = 0; i < numInstances; i++) {
+			DenseInstance instance = new DenseInstance(numberOfDimensions);
+			double x = generator.nextGaussian();
+			instance.setValue(0, x);
+			instance.setValue(1, x + 0.3 * generator.nextGaussian());
+			instance.setValue(2, Math.round(4 * generator.nextGaussian()));
+			adapter.add(instance);
+		}
+	}
+
+	@Test
+	public void correlated() {
+		compare(0, 1);
+	}
+
+	@Test
+	public void independent() {
+		compare(0, 2);
+	}
+
+	@Test
+	public void tiedConditioning() {
+		compare(2, 1);
+	}
+
+	/**
+	 * Asserts that the sweep and the brute force calculation agree.
+	 */
+	private void compare(int conditioningDimension, int referenceDimension) {
+		Snapshot snapshot = adapter.getSnapshot();
+		TwoDimensionalSweep sweep = new TwoDimensionalSweep(alpha);
+		double expected = bruteForce(snapshot, conditioningDimension, referenceDimension);
+		assertTrue(expected > 0);
+		assertEquals(expected, sweep.sweep(snapshot, conditioningDimension, referenceDimension), 1e-9);
+	}
+
+	/**
+	 * Calculates the mean deviation of the windows of all instances. Every
+	 * window is selected independently and its cumulative weight is compared
+	 * to the marginal distribution at every distinct reference value.
+	 */
+	private double bruteForce(Snapshot snapshot, int conditioningDimension, int referenceDimension) {
+		DataBundle conditioning = snapshot.getMarginal(conditioningDimension);
+		DataBundle reference = snapshot.getMarginal(referenceDimension);
+		int n = conditioning.size();
+		int[] order = conditioning.getSortedOrder();
+		double[] data = conditioning.getSortedData();
+		double[] weights = conditioning.getSortedWeights();
+		double[] prefixWeights = conditioning.getSortedPrefixWeights();
+		double[] referenceValues = reference.getData();
+		double[] sortedReference = reference.getSortedData();
+		double[] referenceCdf = reference.getSortedCumulativeWeights();
+		double target = alpha * prefixWeights[n];
+		Selection selection = new Selection(0, alpha);
+		double sum = 0;
+		int count = 0;
+		for (int s = 0; s < n; s++) {
+			selection.selectBlock(s, data, prefixWeights, n, 0.000001);
+			int lower = selection.getLower();
+			int upper = selection.getUpper();
+			if (upper - lower < 1) {
+				continue;
+			}
+			double deviation = 0;
+			for (int g = 0; g < n; g++) {
+				if (g < n - 1 && sortedReference[g + 1] == sortedReference[g]) {
+					continue;
+				}
+				double windowWeight = 0;
+				for (int i = lower; i <= upper; i++) {
+					if (referenceValues[order[i]] <= sortedReference[g]) {
+						windowWeight += weights[i];
+					}
+				}
+				deviation = Math.max(deviation, Math.abs(referenceCdf[g] - windowWeight / target));
+			}
+			sum += deviation;
+			count++;
+		}
+		return sum / count;
+	}
+}
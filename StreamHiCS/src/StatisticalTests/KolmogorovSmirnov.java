@@ -1,6 +1,7 @@
 package statisticaltests;
 
 import streamdatastructures.DataBundle;
+import streamdatastructures.ScratchArena;
 
 /**
  * Implements a {@link StatisticalTest} using the Kolmogorov-Smirnov-test.
@@ -78,4 +79,45 @@ public class KolmogorovSmirnov extends StatisticalTest {
 
 		return kolmogorovSmirnovTest.weightedKolmogorovSmirnovStatistic(sample1, weights1, sample2, weights2);
 	}
+
+	@Override
+	public double calculateWeightedDeviationToMarginal(DataBundle marginal, DataBundle dataBundle) {
+		double[] sortedSample1 = marginal.getSortedData();
+		double[] cdf1 = marginal.getSortedCumulativeWeights();
+		double[] sample2 = dataBundle.getData();
+		double[] weights2 = dataBundle.getWeights();
+
+		// Check if all values are the same, special case for KS test
+		boolean same1 = sortedSample1[0] == sortedSample1[sortedSample1.length - 1];
+		boolean same2 = true;
+		for (int i = 0; i < sample2.length; i++) {
+			if (sample2[i] != sample2[0]) {
+				same2 = false;
+				break;
+			}
+		}
+		if (same1 && same2 && sortedSample1[0] == sample2[0]) {
+			return 0;
+		}
+
+		return kolmogorovSmirnovTest.weightedKolmogorovSmirnovStatisticPresorted(sortedSample1, cdf1, sample2,
+				weights2);
+	}
+
+	@Override
+	public double calculateWeightedDeviationToMarginal(DataBundle marginal, ScratchArena arena) {
+		double[] sortedSample1 = marginal.getSortedData();
+		double[] sortedSample2 = arena.getSampleData();
+		int n = sortedSample1.length;
+		int m = arena.getSampleSize();
+
+		// Check if all values are the same, special case for KS test
+		if (sortedSample1[0] == sortedSample1[n - 1] && sortedSample2[0] == sortedSample2[m - 1]
+				&& sortedSample1[0] == sortedSample2[0]) {
+			return 0;
+		}
+
+		return kolmogorovSmirnovTest.weightedKolmogorovSmirnovStatisticSorted(sortedSample1,
+				marginal.getSortedCumulativeWeights(), n, sortedSample2, arena.getSampleCumulativeWeights(), m);
+	}
 }
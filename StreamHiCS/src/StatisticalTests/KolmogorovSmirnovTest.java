@@ -414,6 +414,52 @@ public class KolmogorovSmirnovTest {
 		for (int i = 0; i < weightsX.length; i++) {
 			weightsX[i] /= totalWeightX;
 		}
+
+		// Sort the array
+		MathArrays.sortInPlace(x, weightsX);
+		final int n = x.length;
+
+		// Build the sample distribution
+		double[] cdf_x = new double[n];
+		double accumulator = 0;
+		for (int i = 0; i < n; i++) {
+			accumulator += weightsX[i];
+			cdf_x[i] = accumulator;
+		}
+
+		return weightedKolmogorovSmirnovStatisticPresorted(x, cdf_x, y, weightsY);
+	}
+
+	/**
+	 * Computes the two-sample Kolmogorov-Smirnov test statistic, weighting each
+	 * value according to the given weights, where the first sample is already
+	 * sorted and its cumulative distribution is given. This allows to prepare
+	 * the first sample once and compare it to many second samples.
+	 * 
+	 * @param sortedX
+	 *            first sample, sorted in ascending order
+	 * @param cdfX
+	 *            The cumulative normalised weights of the sorted first sample,
+	 *            i.e. the last value is 1
+	 * @param y
+	 *            second sample
+	 * @param weightsY
+	 *            Weights of the second sample
+	 * @return test statistic \(D_{n,m}\) used to evaluate the null hypothesis
+	 *         that {@code x} and {@code y} represent samples from the same
+	 *         underlying distribution
+	 * @throws InsufficientDataException
+	 *             if either {@code x} or {@code y} does not have length at
+	 *             least 2
+	 * @throws NullArgumentException
+	 *             if either {@code x} or {@code y} is null
+	 */
+	public double weightedKolmogorovSmirnovStatisticPresorted(double[] sortedX, double[] cdfX, double[] y,
+			double[] weightsY) {
+		checkArray(sortedX);
+		checkArray(y);
+
+		// Normalising the weights
 		double totalWeightY = 0;
 		for (int i = 0; i < weightsY.length; i++) {
 			totalWeightY += weightsY[i];
@@ -422,43 +468,70 @@ public class KolmogorovSmirnovTest {
 			weightsY[i] /= totalWeightY;
 		}
 
-		// Sort the arrays
-		MathArrays.sortInPlace(x, weightsX);
+		// Sort the array
 		MathArrays.sortInPlace(y, weightsY);
-		final int n = x.length;
 		final int m = y.length;
 
-		// Find the max difference between cdf_x and cdf_y
-
-		// Build the sample distributions
-		double[] cdf_x = new double[n];
-		double accumulator = 0;
-		for (int i = 0; i < n; i++) {
-			accumulator += weightsX[i];
-			cdf_x[i] = accumulator;
-		}
+		// Build the sample distribution
 		double[] cdf_y = new double[m];
-		accumulator = 0;
+		double accumulator = 0;
 		for (int i = 0; i < m; i++) {
 			accumulator += weightsY[i];
 			cdf_y[i] = accumulator;
 		}
 
+		return weightedKolmogorovSmirnovStatisticSorted(sortedX, cdfX, sortedX.length, y, cdf_y, m);
+	}
+
+	/**
+	 * Computes the two-sample Kolmogorov-Smirnov test statistic for two sorted
+	 * weighted samples, given their cumulative distributions. Only the first n
+	 * (respectively m) entries of the arrays are used, so that the arrays can
+	 * be reused buffers. No memory is allocated.
+	 * 
+	 * @param sortedX
+	 *            first sample, sorted in ascending order
+	 * @param cdfX
+	 *            The cumulative normalised weights of the first sample
+	 * @param n
+	 *            The size of the first sample
+	 * @param sortedY
+	 *            second sample, sorted in ascending order
+	 * @param cdfY
+	 *            The cumulative normalised weights of the second sample
+	 * @param m
+	 *            The size of the second sample
+	 * @return test statistic \(D_{n,m}\) used to evaluate the null hypothesis
+	 *         that {@code x} and {@code y} represent samples from the same
+	 *         underlying distribution
+	 * @throws InsufficientDataException
+	 *             if either {@code n} or {@code m} is smaller than 2
+	 */
+	public double weightedKolmogorovSmirnovStatisticSorted(double[] sortedX, double[] cdfX, int n,
+			double[] sortedY, double[] cdfY, int m) {
+		if (n < 2) {
+			throw new InsufficientDataException(LocalizedFormats.INSUFFICIENT_OBSERVED_POINTS_IN_SAMPLE, n, 2);
+		}
+		if (m < 2) {
+			throw new InsufficientDataException(LocalizedFormats.INSUFFICIENT_OBSERVED_POINTS_IN_SAMPLE, m, 2);
+		}
+
+		// Find the max difference between cdf_x and cdf_y
 		double supD = 0;
 		int yIndex = 0;
 		double cdf_y_value = 0;
 		double curD = 0;
 		// First walk x points
 		for (int i = 0; i < n; i++) {
-			yIndex = Arrays.binarySearch(y, x[i]);
+			yIndex = Arrays.binarySearch(sortedY, 0, m, sortedX[i]);
 			yIndex = yIndex >= 0 ? yIndex : (-yIndex - 1);
 			// yIndex now is always >= 0
 			if (yIndex < m) {
-				cdf_y_value = cdf_y[yIndex];
+				cdf_y_value = cdfY[yIndex];
 			} else {
-				cdf_y_value = cdf_y[m - 1];
+				cdf_y_value = cdfY[m - 1];
 			}
-			curD = FastMath.abs(cdf_x[i] - cdf_y_value);
+			curD = FastMath.abs(cdfX[i] - cdf_y_value);
 			if (curD > supD) {
 				supD = curD;
 			}
@@ -467,15 +540,15 @@ public class KolmogorovSmirnovTest {
 		int xIndex = 0;
 		double cdf_x_value = 0;
 		for (int i = 0; i < m; i++) {
-			xIndex = Arrays.binarySearch(x, y[i]);
+			xIndex = Arrays.binarySearch(sortedX, 0, n, sortedY[i]);
 			xIndex = xIndex >= 0 ? xIndex : (-xIndex - 1);
 			// xIndex now is always >= 0
 			if (xIndex < n) {
-				cdf_x_value = cdf_x[xIndex];
+				cdf_x_value = cdfX[xIndex];
 			} else {
-				cdf_x_value = cdf_x[n - 1];
+				cdf_x_value = cdfX[n - 1];
 			}
-			curD = FastMath.abs(cdf_y[i] - cdf_x_value);
+			curD = FastMath.abs(cdfY[i] - cdf_x_value);
 			if (curD > supD) {
 				supD = curD;
 			}
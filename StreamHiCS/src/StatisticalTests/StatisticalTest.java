@@ -1,6 +1,9 @@
 package statisticaltests;
 
+import java.util.Arrays;
+
 import streamdatastructures.DataBundle;
+import streamdatastructures.ScratchArena;
 
 /**
  * This class represents a statistical test, which compares two samples and
@@ -33,4 +36,43 @@ public abstract class StatisticalTest {
 	 * @return The deviation.
 	 */
 	public abstract double calculateWeightedDeviation(DataBundle dataBundle1, DataBundle dataBundle2);
+
+	/**
+	 * Calculates a deviation value for a marginal sample and a second sample
+	 * with weights. The marginal {@link DataBundle} must be sorted and is not
+	 * changed, so that it can be reused for many comparisons. Subclasses may
+	 * override this method to exploit the sorting.
+	 * 
+	 * @param marginal
+	 *            Contains the sorted marginal sample with the appropriate
+	 *            weights
+	 * @param dataBundle
+	 *            Contains the second sample with the appropriate weights
+	 * @return The deviation.
+	 */
+	public double calculateWeightedDeviationToMarginal(DataBundle marginal, DataBundle dataBundle) {
+		DataBundle copy = new DataBundle(marginal.getData().clone(), marginal.getWeights().clone());
+		return calculateWeightedDeviation(copy, dataBundle);
+	}
+
+	/**
+	 * Calculates a deviation value for a marginal sample and the conditional
+	 * sample held by the given {@link ScratchArena}. The marginal
+	 * {@link DataBundle} must be sorted. Subclasses may override this method to
+	 * calculate the deviation without allocating memory.
+	 * 
+	 * @param marginal
+	 *            Contains the sorted marginal sample with the appropriate
+	 *            weights
+	 * @param arena
+	 *            The {@link ScratchArena} holding the sorted conditional
+	 *            sample
+	 * @return The deviation.
+	 */
+	public double calculateWeightedDeviationToMarginal(DataBundle marginal, ScratchArena arena) {
+		int size = arena.getSampleSize();
+		DataBundle sample = new DataBundle(Arrays.copyOf(arena.getSampleData(), size),
+				Arrays.copyOf(arena.getSampleWeights(), size));
+		return calculateWeightedDeviationToMarginal(marginal, sample);
+	}
 }
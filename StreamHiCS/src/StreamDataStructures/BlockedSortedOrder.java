@@ -0,0 +1,218 @@
+package streamdatastructures;
+
+/**
+ * This class maintains the positions of the instances of a
+ * {@link SlidingWindow} in the sorted order of their values in one dimension.
+ * The order is held in a sequence of sorted blocks of bounded size, so that
+ * inserting and removing a position costs a binary search and shifting the
+ * entries of a single block, and the whole order can be read in linear time.
+ * Ties are broken by the positions, like {@link DataBundle#sort()} breaks them
+ * by the indexes of the instances.
+ *
+ * @author agent
+ *
+ */
+class BlockedSortedOrder {
+
+	/**
+	 * The number of entries of a full block. A full block is split into two
+	 * halves.
+	 */
+	private static final int blockCapacity = 1024;
+
+	/**
+	 * The blocks, each sorted and every entry of a block before every entry of
+	 * the following block.
+	 */
+	private int[][] blocks = new int[4][];
+
+	/**
+	 * The number of entries of every block.
+	 */
+	private int[] counts = new int[4];
+
+	/**
+	 * The number of blocks in use.
+	 */
+	private int numberOfBlocks = 0;
+
+	/**
+	 * The number of entries.
+	 */
+	private int size = 0;
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return The number of entries.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Inserts a position.
+	 *
+	 * @param position
+	 *            The position
+	 * @param values
+	 *            The values at all positions, including the new one
+	 */
+	public void insert(int position, double[] values) {
+		if (numberOfBlocks == 0) {
+			insertBlock(0, new int[blockCapacity]);
+		}
+		int block = findBlock(position, values);
+		int[] entries = blocks[block];
+		int count = counts[block];
+		int index = search(entries, count, position, values);
+		if (index >= 0) {
+			throw new IllegalArgumentException("Position " + position + " is already contained.");
+		}
+		index = -index - 1;
+		System.arraycopy(entries, index, entries, index + 1, count - index);
+		entries[index] = position;
+		counts[block]++;
+		size++;
+		if (counts[block] == blockCapacity) {
+			// Split the block
+			int half = blockCapacity / 2;
+			int[] upper = new int[blockCapacity];
+			System.arraycopy(entries, half, upper, 0, blockCapacity - half);
+			counts[block] = half;
+			insertBlock(block + 1, upper);
+			counts[block + 1] = blockCapacity - half;
+		}
+	}
+
+	/**
+	 * Removes a position. The value at the position must still be the one it
+	 * was inserted with.
+	 *
+	 * @param position
+	 *            The position
+	 * @param values
+	 *            The values at all positions
+	 */
+	public void remove(int position, double[] values) {
+		int block = numberOfBlocks == 0 ? -1 : findBlock(position, values);
+		int index = block < 0 ? -1 : search(blocks[block], counts[block], position, values);
+		if (index < 0) {
+			throw new IllegalArgumentException("Position " + position + " is not contained.");
+		}
+		int[] entries = blocks[block];
+		System.arraycopy(entries, index + 1, entries, index, counts[block] - index - 1);
+		counts[block]--;
+		size--;
+		if (counts[block] == 0) {
+			removeBlock(block);
+		}
+	}
+
+	/**
+	 * Removes all positions.
+	 */
+	public void clear() {
+		for (int i = 0; i < numberOfBlocks; i++) {
+			blocks[i] = null;
+			counts[i] = 0;
+		}
+		numberOfBlocks = 0;
+		size = 0;
+	}
+
+	/**
+	 * Writes the positions in the sorted order to the given array.
+	 *
+	 * @param destination
+	 *            The array, at least of length {@link #size()}
+	 */
+	public void copyTo(int[] destination) {
+		int offset = 0;
+		for (int i = 0; i < numberOfBlocks; i++) {
+			System.arraycopy(blocks[i], 0, destination, offset, counts[i]);
+			offset += counts[i];
+		}
+	}
+
+	/**
+	 * Returns the block a position belongs into, i.e. the first block whose
+	 * last entry is not before it, or the last block.
+	 */
+	private int findBlock(int position, double[] values) {
+		int low = 0;
+		int high = numberOfBlocks - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(blocks[middle][counts[middle] - 1], position, values) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Searches a position in a block like
+	 * {@link java.util.Arrays#binarySearch(int[], int)}, i.e. returns its
+	 * index or (-(insertion point) - 1).
+	 */
+	private static int search(int[] entries, int count, int position, double[] values) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = compare(entries[middle], position, values);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Compares two positions by their values and then by the positions.
+	 */
+	private static int compare(int a, int b, double[] values) {
+		int comparison = Double.compare(values[a], values[b]);
+		if (comparison != 0) {
+			return comparison;
+		}
+		return Integer.compare(a, b);
+	}
+
+	/**
+	 * Inserts a block at the given index.
+	 */
+	private void insertBlock(int index, int[] block) {
+		if (numberOfBlocks == blocks.length) {
+			int[][] grownBlocks = new int[2 * numberOfBlocks][];
+			int[] grownCounts = new int[2 * numberOfBlocks];
+			System.arraycopy(blocks, 0, grownBlocks, 0, numberOfBlocks);
+			System.arraycopy(counts, 0, grownCounts, 0, numberOfBlocks);
+			blocks = grownBlocks;
+			counts = grownCounts;
+		}
+		System.arraycopy(blocks, index, blocks, index + 1, numberOfBlocks - index);
+		System.arraycopy(counts, index, counts, index + 1, numberOfBlocks - index);
+		blocks[index] = block;
+		counts[index] = 0;
+		numberOfBlocks++;
+	}
+
+	/**
+	 * Removes the block at the given index.
+	 */
+	private void removeBlock(int index) {
+		System.arraycopy(blocks, index + 1, blocks, index, numberOfBlocks - index - 1);
+		System.arraycopy(counts, index + 1, counts, index, numberOfBlocks - index - 1);
+		numberOfBlocks--;
+		blocks[numberOfBlocks] = null;
+		counts[numberOfBlocks] = 0;
+	}
+}
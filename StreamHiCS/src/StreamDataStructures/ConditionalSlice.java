@@ -0,0 +1,49 @@
+package streamdatastructures;
+
+/**
+ * This class represents the result of slicing the data on a prefix of
+ * conditioning dimensions, i.e. the indexes of the instances in the
+ * conditional sample. A {@link ConditionalSlice} is immutable, so that it can
+ * be cached and narrowed further by several subspaces sharing the prefix (see
+ * {@link SummarisationAdapter#getConditionalSlice(ConditionalSlice, int, double, java.util.Random, ScratchArena)}).
+ * 
+ * @author agent
+ *
+ */
+public class ConditionalSlice {
+
+	/**
+	 * The indexes of the selected instances.
+	 */
+	private final int[] indexes;
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param indexes
+	 *            The indexes of the selected instances. The array is not
+	 *            copied and must not be changed afterwards.
+	 */
+	public ConditionalSlice(int[] indexes) {
+		this.indexes = indexes;
+	}
+
+	/**
+	 * Returns the number of selected instances.
+	 * 
+	 * @return The number of selected instances.
+	 */
+	public int size() {
+		return indexes.length;
+	}
+
+	/**
+	 * Returns the indexes of the selected instances. The array must not be
+	 * changed.
+	 * 
+	 * @return The indexes of the selected instances.
+	 */
+	public int[] getIndexes() {
+		return indexes;
+	}
+}
@@ -120,6 +120,28 @@ public class CoresetAdapter extends SummarisationAdapter {
 		}
 	}
 
+	@Override
+	protected Snapshot createSnapshot(long epoch, long clearEpoch, SlicingMethod slicingMethod) {
+		if (getNumberOfElements() == 0) {
+			return createSnapshot(new double[0][], new double[0], epoch, clearEpoch, slicingMethod);
+		}
+		if (currentCoreset == null) {
+			currentCoreset = bucketManager.getCoresetFromManager(d);
+		}
+
+		int n = currentCoreset.length;
+		double[][] points = new double[n][];
+		double[] weights = new double[n];
+		Point p;
+		for (int i = 0; i < n; i++) {
+			p = currentCoreset[i];
+			points[i] = p.getCoordinates();
+			weights[i] = p.getWeight();
+		}
+
+		return createSnapshot(points, weights, epoch, clearEpoch, slicingMethod);
+	}
+
 	@Override
 	public int getNumberOfElements() {
 		if (currentCoreset == null) {
@@ -0,0 +1,560 @@
+package streamdatastructures;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.math3.util.MathArrays;
+
+import weka.core.Instance;
+
+/**
+ * The base class of the stream summaries which estimate the Pearson's
+ * correlation coefficient for each pair of dimensions. A subclass keeps its
+ * summary and calculates the coefficients from it, either of a single pair by
+ * {@link #calculateCorrelation(int, int)} or of all pairs by
+ * {@link #prepareCoefficients()} and
+ * {@link #calculateCoefficients(int, double[])}. This class provides the
+ * correlation matrix and the candidate index on top of them.
+ * 
+ * The candidate index contains the pairs whose coefficient reaches a
+ * threshold, possibly limited to the ones with the highest coefficients. It
+ * is refreshed by a pass over all pairs when it is read after the summary
+ * changed.
+ * 
+ * @author agent
+ *
+ */
+public abstract class CorrelationEstimator {
+
+	/**
+	 * The number of dimensions of the stream.
+	 */
+	private final int numberOfDimensions;
+
+	/**
+	 * The number of threads writing the correlation matrix.
+	 */
+	private int parallelism = 1;
+
+	/**
+	 * The {@link ForkJoinPool} writing the correlation matrix, if parallelism
+	 * is greater than 1.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * The minimal coefficient of a pair in the candidate index, NaN if no
+	 * index is maintained.
+	 */
+	private double candidateThreshold = Double.NaN;
+
+	/**
+	 * The maximal number of pairs in the candidate index. If more pairs reach
+	 * the threshold, the ones with the highest coefficients are kept.
+	 */
+	private int maximumNumberOfCandidates = Integer.MAX_VALUE;
+
+	/**
+	 * The first dimensions of the candidate pairs.
+	 */
+	private int[] candidateFirstDimensions = new int[16];
+
+	/**
+	 * The second dimensions of the candidate pairs.
+	 */
+	private int[] candidateSecondDimensions = new int[16];
+
+	/**
+	 * The coefficients of the candidate pairs.
+	 */
+	private double[] candidateCoefficients = new double[16];
+
+	/**
+	 * The number of candidate pairs.
+	 */
+	private int numberOfCandidates = 0;
+
+	/**
+	 * The buffer receiving the coefficients of a dimension while the candidate
+	 * index is refreshed.
+	 */
+	private double[] candidateRow;
+
+	/**
+	 * Whether the candidate index reflects the current summary.
+	 */
+	private boolean candidatesValid = false;
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the stream
+	 */
+	protected CorrelationEstimator(int numberOfDimensions) {
+		this.numberOfDimensions = numberOfDimensions;
+	}
+
+	/**
+	 * Returns the factor by which a summary fades with every instance, such
+	 * that the weight of an instance has faded to 0.01 after the horizon.
+	 * 
+	 * @param horizon
+	 *            The horizon
+	 * @return The fading factor.
+	 */
+	protected static double calculateFadingFactor(int horizon) {
+		double negLambda = Math.log(0.01) / Math.log(2) / (double) horizon;
+		return Math.pow(2, negLambda);
+	}
+
+	/**
+	 * Returns the number of dimensions of the stream.
+	 * 
+	 * @return The number of dimensions.
+	 */
+	public int getNumberOfDimensions() {
+		return numberOfDimensions;
+	}
+
+	/**
+	 * Adds a stream instance's values to the summary. The instance may be
+	 * buffered until {@link #flush()}.
+	 * 
+	 * @param instance
+	 *            The instance
+	 */
+	public abstract void addInstance(Instance instance);
+
+	/**
+	 * Adds the buffered instances to the summary.
+	 */
+	public abstract void flush();
+
+	/**
+	 * Clears the summary by resetting all values to 0.
+	 */
+	public abstract void clear();
+
+	/**
+	 * Calculates the Pearson's correlation coefficient of two given dimensions
+	 * from the summary.
+	 * 
+	 * @param dim1
+	 *            The first dimension
+	 * @param dim2
+	 *            The second dimension
+	 * @return The Pearson's correlation coefficient for the two dimensions.
+	 */
+	public abstract double calculateCorrelation(int dim1, int dim2);
+
+	/**
+	 * Prepares the calculation of the coefficients of all pairs by
+	 * {@link #calculateCoefficients(int, double[])}, after the buffered
+	 * instances were added.
+	 */
+	protected abstract void prepareCoefficients();
+
+	/**
+	 * Calculates the coefficients of a dimension with all following
+	 * dimensions, after {@link #prepareCoefficients()}. The results are the
+	 * same as the ones of {@link #calculateCorrelation(int, int)}. May be
+	 * called by several threads at once.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @param coefficients
+	 *            The array receiving the coefficient with dimension j at
+	 *            index j, for all j greater than the dimension
+	 */
+	protected abstract void calculateCoefficients(int dimension, double[] coefficients);
+
+	/**
+	 * Returns the margin by which the coefficients of this summary may
+	 * underestimate the true coefficients. Pairs whose coefficient reaches a
+	 * threshold reduced by the margin are candidates for the threshold.
+	 * 
+	 * @return The margin.
+	 */
+	public abstract double getScreeningMargin();
+
+	/**
+	 * Returns a new matrix containing the correlation coefficients. Callers
+	 * evaluating the matrix repeatedly should use
+	 * {@link #getCorrelationMatrix(double[][])} or
+	 * {@link #calculateCorrelation(int, int)}.
+	 * 
+	 * @return A matrix containing the correlation coefficients.
+	 */
+	public double[][] getCorrelationMatrix() {
+		return getCorrelationMatrix(null);
+	}
+
+	/**
+	 * Writes the correlation coefficients to the given matrix and returns it.
+	 * The diagonal is set to 0. If the matrix is null or does not have the
+	 * right size, a new one is allocated. If the parallelism is greater than
+	 * 1, the rows are written by several threads.
+	 * 
+	 * @param matrix
+	 *            The matrix to reuse, may be null
+	 * @return The matrix containing the correlation coefficients.
+	 */
+	public double[][] getCorrelationMatrix(double[][] matrix) {
+		flush();
+		if (!fits(matrix)) {
+			matrix = new double[numberOfDimensions][numberOfDimensions];
+		}
+		prepareCoefficients();
+		if (pool != null && numberOfDimensions > 1) {
+			pool.invoke(new MatrixTask(matrix, 0, numberOfDimensions));
+		} else {
+			writeRows(matrix, 0, numberOfDimensions);
+		}
+		return matrix;
+	}
+
+	/**
+	 * Checks whether a matrix has the size of the correlation matrix.
+	 * 
+	 * @param matrix
+	 *            The matrix
+	 * @return True, if the matrix is not null and has the right size.
+	 */
+	private boolean fits(double[][] matrix) {
+		if (matrix == null || matrix.length != numberOfDimensions) {
+			return false;
+		}
+		for (double[] row : matrix) {
+			if (row == null || row.length != numberOfDimensions) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the coefficients of the rows from (inclusive) to to (exclusive)
+	 * of the upper triangle and their mirror images to the matrix.
+	 * 
+	 * @param matrix
+	 *            The matrix
+	 * @param from
+	 *            The first row
+	 * @param to
+	 *            The row after the last one
+	 */
+	private void writeRows(double[][] matrix, int from, int to) {
+		double[] row;
+		for (int i = from; i < to; i++) {
+			row = matrix[i];
+			calculateCoefficients(i, row);
+			row[i] = 0;
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				matrix[j][i] = row[j];
+			}
+		}
+	}
+
+	/**
+	 * Sets the threshold of the candidate index: the index contains the pairs
+	 * of dimensions whose coefficient is at least the threshold. NaN stops
+	 * maintaining the index.
+	 * 
+	 * @param threshold
+	 *            The threshold
+	 */
+	public void setCandidateThreshold(double threshold) {
+		candidateThreshold = threshold;
+		candidatesValid = false;
+	}
+
+	/**
+	 * Makes sure that the candidate index contains all pairs whose coefficient
+	 * is at least the given threshold, by lowering the threshold of the index
+	 * if necessary or starting to maintain it.
+	 * 
+	 * @param threshold
+	 *            The threshold
+	 */
+	public void requireCandidateThreshold(double threshold) {
+		if (Double.isNaN(candidateThreshold) || threshold < candidateThreshold) {
+			setCandidateThreshold(threshold);
+		}
+	}
+
+	/**
+	 * Returns the threshold of the candidate index.
+	 * 
+	 * @return The threshold, NaN if no index is maintained.
+	 */
+	public double getCandidateThreshold() {
+		return candidateThreshold;
+	}
+
+	/**
+	 * Sets the maximal number of pairs in the candidate index. If more pairs
+	 * reach the threshold, only the ones with the highest coefficients are
+	 * kept.
+	 * 
+	 * @param maximumNumberOfCandidates
+	 *            The maximal number of pairs. Must be positive.
+	 */
+	public void setMaximumNumberOfCandidates(int maximumNumberOfCandidates) {
+		if (maximumNumberOfCandidates < 1) {
+			throw new IllegalArgumentException("The maximum number of candidates must be positive.");
+		}
+		this.maximumNumberOfCandidates = maximumNumberOfCandidates;
+		candidatesValid = false;
+	}
+
+	/**
+	 * Returns the maximal number of pairs in the candidate index.
+	 * 
+	 * @return The maximal number of pairs.
+	 */
+	public int getMaximumNumberOfCandidates() {
+		return maximumNumberOfCandidates;
+	}
+
+	/**
+	 * Returns the number of pairs in the candidate index. The buffered
+	 * instances are added first and the index is refreshed if necessary. The
+	 * pairs are ordered by their first and then by their second dimension.
+	 * 
+	 * @return The number of candidate pairs, 0 if no index is maintained.
+	 */
+	public int getNumberOfCandidates() {
+		flush();
+		if (Double.isNaN(candidateThreshold)) {
+			return 0;
+		}
+		if (!candidatesValid) {
+			refreshCandidates();
+		}
+		return numberOfCandidates;
+	}
+
+	/**
+	 * Returns the first dimension of a candidate pair. Valid after
+	 * {@link #getNumberOfCandidates()} until instances are added.
+	 * 
+	 * @param candidate
+	 *            The index of the candidate pair
+	 * @return The first dimension, which is lower than the second one.
+	 */
+	public int getCandidateFirstDimension(int candidate) {
+		return candidateFirstDimensions[candidate];
+	}
+
+	/**
+	 * Returns the second dimension of a candidate pair. Valid after
+	 * {@link #getNumberOfCandidates()} until instances are added.
+	 * 
+	 * @param candidate
+	 *            The index of the candidate pair
+	 * @return The second dimension.
+	 */
+	public int getCandidateSecondDimension(int candidate) {
+		return candidateSecondDimensions[candidate];
+	}
+
+	/**
+	 * Returns the correlation coefficient of a candidate pair, the same as
+	 * {@link #calculateCorrelation(int, int)}. Valid after
+	 * {@link #getNumberOfCandidates()} until instances are added.
+	 * 
+	 * @param candidate
+	 *            The index of the candidate pair
+	 * @return The correlation coefficient.
+	 */
+	public double getCandidateCoefficient(int candidate) {
+		return candidateCoefficients[candidate];
+	}
+
+	/**
+	 * Collects the pairs reaching the threshold in a single pass over all
+	 * pairs and keeps the ones with the highest coefficients if there are too
+	 * many.
+	 */
+	private void refreshCandidates() {
+		prepareCoefficients();
+		startCandidates();
+		if (candidateRow == null) {
+			candidateRow = new double[numberOfDimensions];
+		}
+		double[] row = candidateRow;
+		for (int i = 0; i < numberOfDimensions; i++) {
+			calculateCoefficients(i, row);
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				if (row[j] >= candidateThreshold) {
+					addCandidate(i, j, row[j]);
+				}
+			}
+		}
+		completeCandidates();
+	}
+
+	/**
+	 * Marks the candidate index as outdated, so that it is refreshed when it
+	 * is read the next time. Called whenever the summary changes.
+	 */
+	protected void invalidateCandidates() {
+		candidatesValid = false;
+	}
+
+	/**
+	 * Empties the candidate index before it is rebuilt.
+	 */
+	private void startCandidates() {
+		numberOfCandidates = 0;
+	}
+
+	/**
+	 * Appends a pair reaching the threshold to the candidate index. The pairs
+	 * have to be appended in their order.
+	 * 
+	 * @param first
+	 *            The first dimension
+	 * @param second
+	 *            The second dimension
+	 * @param coefficient
+	 *            The correlation coefficient
+	 */
+	private void addCandidate(int first, int second, double coefficient) {
+		if (numberOfCandidates == candidateCoefficients.length) {
+			int capacity = 2 * numberOfCandidates;
+			candidateFirstDimensions = Arrays.copyOf(candidateFirstDimensions, capacity);
+			candidateSecondDimensions = Arrays.copyOf(candidateSecondDimensions, capacity);
+			candidateCoefficients = Arrays.copyOf(candidateCoefficients, capacity);
+		}
+		candidateFirstDimensions[numberOfCandidates] = first;
+		candidateSecondDimensions[numberOfCandidates] = second;
+		candidateCoefficients[numberOfCandidates] = coefficient;
+		numberOfCandidates++;
+	}
+
+	/**
+	 * Completes a rebuilt candidate index: keeps the pairs with the highest
+	 * coefficients if there are too many and marks the index as valid.
+	 */
+	private void completeCandidates() {
+		if (numberOfCandidates > maximumNumberOfCandidates) {
+			keepHighestCandidates();
+		}
+		candidatesValid = true;
+	}
+
+	/**
+	 * Reduces the candidate index to the pairs with the highest coefficients,
+	 * keeping the order of the pairs.
+	 */
+	private void keepHighestCandidates() {
+		// Sort the positions by descending coefficient, ties by position
+		double[] keys = new double[numberOfCandidates];
+		double[] positions = new double[numberOfCandidates];
+		for (int c = 0; c < numberOfCandidates; c++) {
+			keys[c] = -candidateCoefficients[c];
+			positions[c] = c;
+		}
+		MathArrays.sortInPlace(keys, positions);
+		int[] kept = new int[maximumNumberOfCandidates];
+		for (int c = 0; c < maximumNumberOfCandidates; c++) {
+			kept[c] = (int) positions[c];
+		}
+		Arrays.sort(kept);
+		// kept is ascending, so the pairs can be moved forward in place
+		for (int c = 0; c < maximumNumberOfCandidates; c++) {
+			candidateFirstDimensions[c] = candidateFirstDimensions[kept[c]];
+			candidateSecondDimensions[c] = candidateSecondDimensions[kept[c]];
+			candidateCoefficients[c] = candidateCoefficients[kept[c]];
+		}
+		numberOfCandidates = maximumNumberOfCandidates;
+	}
+
+	/**
+	 * Sets the number of threads writing the correlation matrix. A parallelism
+	 * of 1 writes it on the calling thread.
+	 * 
+	 * @param parallelism
+	 *            The number of threads. Must be positive.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive.");
+		}
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism;
+		if (parallelism > 1) {
+			pool = new ForkJoinPool(parallelism);
+		}
+	}
+
+	/**
+	 * Returns the number of threads writing the correlation matrix.
+	 * 
+	 * @return The number of threads.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * A task writing a range of rows of the correlation matrix. The rows at
+	 * the top of the triangle are the longest, so the range is split at the
+	 * row which halves the number of coefficients. Every task writes only the
+	 * entries of its rows and their mirror images.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private class MatrixTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The minimal number of coefficients of a task which is split.
+		 */
+		private static final int sequentialThreshold = 1 << 14;
+
+		private final double[][] matrix;
+		private final int from;
+		private final int to;
+
+		private MatrixTask(double[][] matrix, int from, int to) {
+			this.matrix = matrix;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			long coefficients = coefficients(from) - coefficients(to);
+			if (to - from == 1 || coefficients <= sequentialThreshold) {
+				writeRows(matrix, from, to);
+			} else {
+				// The first row after which at most half of the coefficients
+				// remain
+				long half = coefficients(to) + coefficients / 2;
+				int middle = from + 1;
+				while (middle < to - 1 && coefficients(middle) > half) {
+					middle++;
+				}
+				invokeAll(new MatrixTask(matrix, from, middle), new MatrixTask(matrix, middle, to));
+			}
+		}
+
+		/**
+		 * Returns the number of coefficients in the rows from the given one to
+		 * the last one.
+		 */
+		private long coefficients(int row) {
+			long remaining = numberOfDimensions - row;
+			return remaining * (remaining - 1) / 2;
+		}
+	}
+}
@@ -6,15 +6,40 @@ import weka.core.Instance;
  * Maintains a stream summary in order to calculate the Pearson's correlation
  * coefficient for each pair of dimensions.
  * 
+ * The summary is faded exponentially. Instead of fading all sums with every
+ * instance, the sums are stored in units of fadingFactor^-t: the instance
+ * arriving at time t is added with the weight fadingFactor^-t, so that the
+ * older instances lose weight relative to it. Since the correlation
+ * coefficients do not depend on a common scale of all sums, they are
+ * calculated from the stored sums directly. Only when the weight grows too
+ * large, the sums are brought back to the scale of the current time.
+ * 
+ * The instances are added in batches: they are buffered and folded into the
+ * sums together, a block of columns of the product matrix at a time, so that
+ * every block of the matrix is loaded once per batch instead of once per
+ * instance. Every sum still receives the instances in their order of arrival,
+ * so the result does not depend on the batch size. The buffer is flushed
+ * before the correlation coefficients are calculated.
+ * 
+ * Only the products of distinct pairs of dimensions are needed, so they are
+ * stored as a packed upper triangle, row after row. The coefficients are
+ * calculated on demand by {@link #calculateCorrelation(int, int)}, or written
+ * to a matrix which can be reused by the caller.
+ * 
+ * Optionally, an index of the candidate pairs is maintained: the pairs whose
+ * coefficient reaches a threshold, possibly limited to the ones with the
+ * highest coefficients. Adding instances only marks the index as outdated;
+ * it is rebuilt by a pass over all pairs when it is read, which happens when
+ * the subspaces are built, not with every batch.
+ * 
+ * The correlation matrix and the candidate index are provided by
+ * {@link CorrelationEstimator}, which this class shares with the approximate
+ * {@link SketchCorrelationSummary}.
+ * 
  * @author Vincent
  *
  */
-public class CorrelationSummary {
-
-	/**
-	 * The number of dimensions of the stream.
-	 */
-	private int numberOfDimensions;
+public class CorrelationSummary extends CorrelationEstimator {
 
 	/**
 	 * The number of instances which have arrived.
@@ -32,53 +57,252 @@ public class CorrelationSummary {
 	private double[] squaredSums;
 
 	/**
-	 * The sums of the products for each pair of dimensions.
+	 * The sums of the products for each pair of dimensions i < j, as a packed
+	 * upper triangle without the diagonal. The product of i and j is at
+	 * rowOffsets[i] + j.
+	 */
+	private double[] products;
+
+	/**
+	 * The offset of every row of the packed upper triangle, such that the
+	 * product of i and j is at rowOffsets[i] + j.
 	 */
-	private double[][] products;
+	private int[] rowOffsets;
 
+	/**
+	 * The factor by which the summary fades with every instance.
+	 */
 	private double fadingFactor;
 
 	/**
-	 * Creates an instance of this class.
+	 * The weight with which the last instance was added, i.e. fadingFactor^-t
+	 * since the last rescaling. The true faded sums are the stored sums
+	 * divided by it.
+	 */
+	private double weight = 1;
+
+	/**
+	 * The weight above which the sums are rescaled, leaving ample room before
+	 * an overflow.
+	 */
+	private static final double maxWeight = Math.pow(2, 64);
+
+	/**
+	 * The default number of instances in a batch.
+	 */
+	public static final int defaultBatchSize = 64;
+
+	/**
+	 * The number of columns of the product matrix updated together, so that
+	 * the corresponding part of the batch stays in the cache.
+	 */
+	private static final int columnBlockSize = 256;
+
+	/**
+	 * The buffered instances, one row per instance.
+	 */
+	private double[][] batch;
+
+	/**
+	 * The buffered instances multiplied by their weights.
+	 */
+	private double[][] weightedBatch;
+
+	/**
+	 * The weights of the buffered instances.
+	 */
+	private double[] batchWeights;
+
+	/**
+	 * The number of buffered instances.
+	 */
+	private int batchCount = 0;
+
+	/**
+	 * The buffer holding a part of a row of the products while the batch is
+	 * added to it.
+	 */
+	private double[] rowBuffer;
+
+	/**
+	 * The result of {@link #deviation(int)} for every dimension, prepared by
+	 * {@link #prepareCoefficients()}.
+	 */
+	private double[] deviations;
+
+	/**
+	 * Creates an instance of this class with the default batch size.
 	 * 
 	 * @param numberOfDimensions
 	 *            The number of dimensions of the stream
+	 * @param horizon
+	 *            The number of instances after which the weight of an
+	 *            instance has faded to 0.01
 	 */
 	public CorrelationSummary(int numberOfDimensions, int horizon) {
-		this.numberOfDimensions = numberOfDimensions;
+		this(numberOfDimensions, horizon, defaultBatchSize);
+	}
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the stream
+	 * @param horizon
+	 *            The number of instances after which the weight of an
+	 *            instance has faded to 0.01
+	 * @param batchSize
+	 *            The number of instances buffered before they are added to
+	 *            the sums. 1 adds every instance immediately.
+	 */
+	public CorrelationSummary(int numberOfDimensions, int horizon, int batchSize) {
+		super(numberOfDimensions);
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("The batch size cannot be 0 or negative.");
+		}
+		deviations = new double[numberOfDimensions];
+		batch = new double[batchSize][numberOfDimensions];
+		weightedBatch = new double[batchSize][numberOfDimensions];
+		batchWeights = new double[batchSize];
+		rowBuffer = new double[numberOfDimensions];
 		linearSums = new double[numberOfDimensions];
 		squaredSums = new double[numberOfDimensions];
-		products = new double[numberOfDimensions][numberOfDimensions];
-		double negLambda = Math.log(0.01) / Math.log(2) / (double) horizon;
-		fadingFactor = Math.pow(2, negLambda);
+		long numberOfProducts = (long) numberOfDimensions * (numberOfDimensions - 1) / 2;
+		if (numberOfProducts > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many dimensions: " + numberOfDimensions);
+		}
+		products = new double[(int) numberOfProducts];
+		rowOffsets = new int[numberOfDimensions];
+		int offset = 0;
+		for (int i = 0; i < numberOfDimensions; i++) {
+			// Row i holds the columns i + 1 to numberOfDimensions - 1
+			rowOffsets[i] = offset - (i + 1);
+			offset += numberOfDimensions - (i + 1);
+		}
+		fadingFactor = calculateFadingFactor(horizon);
 	}
 
 	/**
-	 * Adds a stream instance's values to the summary. Before we fade the
-	 * summary.
+	 * Adds a stream instance's values to the summary. The instance is added
+	 * with a weight which grows by 1 / fadingFactor with every instance, which
+	 * fades the summary without touching the stored sums. The instance is
+	 * buffered and added to the sums when the batch is full.
 	 * 
 	 * @param instance
 	 *            The instance
 	 */
+	@Override
 	public void addInstance(Instance instance) {
-		double[] vector = instance.toDoubleArray();
+		int numberOfDimensions = getNumberOfDimensions();
+		if (weight > maxWeight) {
+			flush();
+			rescale();
+		}
+		weight /= fadingFactor;
+		double[] vector = batch[batchCount];
+		double[] weightedVector = weightedBatch[batchCount];
 		for (int i = 0; i < numberOfDimensions; i++) {
-			linearSums[i] *= fadingFactor;
-			linearSums[i] += vector[i];
-			squaredSums[i] *= fadingFactor;
-			squaredSums[i] += vector[i] * vector[i];
-			for (int j = i + 1; j < numberOfDimensions; j++) {
-				products[i][j] *= fadingFactor;
-				products[i][j] += vector[i] * vector[j];
+			vector[i] = instance.value(i);
+			weightedVector[i] = weight * vector[i];
+		}
+		batchWeights[batchCount] = weight;
+		batchCount++;
+		if (batchCount == batch.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Adds the buffered instances to the sums. The product matrix is updated
+	 * in blocks of columns; within a block every row of the matrix receives
+	 * all instances of the batch before the next row is loaded.
+	 */
+	@Override
+	public void flush() {
+		if (batchCount == 0) {
+			return;
+		}
+		int numberOfDimensions = getNumberOfDimensions();
+		double[] vector;
+		double[] weightedVector;
+		for (int k = 0; k < batchCount; k++) {
+			vector = batch[k];
+			weightedVector = weightedBatch[k];
+			for (int i = 0; i < numberOfDimensions; i++) {
+				linearSums[i] += weightedVector[i];
+				squaredSums[i] += weightedVector[i] * vector[i];
 			}
+			n += batchWeights[k];
+		}
+
+		double[] row = rowBuffer;
+		double weightedValue;
+		int from;
+		int to;
+		int offset;
+		for (int blockStart = 0; blockStart < numberOfDimensions; blockStart += columnBlockSize) {
+			to = Math.min(blockStart + columnBlockSize, numberOfDimensions);
+			for (int i = 0; i < to - 1; i++) {
+				from = Math.max(i + 1, blockStart);
+				offset = rowOffsets[i];
+				// The part of the packed row is updated in a buffer indexed
+				// like the instances, which keeps the inner loops simple
+				System.arraycopy(products, offset + from, row, from, to - from);
+				int k = 0;
+				// Four instances at a time, adding their products in the
+				// order of arrival
+				for (; k + 3 < batchCount; k += 4) {
+					double w0 = weightedBatch[k][i];
+					double w1 = weightedBatch[k + 1][i];
+					double w2 = weightedBatch[k + 2][i];
+					double w3 = weightedBatch[k + 3][i];
+					double[] x0 = batch[k];
+					double[] x1 = batch[k + 1];
+					double[] x2 = batch[k + 2];
+					double[] x3 = batch[k + 3];
+					for (int j = from; j < to; j++) {
+						row[j] = row[j] + w0 * x0[j] + w1 * x1[j] + w2 * x2[j] + w3 * x3[j];
+					}
+				}
+				for (; k < batchCount; k++) {
+					weightedValue = weightedBatch[k][i];
+					vector = batch[k];
+					for (int j = from; j < to; j++) {
+						row[j] += weightedValue * vector[j];
+					}
+				}
+				System.arraycopy(row, from, products, offset + from, to - from);
+			}
+		}
+		batchCount = 0;
+		// The candidate index is rebuilt when it is read the next time
+		invalidateCandidates();
+	}
+
+	/**
+	 * Divides all sums by the current weight, so that they are the true faded
+	 * sums, and resets the weight to 1.
+	 */
+	private void rescale() {
+		int numberOfDimensions = getNumberOfDimensions();
+		double scale = 1 / weight;
+		for (int i = 0; i < numberOfDimensions; i++) {
+			linearSums[i] *= scale;
+			squaredSums[i] *= scale;
+		}
+		for (int p = 0; p < products.length; p++) {
+			products[p] *= scale;
 		}
-		n *= fadingFactor;
-		n++;
+		n *= scale;
+		weight = 1;
+		// The coefficients may change in the last bits
+		invalidateCandidates();
 	}
 
 	/**
 	 * Calculates the Pearson's correlation coefficient of two given dimensions
-	 * form the summary.
+	 * form the summary. The coefficient is invariant to the scale of the
+	 * stored sums.
 	 * 
 	 * @param dim1
 	 *            The first dimension
@@ -86,49 +310,98 @@ public class CorrelationSummary {
 	 *            The second dimension
 	 * @return The Pearson's correlation coefficient for the two dimensions.
 	 */
+	@Override
 	public double calculateCorrelation(int dim1, int dim2) {
 		assert (dim1 != dim2);
+		flush();
 		if (dim1 > dim2) {
 			int temp = dim1;
 			dim1 = dim2;
 			dim2 = temp;
 		}
 		double a = linearSums[dim1];
-		double a2 = squaredSums[dim1];
 		double b = linearSums[dim2];
-		double b2 = squaredSums[dim2];
-		return (products[dim1][dim2] - a * b / n) / (Math.sqrt(a2 - a * a / n) * Math.sqrt(b2 - b * b / n));
+		return (products[rowOffsets[dim1] + dim2] - a * b / n) / (deviation(dim1) * deviation(dim2));
 	}
 
 	/**
-	 * Returns a matrix containing the correlation coefficients.
+	 * Returns the square root of the centred squared sum of a dimension, the
+	 * denominator of the coefficient up to a common scale.
 	 * 
-	 * @return A matrix containing the correlation coefficients.
+	 * @param dimension
+	 *            The dimension
+	 * @return The square root of the centred squared sum.
+	 */
+	private double deviation(int dimension) {
+		double a = linearSums[dimension];
+		return Math.sqrt(squaredSums[dimension] - a * a / n);
+	}
+
+	/**
+	 * Prepares the calculation of the coefficients of all pairs by
+	 * {@link #calculateCoefficients(int, double[])}, after the buffered
+	 * instances were added.
 	 */
-	public double[][] getCorrelationMatrix() {
-		double[][] coefficientMatrix = new double[numberOfDimensions][numberOfDimensions];
-		double coefficient;
+	@Override
+	protected void prepareCoefficients() {
+		int numberOfDimensions = getNumberOfDimensions();
 		for (int i = 0; i < numberOfDimensions; i++) {
-			for (int j = i + 1; j < numberOfDimensions; j++) {
-				coefficient = calculateCorrelation(i, j);
-				coefficientMatrix[i][j] = coefficient;
-				coefficientMatrix[j][i] = coefficient;
-			}
+			deviations[i] = deviation(i);
 		}
-		return coefficientMatrix;
+	}
+
+	/**
+	 * Calculates the coefficients of a dimension with all following
+	 * dimensions, after {@link #prepareCoefficients()}. The results are the
+	 * same as the ones of {@link #calculateCorrelation(int, int)}. May be
+	 * called by several threads at once.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @param coefficients
+	 *            The array receiving the coefficient with dimension j at
+	 *            index j, for all j greater than the dimension
+	 */
+	@Override
+	protected void calculateCoefficients(int dimension, double[] coefficients) {
+		int numberOfDimensions = getNumberOfDimensions();
+		double a = linearSums[dimension];
+		double deviation = deviations[dimension];
+		int offset = rowOffsets[dimension];
+		for (int j = dimension + 1; j < numberOfDimensions; j++) {
+			coefficients[j] = (products[offset + j] - a * linearSums[j] / n) / (deviation * deviations[j]);
+		}
+	}
+
+	/**
+	 * Returns the margin by which the coefficients of this summary may
+	 * underestimate the true coefficients. Pairs whose coefficient reaches a
+	 * threshold reduced by the margin are candidates for the threshold. The
+	 * coefficients of this class are exact, so the margin is 0.
+	 * 
+	 * @return The margin.
+	 */
+	@Override
+	public double getScreeningMargin() {
+		return 0;
 	}
 
 	/**
 	 * Clears the correlation summary by resetting all values to 0.
 	 */
+	@Override
 	public void clear() {
+		int numberOfDimensions = getNumberOfDimensions();
 		for (int i = 0; i < numberOfDimensions; i++) {
 			linearSums[i] = 0;
 			squaredSums[i] = 0;
-			for (int j = i + 1; j < numberOfDimensions; j++) {
-				products[i][j] = 0;
-			}
+		}
+		for (int p = 0; p < products.length; p++) {
+			products[p] = 0;
 		}
 		n = 0;
+		weight = 1;
+		batchCount = 0;
+		invalidateCandidates();
 	}
 }
@@ -22,9 +22,14 @@ public class DataBundle {
 	private double[] weights;
 
 	/**
-	 * The indexes after sorting.
+	 * The indexes after sorting, i.e. the instance at every rank.
 	 */
-	private double[] sortedIndexes;
+	private int[] sortedOrder;
+
+	/**
+	 * The rank of every instance in the sorted order.
+	 */
+	private int[] ranks;
 
 	/**
 	 * The sorted data.
@@ -36,6 +41,17 @@ public class DataBundle {
 	 */
 	private double[] sortedWeights;
 
+	/**
+	 * The prefix sums of the weights after sorting, starting with 0.
+	 */
+	private double[] sortedPrefixWeights;
+
+	/**
+	 * The cumulative normalised weights after sorting, i.e. the cumulative
+	 * distribution at the sorted data points.
+	 */
+	private double[] sortedCumulativeWeights;
+
 	/**
 	 * Creates an instance of this class.
 	 * 
@@ -73,15 +89,46 @@ public class DataBundle {
 
 	/**
 	 * Returns the indexes which are sorted according to the data, if the data
-	 * was sorted.
+	 * was sorted. The array is created from {@link #getSortedOrder()} on every
+	 * call, which should be preferred.
 	 * 
 	 * @return The indexes which are sorted according to the data, if the data
-	 *         was sorted.
+	 *         was sorted, null otherwise.
 	 */
 	public double[] getSortedIndexes() {
+		if (sortedOrder == null) {
+			return null;
+		}
+		int n = sortedOrder.length;
+		double[] sortedIndexes = new double[n];
+		for (int i = 0; i < n; i++) {
+			sortedIndexes[i] = sortedOrder[i];
+		}
 		return sortedIndexes;
 	}
 
+	/**
+	 * Returns the indexes which are sorted according to the data as int, i.e.
+	 * the index of the instance at every rank, if the data was sorted.
+	 * 
+	 * @return The indexes which are sorted according to the data, if the data
+	 *         was sorted.
+	 */
+	public int[] getSortedOrder() {
+		return sortedOrder;
+	}
+
+	/**
+	 * Returns the rank of every instance in the sorted order, if the data was
+	 * sorted. Instances with equal values have different ranks in the order of
+	 * their indexes.
+	 * 
+	 * @return The ranks of the instances, if the data was sorted.
+	 */
+	public int[] getRanks() {
+		return ranks;
+	}
+
 	/**
 	 * Returns the sorted data, if the data was sorted.
 	 * 
@@ -102,6 +149,37 @@ public class DataBundle {
 		return sortedWeights;
 	}
 
+	/**
+	 * Returns the prefix sums of the weights in the order of the sorted data,
+	 * if the data was sorted. The array has n + 1 entries, the i-th entry is
+	 * the total weight of the first i sorted instances and the last one the
+	 * total weight.
+	 * 
+	 * @return The prefix sums of the sorted weights, if the data was sorted.
+	 */
+	public double[] getSortedPrefixWeights() {
+		return sortedPrefixWeights;
+	}
+
+	/**
+	 * Returns the cumulative normalised weights in the order of the sorted
+	 * data, if the data was sorted. The last value is exactly 1.
+	 * 
+	 * @return The cumulative normalised weights, if the data was sorted.
+	 */
+	public double[] getSortedCumulativeWeights() {
+		return sortedCumulativeWeights;
+	}
+
+	/**
+	 * Checks, whether the data was sorted.
+	 * 
+	 * @return True, if the data was sorted, false otherwise.
+	 */
+	public boolean isSorted() {
+		return sortedData != null;
+	}
+
 	/**
 	 * Returns the size of the data.
 	 * 
@@ -125,13 +203,16 @@ public class DataBundle {
 
 	/**
 	 * Sorts the data and holds the result in an extra array. The indexes and
-	 * weights sorted according to the data are stored as well.
+	 * weights sorted according to the data are stored as well as the ranks of
+	 * the instances, the prefix sums of the weights and the cumulative
+	 * normalised weights.
 	 */
 	public void sort() {
 		int n = data.length;
-		this.sortedIndexes = new double[n];
-		this.sortedData = new double[n];
+		// The indexes are sorted along as double, as required by MathArrays
+		double[] sortedIndexes = new double[n];
 		this.sortedWeights = new double[n];
+		double[] sortedData = new double[n];
 
 		// Copying the data
 		for (int i = 0; i < n; i++) {
@@ -141,5 +222,73 @@ public class DataBundle {
 		}
 		// Sorting
 		MathArrays.sortInPlace(sortedData, sortedIndexes, sortedWeights);
+
+		// The permutation between the instances and their ranks
+		this.sortedOrder = new int[n];
+		for (int i = 0; i < n; i++) {
+			sortedOrder[i] = (int) sortedIndexes[i];
+		}
+		completeSort(sortedData);
+	}
+
+	/**
+	 * Sorts the data like {@link #sort()}, but takes the given order instead
+	 * of sorting, so that it runs in linear time. The order must sort the data
+	 * ascending and break ties by the indexes of the instances, like
+	 * {@link #sort()} does.
+	 * 
+	 * @param order
+	 *            The index of the instance at every rank, taken over by this
+	 *            {@link DataBundle}
+	 */
+	public void sort(int[] order) {
+		int n = data.length;
+		if (order.length != n) {
+			throw new IllegalArgumentException("Order and data have different length.");
+		}
+		this.sortedWeights = new double[n];
+		double[] sortedData = new double[n];
+		for (int i = 0; i < n; i++) {
+			sortedData[i] = data[order[i]];
+			sortedWeights[i] = weights[order[i]];
+		}
+		this.sortedOrder = order;
+		completeSort(sortedData);
+	}
+
+	/**
+	 * Computes the ranks, the prefix sums of the weights and the cumulative
+	 * normalised weights from the sorted order and the sorted weights, and
+	 * sets the sorted data.
+	 * 
+	 * @param sortedData
+	 *            The sorted data
+	 */
+	private void completeSort(double[] sortedData) {
+		int n = sortedData.length;
+		this.ranks = new int[n];
+		for (int i = 0; i < n; i++) {
+			ranks[sortedOrder[i]] = i;
+		}
+
+		// Cumulating the weights and the normalised weights
+		this.sortedCumulativeWeights = new double[n];
+		this.sortedPrefixWeights = new double[n + 1];
+		for (int i = 0; i < n; i++) {
+			sortedPrefixWeights[i + 1] = sortedPrefixWeights[i] + sortedWeights[i];
+		}
+		double totalWeight = sortedPrefixWeights[n];
+		double accumulator = 0;
+		for (int i = 0; i < n; i++) {
+			accumulator += sortedWeights[i] / totalWeight;
+			sortedCumulativeWeights[i] = accumulator;
+		}
+		// The rounding errors of the accumulation must not leave the
+		// distribution above or below 1 at its end
+		if (n > 0) {
+			sortedCumulativeWeights[n - 1] = 1;
+		}
+		// Setting the sorted data last marks the bundle as sorted
+		this.sortedData = sortedData;
 	}
 }
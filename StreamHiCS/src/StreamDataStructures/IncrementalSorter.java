@@ -0,0 +1,217 @@
+package streamdatastructures;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import org.apache.commons.math3.util.MathArrays;
+
+/**
+ * This class sorts the columns of a {@link Snapshot} by repairing the sorted
+ * order of the previous {@link Snapshot} instead of sorting from scratch. The
+ * elements of the summarisation structure (e.g. micro-clusters) are identified
+ * by stable keys across {@link Snapshot}s. The elements whose value did not
+ * change keep their relative order, so they form a sorted run in the previous
+ * order; only the changed and the new elements are sorted and merged into it.
+ * Between two evaluations usually only a few elements change, so a column is
+ * sorted in linear time plus the sorting of the changed elements. The result
+ * is identical to {@link DataBundle#sort()}, whatever the previous order is.
+ *
+ * @author agent
+ *
+ */
+class IncrementalSorter {
+
+	/**
+	 * The keys of the elements of the last sorted column of every dimension,
+	 * in the sorted order.
+	 */
+	private Object[][] sortedKeys = new Object[0][];
+
+	/**
+	 * The values of the last sorted column of every dimension, in the sorted
+	 * order.
+	 */
+	private double[][] sortedValues = new double[0][];
+
+	/**
+	 * The epoch of the last sorted column of every dimension.
+	 */
+	private long[] epochs = new long[0];
+
+	/**
+	 * The number of columns sorted by repairing the previous order.
+	 */
+	private long repairs = 0;
+
+	/**
+	 * Sorts the given column (see {@link DataBundle#sort(int[])}) and
+	 * remembers its order for the following {@link Snapshot}s.
+	 *
+	 * @param column
+	 *            The column
+	 * @param dimension
+	 *            The dimension of the column
+	 * @param epoch
+	 *            The epoch of the {@link Snapshot}
+	 * @param keys
+	 *            The keys of the elements
+	 * @param indexes
+	 *            The index of every key in the column
+	 */
+	void sort(DataBundle column, int dimension, long epoch, Object[] keys, IdentityHashMap<Object, Integer> indexes) {
+		Object[] previousKeys = null;
+		double[] previousValues = null;
+		synchronized (this) {
+			if (dimension < epochs.length) {
+				previousKeys = sortedKeys[dimension];
+				previousValues = sortedValues[dimension];
+			}
+		}
+		int[] order = previousKeys == null ? null : repair(column.getData(), previousKeys, previousValues, indexes);
+		boolean repaired = order != null;
+		if (!repaired) {
+			column.sort();
+			order = column.getSortedOrder();
+		} else {
+			column.sort(order);
+		}
+
+		int n = order.length;
+		Object[] newKeys = new Object[n];
+		double[] newValues = column.getSortedData();
+		for (int i = 0; i < n; i++) {
+			newKeys[i] = keys[order[i]];
+		}
+		synchronized (this) {
+			if (dimension >= epochs.length) {
+				sortedKeys = Arrays.copyOf(sortedKeys, dimension + 1);
+				sortedValues = Arrays.copyOf(sortedValues, dimension + 1);
+				epochs = Arrays.copyOf(epochs, dimension + 1);
+			}
+			// Concurrent evaluations of older snapshots do not replace the
+			// order of a newer one
+			if (sortedKeys[dimension] == null || epoch >= epochs[dimension]) {
+				sortedKeys[dimension] = newKeys;
+				sortedValues[dimension] = newValues;
+				epochs[dimension] = epoch;
+			}
+			if (repaired) {
+				repairs++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the sorted order of the given values, derived from the previous
+	 * sorted order, or null if too many elements changed for this to be
+	 * worthwhile.
+	 *
+	 * @param values
+	 *            The values of the column
+	 * @param previousKeys
+	 *            The keys in the previous sorted order
+	 * @param previousValues
+	 *            The values in the previous sorted order
+	 * @param indexes
+	 *            The index of every key in the column
+	 * @return The sorted order, null if the column should be sorted from
+	 *         scratch.
+	 */
+	private static int[] repair(double[] values, Object[] previousKeys, double[] previousValues,
+			IdentityHashMap<Object, Integer> indexes) {
+		int n = values.length;
+		// The elements with an unchanged value, in the previous order
+		int[] run = new int[n];
+		boolean[] inRun = new boolean[n];
+		int runLength = 0;
+		Integer index;
+		int i;
+		for (int j = 0; j < previousKeys.length; j++) {
+			index = indexes.get(previousKeys[j]);
+			if (index != null) {
+				i = index;
+				if (!inRun[i] && Double.compare(values[i], previousValues[j]) == 0) {
+					run[runLength] = i;
+					inRun[i] = true;
+					runLength++;
+				}
+			}
+		}
+		int changed = n - runLength;
+		if (changed > n / 2) {
+			return null;
+		}
+
+		// Ties in the run are ordered by the previous indexes, they have to be
+		// ordered by the current ones
+		int start = 0;
+		for (int j = 1; j <= runLength; j++) {
+			if (j == runLength || Double.compare(values[run[j]], values[run[start]]) != 0) {
+				if (j - start > 1) {
+					Arrays.sort(run, start, j);
+				}
+				start = j;
+			}
+		}
+
+		// Sort the changed elements, in the order of their indexes for ties
+		double[] changedValues = new double[changed];
+		double[] changedIndexes = new double[changed];
+		int c = 0;
+		for (i = 0; i < n; i++) {
+			if (!inRun[i]) {
+				changedValues[c] = values[i];
+				changedIndexes[c] = i;
+				c++;
+			}
+		}
+		if (changed > 1) {
+			MathArrays.sortInPlace(changedValues, changedIndexes);
+		}
+
+		// Merge the run and the changed elements
+		int[] order = new int[n];
+		int r = 0;
+		c = 0;
+		int comparison;
+		for (int k = 0; k < n; k++) {
+			if (c == changed) {
+				comparison = -1;
+			} else if (r == runLength) {
+				comparison = 1;
+			} else {
+				comparison = Double.compare(values[run[r]], changedValues[c]);
+				if (comparison == 0) {
+					comparison = Integer.compare(run[r], (int) changedIndexes[c]);
+				}
+			}
+			if (comparison < 0) {
+				order[k] = run[r];
+				r++;
+			} else {
+				order[k] = (int) changedIndexes[c];
+				c++;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Returns the number of columns sorted by repairing the order of a
+	 * previous {@link Snapshot}.
+	 *
+	 * @return The number of repaired columns.
+	 */
+	synchronized long getNumberOfRepairs() {
+		return repairs;
+	}
+
+	/**
+	 * Forgets all sorted orders.
+	 */
+	synchronized void clear() {
+		sortedKeys = new Object[0][];
+		sortedValues = new double[0][];
+		epochs = new long[0];
+	}
+}
@@ -39,6 +39,10 @@ public class MCAdapter extends SummarisationAdapter {
 		microclusterImplementation.learningRateOption.setValue(learningRate);
 		microclusterImplementation.microclusterVersionOption.setValue(version);
 		microclusterImplementation.prepareForUse();
+		// Adapting micro-clusters keep their centres until they absorb an
+		// instance, while the centres of radius micro-clusters are recomputed
+		// from their faded sums and hardly ever stay the same
+		setIncrementalSorting(version.equals("adapting"));
 	}
 
 	@Override
@@ -88,6 +92,26 @@ public class MCAdapter extends SummarisationAdapter {
 		}
 	}
 
+	@Override
+	protected Snapshot createSnapshot(long epoch, long clearEpoch, SlicingMethod slicingMethod) {
+		if (getNumberOfElements() == 0) {
+			return createSnapshot(new double[0][], new double[0], epoch, clearEpoch, slicingMethod);
+		}
+		Microcluster[] centroids = microclusterImplementation.getMicroclusters();
+
+		int n = centroids.length;
+		double[][] points = new double[n][];
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			points[i] = centroids[i].getCentre();
+			weights[i] = centroids[i].getWeight(-1);
+		}
+
+		// The micro-clusters keep their identity, so the sorted orders of the
+		// last snapshot can be repaired if incremental sorting is enabled
+		return createSnapshot(points, weights, centroids, epoch, clearEpoch, slicingMethod);
+	}
+
 	@Override
 	public int getNumberOfElements() {
 		return microclusterImplementation.getNumberOfInstances();
@@ -83,6 +83,34 @@ public class MicroclusteringAdapter extends SummarisationAdapter {
 		}
 	}
 
+	@Override
+	protected Snapshot createSnapshot(long epoch, long clearEpoch, SlicingMethod slicingMethod) {
+		if (getNumberOfElements() == 0) {
+			return createSnapshot(new double[0][], new double[0], epoch, clearEpoch, slicingMethod);
+		}
+		if (microclusters == null) {
+			microclusters = microclusterImplementation.getMicroClusteringResult();
+		}
+
+		int n = microclusters.size();
+		double[][] points = new double[n][];
+		double[] weights = new double[n];
+		Cluster[] keys = new Cluster[n];
+		Cluster c;
+		for (int i = 0; i < n; i++) {
+			c = microclusters.get(i);
+			points[i] = c.getCenter();
+			weights[i] = c.getWeight();
+			keys[i] = c;
+		}
+
+		// Implementations updating their micro-clusters in place keep their
+		// identity, so the sorted orders of the last snapshot can be repaired
+		// if incremental sorting is enabled. ClusTree and CluStream create new
+		// clusters for every result, so it is not enabled by default.
+		return createSnapshot(points, weights, keys, epoch, clearEpoch, slicingMethod);
+	}
+
 	@Override
 	public int getNumberOfElements() {
 		if (microclusters == null) {
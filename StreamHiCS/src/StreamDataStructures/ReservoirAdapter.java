@@ -0,0 +1,172 @@
+package streamdatastructures;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import weka.core.Instance;
+
+/**
+ * This class represents an adapter to a biased reservoir sample of the stream
+ * (Aggarwal, "On Biased Reservoir Sampling in the Presence of Stream
+ * Evolution", VLDB 2006). The reservoir holds at most a fixed number of raw
+ * instances. Every arriving instance is taken into the reservoir; with a
+ * probability equal to the fraction of the reservoir already filled it
+ * replaces a random instance, otherwise it is appended. The probability of an
+ * instance to still be in the reservoir therefore decays exponentially with its
+ * age, with a rate of 1 / capacity, so that the reservoir follows the evolution
+ * of the stream like a fading window, while every insertion costs constant
+ * time. Since the bias is contained in the sample itself, all instances have a
+ * weight of 1.
+ *
+ * @author agent
+ *
+ */
+public class ReservoirAdapter extends SummarisationAdapter {
+
+	/**
+	 * The maximum number of instances in the reservoir.
+	 */
+	private int capacity;
+
+	/**
+	 * The instances in the reservoir, the first {@link #size} rows are used.
+	 */
+	private double[][] points;
+
+	/**
+	 * The number of instances in the reservoir.
+	 */
+	private int size = 0;
+
+	/**
+	 * The number of dimensions, known after the first instance.
+	 */
+	private int d = 0;
+
+	/**
+	 * The random number generator deciding about the replacements.
+	 */
+	private Random generator;
+
+	/**
+	 * Creates an instance of this class.
+	 *
+	 * @param capacity
+	 *            The maximum number of instances in the reservoir. Its
+	 *            inverse is the rate of the exponential bias.
+	 */
+	public ReservoirAdapter(int capacity) {
+		this(capacity, new Random());
+	}
+
+	/**
+	 * Creates an instance of this class with a seeded random number generator,
+	 * so that the reservoir is reproducible.
+	 *
+	 * @param capacity
+	 *            The maximum number of instances in the reservoir. Its
+	 *            inverse is the rate of the exponential bias.
+	 * @param seed
+	 *            The seed of the random number generator
+	 */
+	public ReservoirAdapter(int capacity, long seed) {
+		this(capacity, new Random(seed));
+	}
+
+	/**
+	 * Creates an instance of this class.
+	 *
+	 * @param capacity
+	 *            The maximum number of instances in the reservoir
+	 * @param generator
+	 *            The random number generator
+	 */
+	private ReservoirAdapter(int capacity, Random generator) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity cannot be 0 or negative.");
+		}
+		this.capacity = capacity;
+		this.points = new double[capacity][];
+		this.generator = generator;
+	}
+
+	@Override
+	public void addImpl(Instance instance) {
+		if (d == 0) {
+			d = instance.numAttributes();
+		}
+		int position;
+		if (size > 0 && generator.nextInt(capacity) < size) {
+			// Replace a random instance with probability size / capacity
+			position = generator.nextInt(size);
+		} else {
+			position = size;
+			size++;
+		}
+		if (points[position] == null) {
+			points[position] = new double[d];
+		}
+		double[] point = points[position];
+		for (int i = 0; i < d; i++) {
+			point[i] = instance.value(i);
+		}
+	}
+
+	@Override
+	public void clearImpl() {
+		size = 0;
+	}
+
+	@Override
+	public DataBundle[] getData() {
+		if (size > 0) {
+			DataBundle[] data = new DataBundle[d];
+			for (int dim = 0; dim < d; dim++) {
+				double[] dimData = new double[size];
+				for (int i = 0; i < size; i++) {
+					dimData[i] = points[i][dim];
+				}
+				// Every column gets its own weights, since the weights may be
+				// manipulated later
+				data[dim] = new DataBundle(dimData, createWeights());
+			}
+
+			return data;
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	protected Snapshot createSnapshot(long epoch, long clearEpoch, SlicingMethod slicingMethod) {
+		// The rows are copied by the snapshot and the columns materialised on
+		// demand. The snapshot takes over the weights, so they are not shared
+		// with other snapshots.
+		return createSnapshot(Arrays.copyOf(points, size), createWeights(), epoch, clearEpoch, slicingMethod);
+	}
+
+	/**
+	 * Creates the weights of the instances in the reservoir, which are all 1.
+	 *
+	 * @return A new array of weights.
+	 */
+	private double[] createWeights() {
+		double[] weights = new double[size];
+		Arrays.fill(weights, 1);
+		return weights;
+	}
+
+	@Override
+	public int getNumberOfElements() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of instances in the reservoir.
+	 *
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,287 @@
+package streamdatastructures;
+
+import java.util.Random;
+
+/**
+ * This class holds reusable buffers for the contrast calculation, so that a
+ * Monte Carlo iteration does not allocate memory once the buffers have grown
+ * to the size of the summarisation. An arena must only be used by a single
+ * thread at a time.
+ *
+ * @author agent
+ *
+ */
+public class ScratchArena {
+
+	/**
+	 * The random number generator, which is reseeded for every Monte Carlo
+	 * iteration.
+	 */
+	private Random generator = new Random();
+
+	/**
+	 * The random number generator for the block selections of shared slices,
+	 * which is reseeded for every slicing step.
+	 */
+	private Random sliceGenerator = new Random();
+
+	/**
+	 * The {@link Selection} used for the slicing.
+	 */
+	private Selection selection = new Selection(0, 1, generator);
+
+	/**
+	 * The dimension buffers, indexed by their length.
+	 */
+	private int[][] dimensions = new int[0][];
+
+	/**
+	 * The bitmask of the instances in the current slice (used by the
+	 * {@link SummarisationAdapter.SlicingMethod#BITMASK} slicing).
+	 */
+	private long[] mask = new long[0];
+
+	/**
+	 * The bitmask of the instances in the block of the current dimension.
+	 */
+	private long[] blockMask = new long[0];
+
+	/**
+	 * The buffer for the relative starting positions of the slices.
+	 */
+	private double[] positions = new double[0];
+
+	/**
+	 * The buffer for the deviations of the Monte Carlo iterations.
+	 */
+	private double[] deviations = new double[0];
+
+	/**
+	 * The sorted conditional sample.
+	 */
+	private double[] sampleData = new double[0];
+
+	/**
+	 * The normalised weights of the conditional sample, in the order of the
+	 * sorted data.
+	 */
+	private double[] sampleWeights = new double[0];
+
+	/**
+	 * The cumulative normalised weights of the conditional sample, i.e. the
+	 * cumulative distribution at the sorted data points.
+	 */
+	private double[] sampleCumulativeWeights = new double[0];
+
+	/**
+	 * The size of the conditional sample.
+	 */
+	private int sampleSize = 0;
+
+	/**
+	 * Returns the random number generator of this arena.
+	 *
+	 * @return The random number generator.
+	 */
+	public Random getGenerator() {
+		return generator;
+	}
+
+	/**
+	 * Returns the random number generator for the block selections of shared
+	 * slices.
+	 *
+	 * @return The random number generator.
+	 */
+	public Random getSliceGenerator() {
+		return sliceGenerator;
+	}
+
+	/**
+	 * Returns the {@link Selection} of this arena.
+	 *
+	 * @return The {@link Selection}.
+	 */
+	public Selection getSelection() {
+		return selection;
+	}
+
+	/**
+	 * Returns a buffer for dimensions of exactly the given length.
+	 *
+	 * @param length
+	 *            The length
+	 * @return The buffer.
+	 */
+	public int[] getDimensions(int length) {
+		if (dimensions.length <= length) {
+			int[][] grown = new int[length + 1][];
+			System.arraycopy(dimensions, 0, grown, 0, dimensions.length);
+			dimensions = grown;
+		}
+		if (dimensions[length] == null) {
+			dimensions[length] = new int[length];
+		}
+		return dimensions[length];
+	}
+
+	/**
+	 * Returns a buffer for at least the given number of relative starting
+	 * positions of slices (see {@link Selection#setStartingPositions(double[])}).
+	 *
+	 * @param length
+	 *            The number of positions
+	 * @return The buffer.
+	 */
+	public double[] getPositions(int length) {
+		if (positions.length < length) {
+			positions = new double[length];
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns a buffer for at least the given number of deviations.
+	 *
+	 * @param m
+	 *            The number of deviations
+	 * @return The buffer.
+	 */
+	public double[] getDeviations(int m) {
+		if (deviations.length < m) {
+			deviations = new double[m];
+		}
+		return deviations;
+	}
+
+	/**
+	 * Returns the bitmask of the current slice with at least the given number
+	 * of words, all set to 0.
+	 * 
+	 * @param words
+	 *            The number of 64 bit words
+	 * @return The bitmask.
+	 */
+	long[] getMask(int words) {
+		mask = clear(mask, words);
+		return mask;
+	}
+
+	/**
+	 * Returns the bitmask of a block with at least the given number of words,
+	 * all set to 0.
+	 * 
+	 * @param words
+	 *            The number of 64 bit words
+	 * @return The bitmask.
+	 */
+	long[] getBlockMask(int words) {
+		blockMask = clear(blockMask, words);
+		return blockMask;
+	}
+
+	/**
+	 * Sets the first words of the given bitmask to 0, or allocates a new one
+	 * if it is too short.
+	 * 
+	 * @param mask
+	 *            The bitmask
+	 * @param words
+	 *            The number of words
+	 * @return The cleared bitmask.
+	 */
+	private static long[] clear(long[] mask, int words) {
+		if (mask.length < words) {
+			return new long[words];
+		}
+		for (int i = 0; i < words; i++) {
+			mask[i] = 0;
+		}
+		return mask;
+	}
+
+	/**
+	 * Makes sure that a conditional sample of the given size can be stored.
+	 *
+	 * @param size
+	 *            The size of the sample
+	 */
+	void ensureSampleCapacity(int size) {
+		if (sampleData.length < size) {
+			sampleData = new double[size];
+			sampleWeights = new double[size];
+			sampleCumulativeWeights = new double[size];
+		}
+	}
+
+	/**
+	 * Sets the conditional sample to the given instances. The data and the
+	 * weights are gathered in the sorted order of the data and the weights are
+	 * normalised and accumulated.
+	 *
+	 * @param data
+	 *            The data of all instances in the dimension of the sample
+	 * @param weights
+	 *            The weights of all instances
+	 * @param sortedIndexes
+	 *            The indexes of the sample, sorted according to the data
+	 * @param size
+	 *            The size of the sample
+	 */
+	void setSample(double[] data, double[] weights, int[] sortedIndexes, int size) {
+		ensureSampleCapacity(size);
+		double totalWeight = 0;
+		for (int i = 0; i < size; i++) {
+			sampleData[i] = data[sortedIndexes[i]];
+			sampleWeights[i] = weights[sortedIndexes[i]];
+			totalWeight += sampleWeights[i];
+		}
+		double accumulator = 0;
+		for (int i = 0; i < size; i++) {
+			sampleWeights[i] /= totalWeight;
+			accumulator += sampleWeights[i];
+			sampleCumulativeWeights[i] = accumulator;
+		}
+		sampleSize = size;
+	}
+
+	/**
+	 * Returns the sorted data of the conditional sample. Only the first
+	 * {@link #getSampleSize()} entries are valid.
+	 *
+	 * @return The sorted data of the conditional sample.
+	 */
+	public double[] getSampleData() {
+		return sampleData;
+	}
+
+	/**
+	 * Returns the normalised weights of the conditional sample in the order of
+	 * the sorted data. Only the first {@link #getSampleSize()} entries are
+	 * valid.
+	 *
+	 * @return The normalised weights of the conditional sample.
+	 */
+	public double[] getSampleWeights() {
+		return sampleWeights;
+	}
+
+	/**
+	 * Returns the cumulative normalised weights of the conditional sample.
+	 * Only the first {@link #getSampleSize()} entries are valid.
+	 *
+	 * @return The cumulative normalised weights of the conditional sample.
+	 */
+	public double[] getSampleCumulativeWeights() {
+		return sampleCumulativeWeights;
+	}
+
+	/**
+	 * Returns the size of the conditional sample.
+	 *
+	 * @return The size of the conditional sample.
+	 */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+}
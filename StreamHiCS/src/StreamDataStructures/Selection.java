@@ -1,8 +1,8 @@
 package streamdatastructures;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Random;
-import org.apache.commons.math3.util.MathArrays;
 
 /**
  * This class represents a selection of indexes.
@@ -13,9 +13,37 @@ import org.apache.commons.math3.util.MathArrays;
 public class Selection {
 
 	/**
-	 * The indexes currently held.
+	 * The indexes currently held. Only the first size entries are valid.
 	 */
-	private double[] indexes;
+	private int[] indexes;
+	/**
+	 * The number of indexes currently held.
+	 */
+	private int size;
+	/**
+	 * Buffer for the values of the current dimension in the order of the
+	 * sorted indexes.
+	 */
+	private double[] sortedData;
+	/**
+	 * Buffer for the prefix sums of the weights in the order of the sorted
+	 * indexes.
+	 */
+	private double[] prefixWeights;
+	/**
+	 * Buffer for the merge steps of the index sort.
+	 */
+	private int[] buffer;
+	/**
+	 * Marks of the ranks of the indexes currently held (used to order them by
+	 * a scan over the ranks). A rank is marked, if its entry equals the
+	 * current stamp.
+	 */
+	private int[] marks = new int[0];
+	/**
+	 * The stamp of the current marks.
+	 */
+	private int stamp = 0;
 	/**
 	 * The selection alpha.
 	 */
@@ -24,6 +52,24 @@ public class Selection {
 	 * A generator for random numbers.
 	 */
 	private Random generator;
+	/**
+	 * The relative starting positions in [0, 1) of the blocks selected in the
+	 * subsequent selection steps. If null, the starting points are drawn
+	 * uniformly from the generator.
+	 */
+	private double[] startingPositions;
+	/**
+	 * The number of the current selection step since the last reset.
+	 */
+	private int step;
+	/**
+	 * The lower end of the last selected block (inclusive).
+	 */
+	private int lower;
+	/**
+	 * The upper end of the last selected block (inclusive).
+	 */
+	private int upper;
 
 	/**
 	 * Creates a {@link Selection} object.
@@ -34,9 +80,100 @@ public class Selection {
 	 *            The selection alpha.
 	 */
 	public Selection(int initialSize, double selectionAlpha) {
-		indexes = new double[initialSize];
+		this(initialSize, selectionAlpha, new Random());
+	}
+
+	/**
+	 * Creates a {@link Selection} object drawing its random numbers from the
+	 * given generator.
+	 * 
+	 * @param initialSize
+	 *            The initial size of the index array.
+	 * @param selectionAlpha
+	 *            The selection alpha.
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 */
+	public Selection(int initialSize, double selectionAlpha, Random generator) {
+		ensureCapacity(initialSize);
+		this.size = initialSize;
+		this.selectionAlpha = selectionAlpha;
+		this.generator = generator;
+	}
+
+	/**
+	 * Prepares this {@link Selection} for reuse, so that no arrays have to be
+	 * allocated as long as the size does not exceed the largest size used
+	 * before. All indexes from 0 to size - 1 are selected afterwards.
+	 * 
+	 * @param size
+	 *            The number of indexes
+	 * @param selectionAlpha
+	 *            The selection alpha
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 */
+	public void reset(int size, double selectionAlpha, Random generator) {
+		ensureCapacity(size);
+		this.size = size;
 		this.selectionAlpha = selectionAlpha;
-		generator = new Random();
+		this.generator = generator;
+		this.step = 0;
+		fillRange();
+	}
+
+	/**
+	 * Prepares this {@link Selection} for reuse like
+	 * {@link #reset(int, double, Random)}, but starts with the given indexes.
+	 * 
+	 * @param indexes
+	 *            The indexes to start with
+	 * @param size
+	 *            The number of indexes
+	 * @param selectionAlpha
+	 *            The selection alpha
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 */
+	public void load(int[] indexes, int size, double selectionAlpha, Random generator) {
+		ensureCapacity(size);
+		System.arraycopy(indexes, 0, this.indexes, 0, size);
+		this.size = size;
+		this.selectionAlpha = selectionAlpha;
+		this.generator = generator;
+		this.step = 0;
+	}
+
+	/**
+	 * Sets the relative starting positions of the blocks of the subsequent
+	 * selection steps, e.g. from a stratified or quasi-random sequence. The
+	 * i-th selection step after a {@link #reset(int, double, Random)} starts
+	 * at the given fraction of the sorted instances. The array is not copied.
+	 * 
+	 * @param startingPositions
+	 *            The relative starting positions in [0, 1). Null draws the
+	 *            starting points uniformly from the generator.
+	 */
+	public void setStartingPositions(double[] startingPositions) {
+		this.startingPositions = startingPositions;
+	}
+
+	/**
+	 * Grows the internal arrays, if they are smaller than the given capacity.
+	 * 
+	 * @param capacity
+	 *            The capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (indexes == null || indexes.length < capacity) {
+			indexes = new int[capacity];
+			sortedData = new double[capacity];
+			prefixWeights = new double[capacity + 1];
+			buffer = new int[capacity];
+		}
 	}
 
 	/**
@@ -45,7 +182,7 @@ public class Selection {
 	 * @return The number of indexes.
 	 */
 	public int size() {
-		return indexes.length;
+		return size;
 	}
 
 	/**
@@ -56,15 +193,16 @@ public class Selection {
 	 * @return The index at the given position.
 	 */
 	public int getIndex(int i) {
-		return (int) indexes[i];
+		return indexes[i];
 	}
 
 	/**
-	 * Returns the index array.
+	 * Returns the index array. Only the first {@link #size()} entries are
+	 * valid.
 	 * 
 	 * @return The index array.
 	 */
-	public double[] getIndexes() {
+	public int[] getIndexes() {
 		return indexes;
 	}
 
@@ -77,8 +215,8 @@ public class Selection {
 	 *         otherwise.
 	 */
 	public boolean contains(int i) {
-		for (Double d : indexes) {
-			if (d == i) {
+		for (int k = 0; k < size; k++) {
+			if (indexes[k] == i) {
 				return true;
 			}
 		}
@@ -89,189 +227,294 @@ public class Selection {
 	 * Fills the index array with the range beginning at 0.
 	 */
 	public void fillRange() {
-		for (int i = 0; i < indexes.length; i++) {
+		for (int i = 0; i < size; i++) {
 			indexes[i] = i;
 		}
 	}
 
 	/**
-	 * Selects a range of indexes according to given data. The indexes are
-	 * arranged so that they correspond to the sorted data. Then a random block
-	 * selection of the size selectionAlpha*(size of data) is drawn,
-	 * corresponding to a block of values in the sorted data. The indexes of
-	 * that selection are stored.
+	 * Sorts the indexes currently held according to the values they point to
+	 * in the given data. The sort is stable, i.e. indexes pointing to equal
+	 * values keep their order.
 	 * 
 	 * @param data
-	 *            The data.
-	 */
-	public void select(double[] data) {
-		int l = data.length;
-		int selectionSize = (int) (l * selectionAlpha);
-
-		if (selectionSize < l) {
-			// Sort the data and arrange the indexes correspondingly
-			MathArrays.sortInPlace(data, indexes);
-			// Start at a random point and take the selectionSize
-			int startingPoint = generator.nextInt(l - selectionSize + 1);
-			int endPoint = startingPoint + selectionSize - 1;
-			if (startingPoint < 0 || endPoint > indexes.length - 1) {
-				throw new IllegalArgumentException("Selection outside of range: [" + startingPoint + endPoint + "]");
+	 *            The data of all instances (not only of the selected ones)
+	 */
+	public void sortBy(double[] data) {
+		sortIndexes(indexes, buffer, data, 0, size);
+	}
+
+	/**
+	 * Orders the indexes currently held by their ranks in the given sorted
+	 * {@link DataBundle}, i.e. according to the values they point to, without
+	 * comparing values. A small selection is ordered by sorting its int ranks,
+	 * a large one by marking its ranks and scanning over all ranks in linear
+	 * time. Indexes pointing to equal values are ordered by index.
+	 * 
+	 * @param sortedBundle
+	 *            The sorted {@link DataBundle} of all instances (see
+	 *            {@link DataBundle#getRanks()})
+	 */
+	public void sortByRanks(DataBundle sortedBundle) {
+		int[] ranks = sortedBundle.getRanks();
+		int[] order = sortedBundle.getSortedOrder();
+		int n = ranks.length;
+		if (size < n / 16) {
+			for (int i = 0; i < size; i++) {
+				buffer[i] = ranks[indexes[i]];
 			}
-			if (data[startingPoint] == data[endPoint]) {
-				// The special case that all the data values selected are the
-				// same. This case needs special handling.
-				// System.out.println("Selection.selectRange(): Special
-				// handling!");
-				// Broadening the range if possible, until data values on the
-				// outside of the range differ
-				while (data[startingPoint] == data[endPoint] && (endPoint - startingPoint) < indexes.length - 1) {
-					if (startingPoint > 0) {
-						startingPoint--;
-					}
-					if (endPoint < indexes.length - 1) {
-						endPoint++;
-					}
-				}
+			Arrays.sort(buffer, 0, size);
+			for (int i = 0; i < size; i++) {
+				indexes[i] = order[buffer[i]];
 			}
-			double[] newIndexes = new double[endPoint - startingPoint + 1];
-			for (int i = startingPoint; i <= endPoint; i++) {
-				newIndexes[i - startingPoint] = indexes[i];
+		} else {
+			if (marks.length < n) {
+				marks = new int[n];
+				stamp = 0;
 			}
+			stamp++;
+			if (stamp == 0) {
+				// The stamp overflowed, old marks could collide
+				Arrays.fill(marks, 0);
+				stamp = 1;
+			}
+			for (int i = 0; i < size; i++) {
+				marks[ranks[indexes[i]]] = stamp;
+			}
+			int j = 0;
+			for (int r = 0; r < n; r++) {
+				if (marks[r] == stamp) {
+					indexes[j] = order[r];
+					j++;
+				}
+			}
+		}
+	}
 
-			// Set the indexes to the new range of indexes
-			indexes = newIndexes;
+	/**
+	 * Selects a random range where the total weight of the range is a fraction
+	 * (selectionAlpha) of the total weight like
+	 * {@link #selectWithWeights(double[], double[])}, but orders the indexes by
+	 * the precomputed ranks of the sorted {@link DataBundle} of the current
+	 * dimension (see {@link #sortByRanks(DataBundle)}) instead of sorting them
+	 * by value.
+	 * 
+	 * @param sortedBundle
+	 *            The sorted {@link DataBundle} of all instances in the current
+	 *            dimension
+	 * @param weights
+	 *            The weights of all instances
+	 */
+	public void selectByRanks(DataBundle sortedBundle, double[] weights) {
+		sortByRanks(sortedBundle);
+		double[] data = sortedBundle.getData();
+		prefixWeights[0] = 0;
+		for (int i = 0; i < size; i++) {
+			sortedData[i] = data[indexes[i]];
+			prefixWeights[i + 1] = prefixWeights[i] + weights[indexes[i]];
 		}
 
+		selectBlock(sortedData, prefixWeights, size, 0.000001);
+
+		// Keep only the indexes of the block
+		System.arraycopy(indexes, lower, indexes, 0, upper - lower + 1);
+		size = upper - lower + 1;
 	}
 
 	/**
 	 * Selects a random range where the total weight of the range is a fraction
-	 * (selectionAlpha) of the total weight.
+	 * (selectionAlpha) of the total weight. The indexes are sorted according to
+	 * the data of the current dimension, then a block around a random starting
+	 * point is selected. The arrays are not changed.
 	 * 
 	 * @param data
-	 *            The data
+	 *            The data of all instances in the current dimension
 	 * @param weights
-	 *            The weights
+	 *            The weights of all instances
 	 */
 	public void selectWithWeights(double[] data, double[] weights) {
-		double totalWeight = 0;
-		for (int i = 0; i < data.length; i++) {
-			totalWeight += weights[i];
+		// Sort the indexes according to the data and gather the values and the
+		// prefix sums of the weights
+		sortBy(data);
+		prefixWeights[0] = 0;
+		for (int i = 0; i < size; i++) {
+			sortedData[i] = data[indexes[i]];
+			prefixWeights[i + 1] = prefixWeights[i] + weights[indexes[i]];
 		}
-		double selectionSize = totalWeight * selectionAlpha;
-
-		// Sort the data and arrange the indexes correspondingly
-		MathArrays.sortInPlace(data, indexes, weights);
 
-		// Start at a random point and take the selectionSize
-		int startingPoint = generator.nextInt(data.length);
+		selectBlock(sortedData, prefixWeights, size, 0.000001);
 
-		// Select a block around the starting point
-		int lower = startingPoint;
-		int upper = startingPoint;
-		double lowerWeight = 0;
-		double upperWeight = 0;
-		double accumulatedWeight = weights[startingPoint];
-		double selectionPerSide = (selectionSize - weights[startingPoint]) / 2;
-		boolean searchOn = false;
-		while (accumulatedWeight < selectionSize - 0.000001) {
-			while ((lowerWeight < selectionPerSide || (searchOn && accumulatedWeight < selectionSize)) && lower > 0) {
-				lower--;
-				lowerWeight += weights[lower];
-				accumulatedWeight += weights[lower];
-			}
-			while ((upperWeight < selectionPerSide || (searchOn && accumulatedWeight < selectionSize))
-					&& upper < weights.length - 1) {
-				upper++;
-				upperWeight += weights[upper];
-				accumulatedWeight += weights[upper];
-			}
-			searchOn = true;
-		}
+		// Keep only the indexes of the block
+		System.arraycopy(indexes, lower, indexes, 0, upper - lower + 1);
+		size = upper - lower + 1;
+	}
 
-		// Since the Kolmogorov-Smirnov-Test needs at least two samples we take
-		// at least one other another if there is one a single one selected
-		if (upper - lower == 0) {
-			// System.out.println("Only one sample.");
-			if (lower > 0) {
-				lower--;
-			}
-			if (upper < data.length - 1) {
-				upper++;
-			}
+	/**
+	 * Selects a random block of indexes where the data is sorted. The weight of
+	 * the selected points is a fraction (selectionAlpha) of the total weight.
+	 * 
+	 * @param databundle The {@link DataBundle} containing the data and the weights. 
+	 * 
+	 * @return A {@link BitSet} (i.e. boolean vector) where the entries are set true at the selected positions and false otherwise. 
+	 */
+	public BitSet selectRandomBlock(DataBundle databundle) {
+		int[] order = databundle.getSortedOrder();
+		int n = order.length;
+		selectSortedBlock(databundle);
+		// All boolean entries initialized to false
+		BitSet selected = new BitSet(n);
+		for (int i = lower; i <= upper; i++) {
+			selected.set(order[i]);
 		}
 
-		// Broadening the range until the values on the edges differ from the
-		// next value outside. This is done to from a correct slice.
-		while (lower > 0 && data[lower - 1] == data[lower]) {
-			lower--;
-			// System.out.println("Selection.selectRangeWithWeights(): Special
-			// handling!");
-		}
-		while (upper < data.length - 1 && data[upper] == data[upper + 1]) {
-			upper++;
-			// System.out.println("Selection.selectRangeWithWeights(): Special
-			// handling!");
-		}
+		return selected;
+	}
 
-		// System.out.println("Lower: " + lower + " Upper: " + upper);
-		double[] newIndexes = new double[upper - lower + 1];
+	/**
+	 * Selects a random block of indexes where the data is sorted like
+	 * {@link #selectRandomBlock(DataBundle)}, but sets the bits of the
+	 * selected indexes in the given bitmask instead of creating a
+	 * {@link BitSet}. Index i is bit i % 64 of word i / 64.
+	 * 
+	 * @param databundle
+	 *            The sorted {@link DataBundle} containing the data and the
+	 *            weights.
+	 * @param mask
+	 *            The bitmask, the bits of the selected indexes are set.
+	 */
+	public void maskRandomBlock(DataBundle databundle, long[] mask) {
+		int[] order = databundle.getSortedOrder();
+		selectSortedBlock(databundle);
+		int index;
 		for (int i = lower; i <= upper; i++) {
-			newIndexes[i - lower] = indexes[i];
+			index = order[i];
+			mask[index >>> 6] |= 1L << index;
 		}
-		indexes = newIndexes;
 	}
 
 	/**
-	 * Selects a random block of indexes where the data is sorted. The weight of
-	 * the selected points is a fraction (selectionAlpha) of the total weight.
+	 * Prepares this {@link Selection} for reuse like
+	 * {@link #reset(int, double, Random)}, but starts with the indexes whose
+	 * bits are set in the given bitmask, in ascending order. The bitmask is
+	 * read word by word.
 	 * 
-	 * @param databundle The {@link DataBundle} containing the data and the weights. 
+	 * @param mask
+	 *            The bitmask, index i is bit i % 64 of word i / 64
+	 * @param n
+	 *            The number of indexes the bitmask covers
+	 * @param selectionAlpha
+	 *            The selection alpha
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 */
+	public void load(long[] mask, int n, double selectionAlpha, Random generator) {
+		int words = (n + 63) >>> 6;
+		int count = 0;
+		for (int w = 0; w < words; w++) {
+			count += Long.bitCount(mask[w]);
+		}
+		ensureCapacity(count);
+		long word;
+		int j = 0;
+		for (int w = 0; w < words; w++) {
+			word = mask[w];
+			while (word != 0) {
+				indexes[j] = (w << 6) + Long.numberOfTrailingZeros(word);
+				j++;
+				// Clear the lowest set bit
+				word &= word - 1;
+			}
+		}
+		this.size = count;
+		this.selectionAlpha = selectionAlpha;
+		this.generator = generator;
+		this.step = 0;
+	}
+
+	/**
+	 * Selects a random block in a sorted {@link DataBundle}. The result is
+	 * stored in lower and upper.
 	 * 
-	 * @return A {@link BitSet} (i.e. boolean vector) where the entries are set true at the selected positions and false otherwise. 
+	 * @param databundle
+	 *            The sorted {@link DataBundle}
 	 */
-	public BitSet selectRandomBlock(DataBundle databundle) {
-		double[] indexes = databundle.getSortedIndexes();
+	private void selectSortedBlock(DataBundle databundle) {
 		double[] data = databundle.getSortedData();
-		double[] weights = databundle.getSortedWeights();
+		selectBlock(data, databundle.getSortedPrefixWeights(), data.length, 0);
+	}
 
-		int n = data.length;
-		double totalWeight = 0;
-		for (int i = 0; i < n; i++) {
-			totalWeight += weights[i];
+	/**
+	 * Selects a block of sorted values around a random starting point, whose
+	 * weight is a fraction (selectionAlpha) of the total weight. The result is
+	 * stored in lower and upper.
+	 * 
+	 * @param data
+	 *            The sorted data
+	 * @param prefixWeights
+	 *            The prefix sums of the weights in the order of the sorted
+	 *            data, starting with 0
+	 * @param n
+	 *            The number of valid entries in the data
+	 * @param tolerance
+	 *            The tolerance for reaching the selection weight
+	 */
+	private void selectBlock(double[] data, double[] prefixWeights, int n, double tolerance) {
+		// Start at a random point
+		int startingPoint;
+		if (startingPositions == null) {
+			startingPoint = generator.nextInt(n);
+		} else {
+			startingPoint = Math.min(n - 1, (int) (startingPositions[step] * n));
 		}
-		double selectionSize = totalWeight * selectionAlpha;
+		step++;
+		selectBlock(startingPoint, data, prefixWeights, n, tolerance);
+	}
 
-		// Start at a random point and take the selectionSize
-		int startingPoint = generator.nextInt(n);
+	/**
+	 * Selects the block of sorted values around the given starting point,
+	 * whose weight is a fraction (selectionAlpha) of the total weight. Half of
+	 * the missing weight is taken from each side of the starting point. If a
+	 * side reaches the border, the block is extended on the lower and then on
+	 * the upper side until the weight is reached. The borders of the block are
+	 * found by binary searches on the prefix sums of the weights. The result
+	 * can be retrieved with {@link #getLower()} and {@link #getUpper()}.
+	 * 
+	 * @param startingPoint
+	 *            The position of the starting point in the sorted data
+	 * @param data
+	 *            The sorted data
+	 * @param prefixWeights
+	 *            The prefix sums of the weights in the order of the sorted
+	 *            data, starting with 0
+	 * @param n
+	 *            The number of valid entries in the data
+	 * @param tolerance
+	 *            The tolerance for reaching the selection weight
+	 */
+	public void selectBlock(int startingPoint, double[] data, double[] prefixWeights, int n, double tolerance) {
+		double selectionSize = prefixWeights[n] * selectionAlpha;
 
 		// Select a block around the starting point
-		int lower = startingPoint;
-		int upper = startingPoint;
-		double lowerWeight = 0;
-		double upperWeight = 0;
-		double accumulatedWeight = weights[startingPoint];
-		double selectionPerSide = (selectionSize - weights[startingPoint]) / 2;
-		boolean searchOn = false;
-		while (accumulatedWeight < selectionSize) {
-			while ((lowerWeight < selectionPerSide || (searchOn && accumulatedWeight < selectionSize)) && lower > 0) {
-				lower--;
-				lowerWeight += weights[lower];
-				accumulatedWeight += weights[lower];
+		lower = startingPoint;
+		upper = startingPoint;
+		if (prefixWeights[startingPoint + 1] - prefixWeights[startingPoint] < selectionSize - tolerance) {
+			double selectionPerSide = (selectionSize - prefixWeights[startingPoint + 1]
+					+ prefixWeights[startingPoint]) / 2;
+			lower = lastAtMost(prefixWeights, prefixWeights[startingPoint] - selectionPerSide, 0, startingPoint);
+			upper = firstAtLeast(prefixWeights, prefixWeights[startingPoint + 1] + selectionPerSide,
+					startingPoint + 1, n) - 1;
+			if (prefixWeights[upper + 1] - prefixWeights[lower] < selectionSize - tolerance) {
+				// One side reached the border, continue on the lower and then
+				// on the upper side
+				lower = lastAtMost(prefixWeights, prefixWeights[upper + 1] - selectionSize, 0, lower);
+				upper = firstAtLeast(prefixWeights, prefixWeights[lower] + selectionSize, upper + 1, n) - 1;
 			}
-			while ((upperWeight < selectionPerSide || (searchOn && accumulatedWeight < selectionSize))
-					&& upper < n - 1) {
-				upper++;
-				upperWeight += weights[upper];
-				accumulatedWeight += weights[upper];
-			}
-			searchOn = true;
 		}
 
 		// Since the Kolmogorov-Smirnov-Test needs at least two samples we take
 		// at least one other another if there is one a single one selected
 		if (upper - lower == 0) {
-			// System.out.println("Only one sample.");
 			if (lower > 0) {
 				lower--;
 			}
@@ -288,14 +531,113 @@ public class Selection {
 		while (upper < n - 1 && data[upper] == data[upper + 1]) {
 			upper++;
 		}
-		// All boolean entries initialized to false
-		BitSet selected = new BitSet(n);
-		for (int i = lower; i <= upper; i++) {
-			selected.set((int) indexes[i]);
+	}
+
+	/**
+	 * Returns the lower end of the last selected block (inclusive) in the
+	 * sorted order.
+	 * 
+	 * @return The lower end of the last selected block.
+	 */
+	public int getLower() {
+		return lower;
+	}
+
+	/**
+	 * Returns the upper end of the last selected block (inclusive) in the
+	 * sorted order.
+	 * 
+	 * @return The upper end of the last selected block.
+	 */
+	public int getUpper() {
+		return upper;
+	}
+
+	/**
+	 * Returns the largest position p in [from, to] with prefixWeights[p] <=
+	 * bound, or from if there is none.
+	 */
+	private static int lastAtMost(double[] prefixWeights, double bound, int from, int to) {
+		int low = from;
+		int high = to;
+		int middle;
+		while (low < high) {
+			middle = (low + high + 1) >>> 1;
+			if (prefixWeights[middle] <= bound) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
 		}
+		return low;
+	}
 
-		return selected;
+	/**
+	 * Returns the smallest position p in [from, to] with prefixWeights[p] >=
+	 * bound, or to if there is none.
+	 */
+	private static int firstAtLeast(double[] prefixWeights, double bound, int from, int to) {
+		int low = from;
+		int high = to;
+		int middle;
+		while (low < high) {
+			middle = (low + high) >>> 1;
+			if (prefixWeights[middle] >= bound) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
 
+	/**
+	 * Sorts a range of indexes stably according to the values they point to
+	 * (merge sort with insertion sort for short runs). No memory is allocated.
+	 * 
+	 * @param indexes
+	 *            The indexes
+	 * @param buffer
+	 *            A buffer at least as long as the range
+	 * @param data
+	 *            The values the indexes point to
+	 * @param from
+	 *            The beginning of the range (inclusive)
+	 * @param to
+	 *            The end of the range (exclusive)
+	 */
+	static void sortIndexes(int[] indexes, int[] buffer, double[] data, int from, int to) {
+		if (to - from <= 16) {
+			int index;
+			int j;
+			for (int i = from + 1; i < to; i++) {
+				index = indexes[i];
+				j = i - 1;
+				while (j >= from && Double.compare(data[indexes[j]], data[index]) > 0) {
+					indexes[j + 1] = indexes[j];
+					j--;
+				}
+				indexes[j + 1] = index;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sortIndexes(indexes, buffer, data, from, middle);
+		sortIndexes(indexes, buffer, data, middle, to);
+		if (Double.compare(data[indexes[middle - 1]], data[indexes[middle]]) <= 0) {
+			// Already in order
+			return;
+		}
+		System.arraycopy(indexes, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int k = from; k < to; k++) {
+			if (right >= to || (left < middle && Double.compare(data[buffer[left]], data[buffer[right]]) <= 0)) {
+				indexes[k] = buffer[left++];
+			} else {
+				indexes[k] = buffer[right++];
+			}
+		}
 	}
 
 	/**
@@ -305,10 +647,10 @@ public class Selection {
 	 */
 	public String toString() {
 		String rep = "";
-		for (int i = 0; i < indexes.length - 1; i++) {
-			rep += ((int) indexes[i]) + ", ";
+		for (int i = 0; i < size - 1; i++) {
+			rep += indexes[i] + ", ";
 		}
-		rep += (int) indexes[indexes.length - 1];
+		rep += indexes[size - 1];
 		return rep;
 	}
 }
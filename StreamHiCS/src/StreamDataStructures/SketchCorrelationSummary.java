@@ -0,0 +1,519 @@
+package streamdatastructures;
+
+import java.util.Random;
+
+import weka.core.Instance;
+
+/**
+ * Maintains an approximate stream summary in order to estimate the Pearson's
+ * correlation coefficient for each pair of dimensions, for streams with
+ * thousands of dimensions where the exact {@link CorrelationSummary} is too
+ * expensive, since it costs O(d^2) per instance.
+ * 
+ * The summary is a random projection of the time axis: every instance t is
+ * assigned a random sign vector r_t of length k, and every dimension i keeps
+ * the sketch S_i = sum_t sqrt(w_t) * x_ti * r_t, where w_t is the fading
+ * weight of the instance. Additionally the sum R = sum_t sqrt(w_t) * r_t and
+ * the exact linear sums are kept. When the coefficients are calculated, the
+ * sketches are centred with the exact means: Z_i = S_i - mean_i * R is the
+ * projection of the centred values of dimension i. Since the signs of
+ * different instances are independent, the inner product of Z_i and Z_j is
+ * an unbiased estimate of the faded covariance of i and j, and the cosine of
+ * Z_i and Z_j estimates the coefficient. Every instance costs O(d * k), the
+ * memory is O(d * k). Like in {@link CorrelationSummary}, the instances are
+ * buffered and added to the sketches in batches, so that every sketch is
+ * loaded once per batch.
+ * 
+ * Error bounds: the estimate of a coefficient rho is approximately normally
+ * distributed around rho with a standard error of about (1 - rho^2) /
+ * sqrt(k), i.e. at most 1 / sqrt(k) for uncorrelated dimensions and less for
+ * strongly correlated ones. A single estimate therefore falls more than m
+ * below the true coefficient with a probability of at most exp(-k * m^2 /
+ * 2). The candidate pairs are screened among all p = d(d - 1) / 2 pairs, so
+ * by the union bound the probability that any true candidate is missed by a
+ * read of the candidates is at most p * exp(-k * m^2 / 2), and at most R
+ * times that over R reads, since every read re-screens all pairs. For
+ * example, d = 1000 and k = 1024 give about 5e5 * exp(-512 * m^2): for a
+ * margin of 0.15 the bound is about 5 and guarantees nothing, for a margin
+ * of 0.2 it is 6e-4 per read. The screening margin of this summary
+ * (see {@link #getScreeningMargin()}) is derived from d, k and the
+ * acceptable failure probability per read, and
+ * {@link #calculateSketchSize(int, double, double)} derives k from d, the
+ * margin and the failure probability. The bound relies on the normal
+ * approximation; the Johnson-Lindenstrauss lemma for sign projections
+ * (Achlioptas, 2003) gives a rigorous bound of the same form with a larger
+ * constant. The centring cancels the mean of the values, so the relative
+ * precision degrades for dimensions whose mean is many orders of magnitude
+ * larger than their standard deviation.
+ * 
+ * The estimated coefficients are meant for screening: the candidate pairs of
+ * this summary include the pairs whose estimate is up to
+ * {@link #getScreeningMargin()} below a threshold, and the candidates are
+ * checked exactly afterwards, e.g. by their contrast.
+ * 
+ * Costs: every instance costs O(d * k) and the memory is O(d * k), but every
+ * read of the candidates after instances were added rebuilds the index by
+ * estimating all pairs, which costs O(d^2 * k), as does
+ * {@link #getCorrelationMatrix()}. The candidates should therefore be read
+ * once per evaluation of the subspaces, not per instance.
+ * 
+ * @author agent
+ *
+ */
+public class SketchCorrelationSummary extends CorrelationEstimator {
+
+	/**
+	 * The default screening margin from which the sketch size is derived.
+	 */
+	public static final double defaultMargin = 0.2;
+
+	/**
+	 * The default probability that a read of the candidates misses any true
+	 * candidate.
+	 */
+	public static final double defaultFailureProbability = 0.01;
+
+	/**
+	 * The acceptable probability that a read of the candidates misses any true
+	 * candidate, from which the screening margin is derived.
+	 */
+	private double failureProbability = defaultFailureProbability;
+
+	/**
+	 * The number of components of a sketch.
+	 */
+	private int k;
+
+	/**
+	 * The sketches of the dimensions, one row per dimension.
+	 */
+	private double[][] sketches;
+
+	/**
+	 * The sum of the weighted sign vectors.
+	 */
+	private double[] signSum;
+
+	/**
+	 * The buffered instances, one row per instance.
+	 */
+	private double[][] batch;
+
+	/**
+	 * The sign vectors of the buffered instances, multiplied by the square
+	 * root of their weights.
+	 */
+	private double[][] batchSigns;
+
+	/**
+	 * The number of buffered instances.
+	 */
+	private int batchCount = 0;
+
+	/**
+	 * The weighted linear sums of the dimensions.
+	 */
+	private double[] linearSums;
+
+	/**
+	 * The sum of the weights.
+	 */
+	private double n;
+
+	/**
+	 * The factor by which the summary fades with every instance.
+	 */
+	private double fadingFactor;
+
+	/**
+	 * The weight with which the last instance was added, i.e. fadingFactor^-t
+	 * since the last rescaling. The sketches hold the square root of the
+	 * weights.
+	 */
+	private double weight = 1;
+
+	/**
+	 * The weight above which the summary is rescaled.
+	 */
+	private static final double maxWeight = Math.pow(2, 64);
+
+	/**
+	 * The centred and normalised sketches, prepared by
+	 * {@link #prepareCoefficients()}.
+	 */
+	private double[][] normalisedSketches;
+
+	/**
+	 * The random number generator for the signs.
+	 */
+	private Random generator;
+
+	/**
+	 * Creates an instance of this class whose sketch size is derived from the
+	 * number of dimensions, the {@link #defaultMargin} and the
+	 * {@link #defaultFailureProbability}.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the stream
+	 * @param horizon
+	 *            The number of instances after which the weight of an
+	 *            instance has faded to 0.01
+	 */
+	public SketchCorrelationSummary(int numberOfDimensions, int horizon) {
+		this(numberOfDimensions, horizon,
+				calculateSketchSize(numberOfDimensions, defaultMargin, defaultFailureProbability), new Random());
+	}
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the stream
+	 * @param horizon
+	 *            The number of instances after which the weight of an
+	 *            instance has faded to 0.01
+	 * @param sketchSize
+	 *            The number of components of a sketch. The standard error of
+	 *            the coefficients is about 1 / sqrt(sketchSize).
+	 */
+	public SketchCorrelationSummary(int numberOfDimensions, int horizon, int sketchSize) {
+		this(numberOfDimensions, horizon, sketchSize, new Random());
+	}
+
+	/**
+	 * Creates an instance of this class with a seeded random number
+	 * generator, so that the estimates are reproducible.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the stream
+	 * @param horizon
+	 *            The number of instances after which the weight of an
+	 *            instance has faded to 0.01
+	 * @param sketchSize
+	 *            The number of components of a sketch
+	 * @param seed
+	 *            The seed of the random number generator
+	 */
+	public SketchCorrelationSummary(int numberOfDimensions, int horizon, int sketchSize, long seed) {
+		this(numberOfDimensions, horizon, sketchSize, new Random(seed));
+	}
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the stream
+	 * @param horizon
+	 *            The number of instances after which the weight of an
+	 *            instance has faded to 0.01
+	 * @param sketchSize
+	 *            The number of components of a sketch
+	 * @param generator
+	 *            The random number generator
+	 */
+	private SketchCorrelationSummary(int numberOfDimensions, int horizon, int sketchSize, Random generator) {
+		super(numberOfDimensions);
+		if (sketchSize <= 0) {
+			throw new IllegalArgumentException("The sketch size cannot be 0 or negative.");
+		}
+		this.k = sketchSize;
+		this.generator = generator;
+		this.fadingFactor = calculateFadingFactor(horizon);
+		sketches = new double[numberOfDimensions][sketchSize];
+		normalisedSketches = new double[numberOfDimensions][sketchSize];
+		signSum = new double[sketchSize];
+		linearSums = new double[numberOfDimensions];
+		batch = new double[CorrelationSummary.defaultBatchSize][numberOfDimensions];
+		batchSigns = new double[CorrelationSummary.defaultBatchSize][sketchSize];
+	}
+
+	/**
+	 * Adds a stream instance's values to the summary. The signs of the
+	 * instance are drawn and the instance is buffered; it is added to the
+	 * sketches when the batch is full, at a cost of O(d * k).
+	 * 
+	 * @param instance
+	 *            The instance
+	 */
+	@Override
+	public void addInstance(Instance instance) {
+		if (weight > maxWeight) {
+			flush();
+			rescale();
+		}
+		weight /= fadingFactor;
+		double root = Math.sqrt(weight);
+		double[] signs = batchSigns[batchCount];
+		long bits = 0;
+		for (int c = 0; c < k; c++) {
+			if ((c & 63) == 0) {
+				bits = generator.nextLong();
+			}
+			signs[c] = (bits & 1) == 0 ? root : -root;
+			bits >>>= 1;
+			signSum[c] += signs[c];
+		}
+		int numberOfDimensions = getNumberOfDimensions();
+		double[] vector = batch[batchCount];
+		for (int i = 0; i < numberOfDimensions; i++) {
+			vector[i] = instance.value(i);
+			linearSums[i] += weight * vector[i];
+		}
+		n += weight;
+		batchCount++;
+		if (batchCount == batch.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Adds the buffered instances to the sketches. Every sketch receives all
+	 * instances of the batch before the next one is loaded.
+	 */
+	@Override
+	public void flush() {
+		if (batchCount == 0) {
+			return;
+		}
+		int numberOfDimensions = getNumberOfDimensions();
+		double[] sketch;
+		double[] signs;
+		double value;
+		for (int i = 0; i < numberOfDimensions; i++) {
+			sketch = sketches[i];
+			int b = 0;
+			// Four instances at a time
+			for (; b + 3 < batchCount; b += 4) {
+				double v0 = batch[b][i];
+				double v1 = batch[b + 1][i];
+				double v2 = batch[b + 2][i];
+				double v3 = batch[b + 3][i];
+				double[] s0 = batchSigns[b];
+				double[] s1 = batchSigns[b + 1];
+				double[] s2 = batchSigns[b + 2];
+				double[] s3 = batchSigns[b + 3];
+				for (int c = 0; c < k; c++) {
+					sketch[c] = sketch[c] + v0 * s0[c] + v1 * s1[c] + v2 * s2[c] + v3 * s3[c];
+				}
+			}
+			for (; b < batchCount; b++) {
+				value = batch[b][i];
+				signs = batchSigns[b];
+				for (int c = 0; c < k; c++) {
+					sketch[c] += value * signs[c];
+				}
+			}
+		}
+		batchCount = 0;
+		invalidateCandidates();
+	}
+
+	/**
+	 * Brings the summary back to the scale of the current time and resets the
+	 * weight to 1.
+	 */
+	private void rescale() {
+		double scale = 1 / weight;
+		double rootScale = Math.sqrt(scale);
+		int numberOfDimensions = getNumberOfDimensions();
+		for (int i = 0; i < numberOfDimensions; i++) {
+			linearSums[i] *= scale;
+			for (int c = 0; c < k; c++) {
+				sketches[i][c] *= rootScale;
+			}
+		}
+		for (int c = 0; c < k; c++) {
+			signSum[c] *= rootScale;
+		}
+		n *= scale;
+		weight = 1;
+		invalidateCandidates();
+	}
+
+	/**
+	 * Estimates the Pearson's correlation coefficient of two given dimensions
+	 * from the sketches.
+	 * 
+	 * @param dim1
+	 *            The first dimension
+	 * @param dim2
+	 *            The second dimension
+	 * @return The estimated Pearson's correlation coefficient for the two
+	 *         dimensions.
+	 */
+	@Override
+	public double calculateCorrelation(int dim1, int dim2) {
+		assert (dim1 != dim2);
+		flush();
+		double mean1 = linearSums[dim1] / n;
+		double mean2 = linearSums[dim2] / n;
+		double[] sketch1 = sketches[dim1];
+		double[] sketch2 = sketches[dim2];
+		double product = 0;
+		double squares1 = 0;
+		double squares2 = 0;
+		double z1;
+		double z2;
+		for (int c = 0; c < k; c++) {
+			z1 = sketch1[c] - mean1 * signSum[c];
+			z2 = sketch2[c] - mean2 * signSum[c];
+			product += z1 * z2;
+			squares1 += z1 * z1;
+			squares2 += z2 * z2;
+		}
+		return product / (Math.sqrt(squares1) * Math.sqrt(squares2));
+	}
+
+	@Override
+	protected void prepareCoefficients() {
+		int numberOfDimensions = getNumberOfDimensions();
+		double mean;
+		double norm;
+		double[] sketch;
+		double[] normalised;
+		for (int i = 0; i < numberOfDimensions; i++) {
+			mean = linearSums[i] / n;
+			sketch = sketches[i];
+			normalised = normalisedSketches[i];
+			norm = 0;
+			for (int c = 0; c < k; c++) {
+				normalised[c] = sketch[c] - mean * signSum[c];
+				norm += normalised[c] * normalised[c];
+			}
+			// A constant dimension yields NaN like the exact summary
+			norm = 1 / Math.sqrt(norm);
+			for (int c = 0; c < k; c++) {
+				normalised[c] *= norm;
+			}
+		}
+	}
+
+	@Override
+	protected void calculateCoefficients(int dimension, double[] coefficients) {
+		int numberOfDimensions = getNumberOfDimensions();
+		double[] normalised = normalisedSketches[dimension];
+		double[] other;
+		double product;
+		for (int j = dimension + 1; j < numberOfDimensions; j++) {
+			other = normalisedSketches[j];
+			product = 0;
+			for (int c = 0; c < k; c++) {
+				product += normalised[c] * other[c];
+			}
+			coefficients[j] = product;
+		}
+	}
+
+	/**
+	 * Returns the margin m for which a read of the candidates misses any true
+	 * candidate with at most the failure probability delta (see
+	 * {@link #setFailureProbability(double)}) by the union bound over the p =
+	 * d(d - 1) / 2 pairs, i.e. m = sqrt(2 * ln(p / delta) / k).
+	 * 
+	 * @return The margin.
+	 */
+	@Override
+	public double getScreeningMargin() {
+		return Math.sqrt(2 * Math.log(numberOfPairs(getNumberOfDimensions()) / failureProbability) / k);
+	}
+
+	/**
+	 * Calculates the sketch size for which a read of the candidates of a
+	 * stream with the given number of dimensions misses any true candidate by
+	 * more than the margin with at most the failure probability, i.e. k =
+	 * 2 * ln(p / delta) / m^2 for p = d(d - 1) / 2 pairs.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the stream
+	 * @param margin
+	 *            The screening margin
+	 * @param failureProbability
+	 *            The probability that a read of the candidates misses any true
+	 *            candidate
+	 * @return The sketch size.
+	 */
+	public static int calculateSketchSize(int numberOfDimensions, double margin, double failureProbability) {
+		if (margin <= 0 || margin > 1) {
+			throw new IllegalArgumentException("The margin must be in (0, 1].");
+		}
+		checkFailureProbability(failureProbability);
+		double sketchSize = 2 * Math.log(numberOfPairs(numberOfDimensions) / failureProbability) / (margin * margin);
+		return (int) Math.ceil(sketchSize);
+	}
+
+	/**
+	 * Returns the number of pairs of the given number of dimensions, at least
+	 * 1.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions
+	 * @return The number of pairs.
+	 */
+	private static double numberOfPairs(int numberOfDimensions) {
+		return Math.max(1, numberOfDimensions * (numberOfDimensions - 1.0) / 2);
+	}
+
+	/**
+	 * Checks that a failure probability lies in (0, 1).
+	 * 
+	 * @param failureProbability
+	 *            The failure probability
+	 */
+	private static void checkFailureProbability(double failureProbability) {
+		if (failureProbability <= 0 || failureProbability >= 1) {
+			throw new IllegalArgumentException("The failure probability must be in (0, 1).");
+		}
+	}
+
+	/**
+	 * Sets the acceptable probability that a read of the candidates misses
+	 * any true candidate, from which the screening margin is derived.
+	 * 
+	 * @param failureProbability
+	 *            The failure probability
+	 */
+	public void setFailureProbability(double failureProbability) {
+		checkFailureProbability(failureProbability);
+		this.failureProbability = failureProbability;
+	}
+
+	/**
+	 * Returns the acceptable probability that a read of the candidates misses
+	 * any true candidate.
+	 * 
+	 * @return The failure probability.
+	 */
+	public double getFailureProbability() {
+		return failureProbability;
+	}
+
+	/**
+	 * Returns the number of components of a sketch.
+	 * 
+	 * @return The sketch size.
+	 */
+	public int getSketchSize() {
+		return k;
+	}
+
+	/**
+	 * Clears the summary by resetting all values to 0.
+	 */
+	@Override
+	public void clear() {
+		int numberOfDimensions = getNumberOfDimensions();
+		for (int i = 0; i < numberOfDimensions; i++) {
+			linearSums[i] = 0;
+			for (int c = 0; c < k; c++) {
+				sketches[i][c] = 0;
+			}
+		}
+		for (int c = 0; c < k; c++) {
+			signSum[c] = 0;
+		}
+		n = 0;
+		weight = 1;
+		batchCount = 0;
+		invalidateCandidates();
+	}
+}
@@ -1,9 +1,5 @@
 package streamdatastructures;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Queue;
-
 import weka.core.Instance;
 
 /**
@@ -26,11 +22,15 @@ public class SlidingWindow {
 	private int windowLength;
 
 	/**
-	 * An {@link ArrayList} containing one queue for {@link Double}s for each
-	 * dimension. An instance is stored by storing each attribute value in the
-	 * corresponding queue.
+	 * The values of the instances, one circular buffer of the window length
+	 * for each dimension. All buffers share the same start and size.
 	 */
-	private ArrayList<Queue<Double>> instanceQueue;
+	private double[][] columns;
+
+	/**
+	 * The position of the oldest instance in the buffers.
+	 */
+	private int start;
 
 	/**
 	 * The number of dimensions of the full space.
@@ -52,45 +52,43 @@ public class SlidingWindow {
 			throw new IllegalArgumentException("The window length cannot be 0 or negative.");
 		}
 		this.windowLength = windowLength;
-		this.instanceQueue = new ArrayList<Queue<Double>>(numberOfDimensions);
-		// Creating all the single queues
-		for (int i = 0; i < numberOfDimensions; i++) {
-			// Array Deque is not thread safe!
-			instanceQueue.add(new ArrayDeque<Double>());
-		}
+		this.columns = new double[numberOfDimensions][windowLength];
 		this.numberOfDimensions = numberOfDimensions;
 	}
 
 	/**
 	 * Adds an {@link Instance} to this {@link SlidingWindow}. If the window was
-	 * full, the oldest instance is removed to provide space for the new
-	 * {@link Instance}.
+	 * full, the oldest instance is overwritten by the new {@link Instance}.
 	 * 
 	 * @param instance
 	 *            The {@link Instance} to be added.
 	 */
 	public void add(Instance instance) {
+		int position;
 		if (numberOfInstances >= windowLength) {
-			// Removing the oldest instance
-			for (Queue<Double> q : instanceQueue) {
-				q.remove();
+			// Replacing the oldest instance
+			position = start;
+			start++;
+			if (start == windowLength) {
+				start = 0;
+			}
+		} else {
+			position = start + numberOfInstances;
+			if (position >= windowLength) {
+				position -= windowLength;
 			}
-			numberOfInstances--;
+			numberOfInstances++;
 		}
-		// Adding the instance
 		for (int i = 0; i < numberOfDimensions; i++) {
-			instanceQueue.get(i).add(instance.value(i));
+			columns[i][position] = instance.value(i);
 		}
-		numberOfInstances++;
 	}
 
 	/**
 	 * Clear the window.
 	 */
 	public void clear() {
-		for (Queue<Double> q : instanceQueue) {
-			q.clear();
-		}
+		start = 0;
 		numberOfInstances = 0;
 	}
 
@@ -105,7 +103,62 @@ public class SlidingWindow {
 	}
 
 	/**
-	 * Returns the one dimensional data from the given dimension.
+	 * Returns the window length, i.e. the maximum number of {@link Instance}s
+	 * in this {@link SlidingWindow}.
+	 * 
+	 * @return The window length.
+	 */
+	public int getWindowLength() {
+		return windowLength;
+	}
+
+	/**
+	 * Returns whether the window holds as many instances as its length, i.e.
+	 * whether every position of the buffers is used.
+	 * 
+	 * @return True, if the window is full, false otherwise.
+	 */
+	public boolean isFull() {
+		return numberOfInstances == windowLength;
+	}
+
+	/**
+	 * Returns the circular buffer of the given dimension without copying it.
+	 * The oldest instance is at {@link #getStart()} and the
+	 * {@link #getNumberOfInstances()} instances follow it, wrapping around at
+	 * the end of the buffer. The buffer must not be changed and is overwritten
+	 * by the following insertions, unless {@link #detach()} is called before.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @return The buffer of the dimension.
+	 */
+	public double[] getColumn(int dimension) {
+		return columns[dimension];
+	}
+
+	/**
+	 * Returns the position of the oldest instance in the buffers.
+	 * 
+	 * @return The position of the oldest instance.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Replaces the buffers by copies, so that the buffers handed out by
+	 * {@link #getColumn(int)} so far are not changed by later insertions.
+	 */
+	public void detach() {
+		for (int i = 0; i < numberOfDimensions; i++) {
+			columns[i] = columns[i].clone();
+		}
+	}
+
+	/**
+	 * Returns the one dimensional data from the given dimension, from the
+	 * oldest to the newest instance.
 	 * 
 	 * @param dimension
 	 *            The dimension the data should be taken from
@@ -113,11 +166,9 @@ public class SlidingWindow {
 	 */
 	public double[] getDimensionData(int dimension) {
 		double[] data = new double[numberOfInstances];
-		Double[] tempData = new Double[numberOfInstances];
-		tempData = instanceQueue.get(dimension).toArray(tempData);
-		for (int i = 0; i < numberOfInstances; i++) {
-			data[i] = tempData[i];
-		}
+		int first = Math.min(numberOfInstances, windowLength - start);
+		System.arraycopy(columns[dimension], start, data, 0, first);
+		System.arraycopy(columns[dimension], 0, data, first, numberOfInstances - first);
 		return data;
 	}
 }
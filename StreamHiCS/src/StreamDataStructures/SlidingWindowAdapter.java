@@ -20,6 +20,24 @@ public class SlidingWindowAdapter extends SummarisationAdapter {
 	 * The number of dimensions. 
 	 */
 	private int d;
+
+	/**
+	 * The weights of the instances, which are all 1. The array is shared by
+	 * all {@link Snapshot}s of the same size and never changed. The
+	 * {@link DataBundle}s of {@link #getData()} get copies.
+	 */
+	private double[] weights = new double[0];
+
+	/**
+	 * Whether the buffers of the {@link SlidingWindow} were handed out to a
+	 * {@link Snapshot} without copying them.
+	 */
+	private boolean shared = false;
+
+	/**
+	 * The {@link Snapshot} sharing the buffers of the {@link SlidingWindow}.
+	 */
+	private Snapshot sharingSnapshot;
 	
 	/**
 	 * Creates an instance of this class. 
@@ -34,6 +52,15 @@ public class SlidingWindowAdapter extends SummarisationAdapter {
 	
 	@Override
 	public void addImpl(Instance instance) {
+		if (shared) {
+			// Copy on write, unless the snapshot sharing the buffers was
+			// released already
+			if (sharingSnapshot == null || !sharingSnapshot.isReleased()) {
+				slidingWindow.detach();
+			}
+			shared = false;
+			sharingSnapshot = null;
+		}
 		slidingWindow.add(instance);
 	}
 
@@ -42,22 +69,61 @@ public class SlidingWindowAdapter extends SummarisationAdapter {
 		slidingWindow.clear();
 	}
 
+	/**
+	 * Returns the {@link SlidingWindow} holding the instances.
+	 * 
+	 * @return The {@link SlidingWindow}.
+	 */
+	protected SlidingWindow getSlidingWindow() {
+		return slidingWindow;
+	}
+
 	@Override
 	public DataBundle[] getData() {
+		return createData(false);
+	}
 
+	/**
+	 * Creates the {@link DataBundle}s of the instances in the window. The
+	 * instances are at their positions in the buffers of the
+	 * {@link SlidingWindow} if it is full, otherwise in the order they
+	 * arrived, which is the same since the window did not wrap around yet.
+	 * 
+	 * @param share
+	 *            Whether the buffers of a full {@link SlidingWindow} and one
+	 *            array of weights are shared by the {@link DataBundle}s
+	 *            instead of copying them. Only used for {@link Snapshot}s,
+	 *            which do not change their columns.
+	 * @return The {@link DataBundle}s or null if the window is empty.
+	 */
+	protected DataBundle[] createData(boolean share) {
 		int n = slidingWindow.getNumberOfInstances();
 		if (n > 0) {
 			// Construct the DataBundles from the data
 			DataBundle[] data = new DataBundle[d];
 
-			for (int dim = 0; dim < d; dim++) {
-				double[] w = new double[n];
-				for (int i = 0; i < n; i++) {
-					// All the weights are 1
-					w[i] = 1;
+			// All the weights are 1
+			if (share && weights.length != n) {
+				weights = createWeights(n);
+			}
+			if (share && slidingWindow.isFull()) {
+				// The order of the instances does not matter, so the buffers
+				// are used as they are until the next insertion
+				for (int dim = 0; dim < d; dim++) {
+					data[dim] = new DataBundle(slidingWindow.getColumn(dim), weights);
+				}
+				shared = true;
+			} else {
+				for (int dim = 0; dim < d; dim++) {
+					double[] column;
+					if (slidingWindow.isFull()) {
+						column = slidingWindow.getColumn(dim).clone();
+					} else {
+						column = slidingWindow.getDimensionData(dim);
+					}
+					// Copying weights, necessary since manipulated later
+					data[dim] = new DataBundle(column, share ? weights : createWeights(n));
 				}
-
-				data[dim] = new DataBundle(slidingWindow.getDimensionData(dim), w);
 			}
 
 			return data;
@@ -66,6 +132,31 @@ public class SlidingWindowAdapter extends SummarisationAdapter {
 		}
 	}
 
+	/**
+	 * Creates an array of weights which are all 1.
+	 * 
+	 * @param n
+	 *            The number of weights
+	 * @return The weights.
+	 */
+	private double[] createWeights(int n) {
+		double[] weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			weights[i] = 1;
+		}
+		return weights;
+	}
+
+	@Override
+	protected Snapshot createSnapshot(long epoch, long clearEpoch, SlicingMethod slicingMethod) {
+		// Unlike getData(), the snapshot shares the buffers and the weights
+		Snapshot snapshot = new Snapshot(createData(true), epoch, clearEpoch, slicingMethod);
+		if (shared) {
+			sharingSnapshot = snapshot;
+		}
+		return snapshot;
+	}
+
 	@Override
 	public int getNumberOfElements() {
 		return slidingWindow.getNumberOfInstances();
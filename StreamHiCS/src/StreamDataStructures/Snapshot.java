@@ -0,0 +1,778 @@
+package streamdatastructures;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import subspace.Subspace;
+
+/**
+ * This class represents an immutable, versioned snapshot of the data of a
+ * {@link SummarisationAdapter}. It holds the columns, the weights and (once
+ * sorted) the sort permutations of one state of the summarisation structure,
+ * identified by its epoch. All the slicing methods work on the snapshot only,
+ * so that an evaluation can run on a snapshot while new instances are added to
+ * the live structure on another thread. Instances of this class are obtained
+ * from {@link SummarisationAdapter#getSnapshot()} or, counting a reference that
+ * must be released again, from {@link SummarisationAdapter#acquireSnapshot()}.
+ * 
+ * @author agent
+ *
+ */
+public class Snapshot {
+
+	/**
+	 * The {@link DataBundle}s, one for each dimension. An entry is null until
+	 * the column is materialised.
+	 */
+	private final AtomicReferenceArray<DataBundle> columns;
+
+	/**
+	 * The instances the columns are materialised from, null if all columns
+	 * were materialised when the snapshot was taken.
+	 */
+	private final double[][] points;
+
+	/**
+	 * The number of references to this snapshot (see {@link #retain()} and
+	 * {@link #release()}). The summarisation structure may reuse storage it
+	 * shares with the snapshot once it drops to 0.
+	 */
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	/**
+	 * The weights of the instances, shared by all columns.
+	 */
+	private final double[] weights;
+
+	/**
+	 * The number of dimensions.
+	 */
+	private final int d;
+
+	/**
+	 * The number of instances.
+	 */
+	private final int n;
+
+	/**
+	 * The epoch of the summarisation structure this snapshot was taken at.
+	 */
+	private final long epoch;
+
+	/**
+	 * The epoch of the last clear of the summarisation structure before this
+	 * snapshot was taken.
+	 */
+	private final long clearEpoch;
+
+	/**
+	 * The method used to create the slices.
+	 */
+	private final SummarisationAdapter.SlicingMethod slicingMethod;
+
+	/**
+	 * The stable keys of the instances, null if the summarisation structure
+	 * does not provide them.
+	 */
+	private Object[] keys;
+
+	/**
+	 * The {@link IncrementalSorter} repairing the sorted order of the previous
+	 * snapshot, null if the columns are sorted from scratch.
+	 */
+	private IncrementalSorter sorter;
+
+	/**
+	 * The index of every key, created when the first column is sorted.
+	 */
+	private IdentityHashMap<Object, Integer> keyIndexes;
+
+	/**
+	 * Creates an instance of this class. The {@link DataBundle}s are taken
+	 * over and must not be changed afterwards.
+	 * 
+	 * @param data
+	 *            The {@link DataBundle}s, one for each dimension, null if
+	 *            there are no instances
+	 * @param epoch
+	 *            The epoch of the summarisation structure
+	 * @param clearEpoch
+	 *            The epoch of the last clear
+	 * @param slicingMethod
+	 *            The method used to create the slices
+	 */
+	Snapshot(DataBundle[] data, long epoch, long clearEpoch, SummarisationAdapter.SlicingMethod slicingMethod) {
+		this.n = data == null || data.length == 0 ? 0 : data[0].size();
+		this.d = n == 0 ? 0 : data.length;
+		this.columns = new AtomicReferenceArray<DataBundle>(n == 0 ? new DataBundle[0] : data);
+		this.points = null;
+		this.weights = n == 0 ? new double[0] : data[0].getWeights();
+		this.epoch = epoch;
+		this.clearEpoch = clearEpoch;
+		this.slicingMethod = slicingMethod;
+	}
+
+	/**
+	 * Creates an instance of this class from the instances of the
+	 * summarisation structure. A column is materialised (and sorted) only the
+	 * first time it is used, so the dimensions no evaluated {@link Subspace}
+	 * contains cost nothing. The arrays are taken over and must not be changed
+	 * afterwards.
+	 * 
+	 * @param points
+	 *            The instances, each one an array of its values
+	 * @param weights
+	 *            The weights of the instances
+	 * @param epoch
+	 *            The epoch of the summarisation structure
+	 * @param clearEpoch
+	 *            The epoch of the last clear
+	 * @param slicingMethod
+	 *            The method used to create the slices
+	 */
+	Snapshot(double[][] points, double[] weights, long epoch, long clearEpoch,
+			SummarisationAdapter.SlicingMethod slicingMethod) {
+		if (points.length != weights.length) {
+			throw new IllegalArgumentException("Points and weights have different length.");
+		}
+		this.n = points.length;
+		this.d = n == 0 ? 0 : points[0].length;
+		this.columns = new AtomicReferenceArray<DataBundle>(d);
+		this.points = points;
+		this.weights = weights;
+		this.epoch = epoch;
+		this.clearEpoch = clearEpoch;
+		this.slicingMethod = slicingMethod;
+	}
+
+	/**
+	 * Lets the columns be sorted by repairing the order of the previous
+	 * snapshot, see {@link IncrementalSorter}. Must be called before the
+	 * snapshot is handed out.
+	 * 
+	 * @param keys
+	 *            The stable keys of the instances
+	 * @param sorter
+	 *            The {@link IncrementalSorter} of the summarisation structure
+	 */
+	void setKeys(Object[] keys, IncrementalSorter sorter) {
+		if (keys.length != n) {
+			throw new IllegalArgumentException("Keys and instances have different length.");
+		}
+		this.keys = keys;
+		this.sorter = sorter;
+	}
+
+	/**
+	 * Returns the index of every key.
+	 * 
+	 * @return The index of every key.
+	 */
+	private synchronized IdentityHashMap<Object, Integer> getKeyIndexes() {
+		if (keyIndexes == null) {
+			keyIndexes = new IdentityHashMap<Object, Integer>(2 * n);
+			for (int i = 0; i < n; i++) {
+				keyIndexes.put(keys[i], i);
+			}
+		}
+		return keyIndexes;
+	}
+
+	/**
+	 * Adds a reference to this snapshot, which must be given up by
+	 * {@link #release()} once the snapshot is not used anymore.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the snapshot was already released
+	 */
+	public void retain() {
+		int count;
+		do {
+			count = references.get();
+			if (count == 0) {
+				throw new IllegalStateException("The snapshot was already released.");
+			}
+		} while (!references.compareAndSet(count, count + 1));
+	}
+
+	/**
+	 * Gives up a reference to this snapshot. When the last reference is
+	 * released, the summarisation structure may reuse the storage it shares
+	 * with the snapshot.
+	 */
+	public void release() {
+		references.decrementAndGet();
+	}
+
+	/**
+	 * Returns whether all references to this snapshot were released.
+	 * 
+	 * @return True, if this snapshot was released.
+	 */
+	public boolean isReleased() {
+		return references.get() <= 0;
+	}
+
+	/**
+	 * Returns the {@link DataBundle} of the given dimension and materialises
+	 * it, if this was not done before. Concurrent evaluations may materialise
+	 * a column at the same time, but only one of the results is kept.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @return The {@link DataBundle} of the dimension.
+	 */
+	private DataBundle column(int dimension) {
+		DataBundle column = columns.get(dimension);
+		if (column == null) {
+			double[] values = new double[n];
+			for (int i = 0; i < n; i++) {
+				values[i] = points[i][dimension];
+			}
+			columns.compareAndSet(dimension, null, new DataBundle(values, weights));
+			column = columns.get(dimension);
+		}
+		return column;
+	}
+
+	/**
+	 * Returns the number of columns materialised so far.
+	 * 
+	 * @return The number of materialised columns.
+	 */
+	public int getNumberOfMaterialisedColumns() {
+		int count = 0;
+		for (int i = 0; i < d; i++) {
+			if (columns.get(i) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the epoch of the summarisation structure this snapshot was
+	 * taken at.
+	 * 
+	 * @return The epoch.
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Returns the epoch of the last clear of the summarisation structure
+	 * before this snapshot was taken.
+	 * 
+	 * @return The epoch of the last clear.
+	 */
+	public long getClearEpoch() {
+		return clearEpoch;
+	}
+
+	/**
+	 * Returns the method used to create the slices.
+	 * 
+	 * @return The method used to create the slices.
+	 */
+	public SummarisationAdapter.SlicingMethod getSlicingMethod() {
+		return slicingMethod;
+	}
+
+	/**
+	 * Returns the number of instances in this snapshot.
+	 * 
+	 * @return The number of instances.
+	 */
+	public int getNumberOfElements() {
+		return n;
+	}
+
+	/**
+	 * Returns the number of dimensions of this snapshot, 0 if it is empty.
+	 * 
+	 * @return The number of dimensions.
+	 */
+	public int getNumberOfDimensions() {
+		return d;
+	}
+
+	/**
+	 * Returns the value of an instance in a dimension.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @param i
+	 *            The index of the instance
+	 * @return The value.
+	 */
+	public double getValue(int dimension, int i) {
+		return column(dimension).getData()[i];
+	}
+
+	/**
+	 * Returns the weight of an instance.
+	 * 
+	 * @param i
+	 *            The index of the instance
+	 * @return The weight.
+	 */
+	public double getWeight(int i) {
+		return weights[i];
+	}
+
+	/**
+	 * Copies the values of all instances in a dimension into the given array.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @param destination
+	 *            The array, at least as long as the number of instances
+	 */
+	public void copyColumn(int dimension, double[] destination) {
+		if (n > 0) {
+			System.arraycopy(column(dimension).getData(), 0, destination, 0, n);
+		}
+	}
+
+	/**
+	 * Copies the weights of all instances into the given array.
+	 * 
+	 * @param destination
+	 *            The array, at least as long as the number of instances
+	 */
+	public void copyWeights(double[] destination) {
+		if (n > 0) {
+			System.arraycopy(weights, 0, destination, 0, n);
+		}
+	}
+
+	/**
+	 * Returns the data contained projected to the given reference dimension.
+	 * 
+	 * @param referenceDimension
+	 *            The dimension the data is projected to
+	 * @return The data projected to teh reference dimension.
+	 */
+	public DataBundle getProjectedData(int referenceDimension) {
+		if (n == 0) {
+			return new DataBundle(new double[0], new double[0]);
+		}
+
+		// Copying the dimension data
+		double[] dimData = column(referenceDimension).getData();
+		double[] dataCopy = new double[n];
+		double[] weightsCopy = new double[n];
+		for (int i = 0; i < n; i++) {
+			dataCopy[i] = dimData[i];
+			weightsCopy[i] = weights[i];
+		}
+
+		return new DataBundle(dataCopy, weightsCopy);
+	}
+
+	/**
+	 * Returns the marginal sample of the given dimension as a sorted
+	 * {@link DataBundle} (see {@link DataBundle#sort()}), including the
+	 * cumulative normalised weights. The marginal is sorted only once per
+	 * snapshot and must not be changed.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @return The sorted marginal sample of the dimension.
+	 */
+	public DataBundle getMarginal(int dimension) {
+		if (n == 0) {
+			DataBundle empty = new DataBundle(new double[0], new double[0]);
+			empty.sort();
+			return empty;
+		}
+
+		DataBundle marginal = column(dimension);
+		// Concurrent evaluations may request the same marginal
+		synchronized (marginal) {
+			if (!marginal.isSorted()) {
+				if (sorter != null) {
+					sorter.sort(marginal, dimension, epoch, keys, getKeyIndexes());
+				} else {
+					marginal.sort();
+				}
+			}
+		}
+		return marginal;
+	}
+
+	/**
+	 * Returns the one dimensional data of a random conditional sample
+	 * corresponding to the last dimension in the int[] and the {@link Subspace}
+	 * which contains this dimension. On every dimension in the {@link Subspace}
+	 * except the specified one random range selections on instances (of the
+	 * specified selection size) are done, representing a conditional sample for
+	 * the given dimension.
+	 * 
+	 * @param shuffledDimensions
+	 *            The dimensions. The last one is the one for which a random
+	 *            conditional sample should be drawn.
+	 * @param selectionAlpha
+	 *            The fraction of instances that should be selected per
+	 *            dimension (i.e. the number of selected instances becomes
+	 *            smaller per selection step).
+	 * @return A {@link DataBundle} containing the random conditional sample
+	 *         corresponding to the given dimension.
+	 */
+	public DataBundle getSlicedData(int[] shuffledDimensions, double selectionAlpha) {
+		return getSlicedData(shuffledDimensions, selectionAlpha, new Random());
+	}
+
+	/**
+	 * Returns the one dimensional data of a random conditional sample
+	 * corresponding to the last dimension in the int[], drawing the random
+	 * slices from the given generator. See
+	 * {@link #getSlicedData(int[], double)}.
+	 * 
+	 * @param shuffledDimensions
+	 *            The dimensions. The last one is the one for which a random
+	 *            conditional sample should be drawn.
+	 * @param selectionAlpha
+	 *            The fraction of instances that should be selected per
+	 *            dimension.
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 * @return A {@link DataBundle} containing the random conditional sample
+	 *         corresponding to the given dimension.
+	 */
+	public DataBundle getSlicedData(int[] shuffledDimensions, double selectionAlpha, Random generator) {
+		ScratchArena arena = new ScratchArena();
+		int size = getSlicedData(shuffledDimensions, selectionAlpha, generator, arena);
+		double[] dimData = Arrays.copyOf(arena.getSampleData(), size);
+		double[] weights = Arrays.copyOf(arena.getSampleWeights(), size);
+		return new DataBundle(dimData, weights);
+	}
+
+	/**
+	 * Draws a random conditional sample corresponding to the last dimension in
+	 * the int[] like {@link #getSlicedData(int[], double, Random)}, but stores
+	 * it in the given {@link ScratchArena} (see
+	 * {@link ScratchArena#getSampleData()}) instead of allocating new arrays.
+	 * The sample is sorted and its weights are normalised.
+	 * 
+	 * @param shuffledDimensions
+	 *            The dimensions. The last one is the one for which a random
+	 *            conditional sample should be drawn.
+	 * @param selectionAlpha
+	 *            The fraction of instances that should be selected per
+	 *            dimension.
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 * @param arena
+	 *            The {@link ScratchArena} of the calling thread
+	 * @return The size of the conditional sample.
+	 */
+	public int getSlicedData(int[] shuffledDimensions, double selectionAlpha, Random generator,
+			ScratchArena arena) {
+		if (n == 0) {
+			arena.setSample(null, null, null, 0);
+			return 0;
+		}
+
+		int referenceDimension = shuffledDimensions[shuffledDimensions.length - 1];
+		Selection selection = arena.getSelection();
+
+		if (slicingMethod == SummarisationAdapter.SlicingMethod.BITMASK) {
+			// Do a selection per dimension and intersect the selections word
+			// by word
+			int words = (n + 63) >>> 6;
+			long[] mask = arena.getMask(words);
+			setAll(mask, n);
+			selection.reset(0, selectionAlpha, generator);
+			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
+				long[] blockMask = arena.getBlockMask(words);
+				selection.maskRandomBlock(getMarginal(shuffledDimensions[i]), blockMask);
+				for (int w = 0; w < words; w++) {
+					mask[w] &= blockMask[w];
+				}
+			}
+
+			// Collect the instances in the sorted order of the reference
+			// dimension
+			selection.load(mask, n, selectionAlpha, generator);
+			selection.sortByRanks(getMarginal(referenceDimension));
+		} else {
+			// Start with all the indexes. Every step orders the selected
+			// indexes by the ranks of the dimension, which are computed once
+			// per state of the summarisation.
+			selection.reset(n, selectionAlpha, generator);
+
+			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
+				// Reduce the number of indexes according to a new selection in
+				// the current dimension
+				selection.selectByRanks(getMarginal(shuffledDimensions[i]), weights);
+			}
+			selection.sortByRanks(getMarginal(referenceDimension));
+		}
+
+		// Get the selected data from the last dimension and apply weights
+		arena.setSample(column(referenceDimension).getData(), weights, selection.getIndexes(), selection.size());
+		return selection.size();
+	}
+
+	/**
+	 * Narrows a {@link ConditionalSlice} by a random block selection in the
+	 * given dimension, the next step of the slicing in
+	 * {@link #getSlicedData(int[], double, Random, ScratchArena)}. The parent
+	 * is not changed, so that it can be narrowed by several dimensions.
+	 * 
+	 * @param parent
+	 *            The slice on the previous conditioning dimensions, null to
+	 *            start with all instances
+	 * @param dimension
+	 *            The conditioning dimension
+	 * @param selectionAlpha
+	 *            The fraction of instances that should be selected
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 * @param arena
+	 *            The {@link ScratchArena} of the calling thread
+	 * @return The narrowed {@link ConditionalSlice}.
+	 */
+	public ConditionalSlice getConditionalSlice(ConditionalSlice parent, int dimension, double selectionAlpha,
+			Random generator, ScratchArena arena) {
+		if (n == 0) {
+			return new ConditionalSlice(new int[0]);
+		}
+
+		Selection selection = arena.getSelection();
+		if (slicingMethod == SummarisationAdapter.SlicingMethod.BITMASK) {
+			// Select a block on the sorted dimension and keep the instances of
+			// the parent inside the block
+			long[] blockMask = arena.getBlockMask((n + 63) >>> 6);
+			selection.reset(0, selectionAlpha, generator);
+			selection.maskRandomBlock(getMarginal(dimension), blockMask);
+			if (parent == null) {
+				selection.load(blockMask, n, selectionAlpha, generator);
+				return new ConditionalSlice(Arrays.copyOf(selection.getIndexes(), selection.size()));
+			}
+			int[] parentIndexes = parent.getIndexes();
+			int l = 0;
+			for (int i = 0; i < parentIndexes.length; i++) {
+				if ((blockMask[parentIndexes[i] >>> 6] & (1L << parentIndexes[i])) != 0) {
+					l++;
+				}
+			}
+			int[] indexes = new int[l];
+			int j = 0;
+			for (int i = 0; i < parentIndexes.length; i++) {
+				if ((blockMask[parentIndexes[i] >>> 6] & (1L << parentIndexes[i])) != 0) {
+					indexes[j] = parentIndexes[i];
+					j++;
+				}
+			}
+			return new ConditionalSlice(indexes);
+		} else {
+			if (parent == null) {
+				selection.reset(n, selectionAlpha, generator);
+			} else {
+				selection.load(parent.getIndexes(), parent.size(), selectionAlpha, generator);
+			}
+			selection.selectByRanks(getMarginal(dimension), weights);
+			return new ConditionalSlice(Arrays.copyOf(selection.getIndexes(), selection.size()));
+		}
+	}
+
+	/**
+	 * Stores the conditional sample of the reference dimension corresponding
+	 * to the given {@link ConditionalSlice} in the {@link ScratchArena}, like
+	 * {@link #getSlicedData(int[], double, Random, ScratchArena)} does after
+	 * the slicing.
+	 * 
+	 * @param slice
+	 *            The slice on all conditioning dimensions
+	 * @param referenceDimension
+	 *            The dimension of the conditional sample
+	 * @param arena
+	 *            The {@link ScratchArena} of the calling thread
+	 * @return The size of the conditional sample.
+	 */
+	public int getSlicedData(ConditionalSlice slice, int referenceDimension, ScratchArena arena) {
+		if (n == 0 || slice.size() == 0) {
+			arena.setSample(null, null, null, 0);
+			return 0;
+		}
+
+		arena.getSelection().load(slice.getIndexes(), slice.size(), 1, null);
+		return getSlicedData(referenceDimension, arena);
+	}
+
+	/**
+	 * Selects a random slice on a single conditioning dimension and holds it
+	 * in the {@link Selection} of the {@link ScratchArena}, so that the
+	 * conditional samples of several reference dimensions can be taken from it
+	 * with {@link #getSlicedData(int, ScratchArena)}.
+	 * 
+	 * @param dimension
+	 *            The conditioning dimension
+	 * @param selectionAlpha
+	 *            The fraction of instances that should be selected
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 * @param arena
+	 *            The {@link ScratchArena} of the calling thread
+	 * @return The size of the slice.
+	 */
+	public int getSlice(int dimension, double selectionAlpha, Random generator, ScratchArena arena) {
+		Selection selection = arena.getSelection();
+		if (n == 0) {
+			selection.reset(0, selectionAlpha, generator);
+			return 0;
+		}
+
+		if (slicingMethod == SummarisationAdapter.SlicingMethod.BITMASK) {
+			long[] blockMask = arena.getBlockMask((n + 63) >>> 6);
+			selection.reset(0, selectionAlpha, generator);
+			selection.maskRandomBlock(getMarginal(dimension), blockMask);
+			selection.load(blockMask, n, selectionAlpha, generator);
+		} else {
+			selection.reset(n, selectionAlpha, generator);
+			selection.selectByRanks(getMarginal(dimension), weights);
+		}
+		return selection.size();
+	}
+
+	/**
+	 * Stores the conditional sample of the reference dimension corresponding
+	 * to the slice held in the {@link Selection} of the {@link ScratchArena}
+	 * in the arena. The order of the selected indexes changes, but not the
+	 * slice itself.
+	 * 
+	 * @param referenceDimension
+	 *            The dimension of the conditional sample
+	 * @param arena
+	 *            The {@link ScratchArena} of the calling thread
+	 * @return The size of the conditional sample.
+	 */
+	public int getSlicedData(int referenceDimension, ScratchArena arena) {
+		Selection selection = arena.getSelection();
+		if (selection.size() == 0) {
+			arena.setSample(null, null, null, 0);
+			return 0;
+		}
+		selection.sortByRanks(getMarginal(referenceDimension));
+		arena.setSample(column(referenceDimension).getData(), weights, selection.getIndexes(),
+				selection.size());
+		return selection.size();
+	}
+
+	/**
+	 * This method is mainly for the visualisation. It contains duplicated code
+	 * from above.
+	 * 
+	 * @param shuffledDimensions
+	 * @param selectionAlpha
+	 * @return
+	 */
+	public Selection getSliceIndexes(int[] shuffledDimensions, double selectionAlpha) {
+		if (n == 0) {
+			return null;
+		}
+
+		if (slicingMethod == SummarisationAdapter.SlicingMethod.BITMASK) {
+			// Do a selection per dimension and do a boolean conjunction on the
+			// selection
+			int words = (n + 63) >>> 6;
+			long[] selected = new long[words];
+			setAll(selected, n);
+
+			long[] dimSelected = new long[words];
+			Selection selection = new Selection(n, selectionAlpha);
+			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
+				Arrays.fill(dimSelected, 0);
+				selection.maskRandomBlock(getMarginal(shuffledDimensions[i]), dimSelected);
+				// boolean conjunction
+				for (int w = 0; w < words; w++) {
+					selected[w] &= dimSelected[w];
+				}
+			}
+
+			selection.load(selected, n, selectionAlpha, new Random());
+			return selection;
+		} else {
+			Selection selectedIndexes = new Selection(n, selectionAlpha);
+			// Fill the list with all the indexes
+			selectedIndexes.fillRange();
+
+			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
+				// Reduce the number of indexes according to a new selection in
+				// the current dimension
+				selectedIndexes.selectByRanks(getMarginal(shuffledDimensions[i]), weights);
+			}
+			return selectedIndexes;
+		}
+	}
+
+	/**
+	 * Sets the bits of the indexes 0 to n - 1 in the given bitmask.
+	 * 
+	 * @param mask
+	 *            The bitmask
+	 * @param n
+	 *            The number of indexes
+	 */
+	private static void setAll(long[] mask, int n) {
+		int fullWords = n >>> 6;
+		for (int w = 0; w < fullWords; w++) {
+			mask[w] = -1L;
+		}
+		if ((n & 63) != 0) {
+			mask[fullWords] = (1L << n) - 1;
+		}
+	}
+
+	/**
+	 * Returns the selected data, indicated by the indexes. The Databundles
+	 * should not be sorted!
+	 * 
+	 * @param dimension
+	 *            The dimension the data should be taken from
+	 * @param selectedIndexes
+	 *            The {@link Selection}
+	 * @return The data from the given dimension with the given indexes in form
+	 *         of a {@link DataBundle}.
+	 */
+	public double[] getSelectedData(int dimension, Selection selectedIndexes) {
+		double[] origData = column(dimension).getData();
+		int l = selectedIndexes.size();
+		double[] selectedData = new double[l];
+		for (int i = 0; i < l; i++) {
+			selectedData[i] = origData[selectedIndexes.getIndex(i)];
+		}
+
+		return selectedData;
+	}
+
+	/**
+	 * Returns the selected weights, indicated by the indexes. The Databundles
+	 * should not be sorted!
+	 * 
+	 * @param selectedIndexes
+	 *            The {@link Selection}
+	 * @return The weights with the given indexes in form
+	 *         of a {@link DataBundle}.
+	 */
+	public double[] getSelectedWeights(Selection selectedIndexes) {
+		double[] origWeights = weights;
+		int l = selectedIndexes.size();
+		double[] weights = new double[l];
+		for (int i = 0; i < l; i++) {
+			weights[i] = origWeights[selectedIndexes.getIndex(i)];
+		}
+
+		return weights;
+	}
+}
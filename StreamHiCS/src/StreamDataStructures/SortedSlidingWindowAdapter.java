@@ -0,0 +1,82 @@
+package streamdatastructures;
+
+import weka.core.Instance;
+
+/**
+ * This class represents a {@link SlidingWindowAdapter} which keeps the
+ * instances of every dimension sorted while they are added and removed (see
+ * {@link BlockedSortedOrder}). The columns of a {@link Snapshot} are handed
+ * out already sorted, so that taking a {@link Snapshot} costs linear time per
+ * dimension instead of sorting every column anew, although only a few
+ * instances changed since the last {@link Snapshot}.
+ * 
+ * @author agent
+ *
+ */
+public class SortedSlidingWindowAdapter extends SlidingWindowAdapter {
+
+	/**
+	 * The sorted order of the positions of the {@link SlidingWindow} for every
+	 * dimension.
+	 */
+	private BlockedSortedOrder[] orders;
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions
+	 * @param windowLength
+	 *            The size of the sliding window
+	 */
+	public SortedSlidingWindowAdapter(int numberOfDimensions, int windowLength) {
+		super(numberOfDimensions, windowLength);
+		orders = new BlockedSortedOrder[numberOfDimensions];
+		for (int i = 0; i < numberOfDimensions; i++) {
+			orders[i] = new BlockedSortedOrder();
+		}
+	}
+
+	@Override
+	public void addImpl(Instance instance) {
+		SlidingWindow slidingWindow = getSlidingWindow();
+		int position = slidingWindow.getStart();
+		if (slidingWindow.isFull()) {
+			// The oldest instance is replaced, it must be removed while its
+			// values are still in the window
+			for (int i = 0; i < orders.length; i++) {
+				orders[i].remove(position, slidingWindow.getColumn(i));
+			}
+		} else {
+			position = (position + slidingWindow.getNumberOfInstances()) % slidingWindow.getWindowLength();
+		}
+		super.addImpl(instance);
+		for (int i = 0; i < orders.length; i++) {
+			orders[i].insert(position, slidingWindow.getColumn(i));
+		}
+	}
+
+	@Override
+	public void clearImpl() {
+		super.clearImpl();
+		for (int i = 0; i < orders.length; i++) {
+			orders[i].clear();
+		}
+	}
+
+	@Override
+	protected DataBundle[] createData(boolean share) {
+		DataBundle[] data = super.createData(share);
+		if (data != null) {
+			// The instances of a snapshot are at their positions in the
+			// window, so the orders can be taken over
+			int n = getNumberOfElements();
+			for (int i = 0; i < data.length; i++) {
+				int[] order = new int[n];
+				orders[i].copyTo(order);
+				data[i].sort(order);
+			}
+		}
+		return data;
+	}
+}
@@ -1,7 +1,7 @@
 package streamdatastructures;
 
-import java.util.BitSet;
-import subspace.Subspace;
+import java.util.Random;
+
 import weka.core.Instance;
 
 /**
@@ -14,14 +14,64 @@ import weka.core.Instance;
 public abstract class SummarisationAdapter {
 
 	/**
-	 * Flag to set which method to use to create the slice.
+	 * The methods to create a slice.
+	 */
+	public enum SlicingMethod {
+		/**
+		 * Narrows the slice dimension by dimension. Every step selects a block
+		 * of the instances left by the previous steps, ordered by the ranks of
+		 * the current dimension.
+		 */
+		RANKS,
+		/**
+		 * Selects a block of all instances in every conditioning dimension
+		 * independently and intersects the blocks as bitmasks, 64 instances
+		 * per word operation.
+		 */
+		BITMASK
+	};
+
+	/**
+	 * The method used to create the slices.
+	 */
+	private SlicingMethod slicingMethod = SlicingMethod.RANKS;
+
+	/**
+	 * The {@link IncrementalSorter} carrying the sorted orders from one
+	 * {@link Snapshot} to the next.
+	 */
+	private final IncrementalSorter sorter = new IncrementalSorter();
+
+	/**
+	 * Whether the columns of a {@link Snapshot} are sorted by repairing the
+	 * order of the previous one, if the elements have stable keys. Off by
+	 * default, since the repair costs more than a full sort if most elements
+	 * change between two snapshots.
+	 */
+	private boolean incrementalSorting = false;
+
+	/**
+	 * The {@link Snapshot} of the current state of the summarisation
+	 * structure, null if it was not taken since the last change.
+	 */
+	private volatile Snapshot snapshot;
+
+	/**
+	 * The lock guarding the changes of the summarisation structure and the
+	 * taking of {@link Snapshot}s.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Counts the changes of the underlying summarisation structure, i.e. it is
+	 * incremented on every {@link #add(Instance)} and {@link #clear()}.
 	 */
-	private boolean fast = false;
+	private volatile long epoch = 0;
 
 	/**
-	 * An array of {@link DataBundle}s, one for each dimension.
+	 * The epoch of the last {@link #clear()}.
 	 */
-	protected DataBundle[] data;
+	private volatile long clearEpoch = 0;
 
 	/**
 	 * Adds an {@link Instance} to the underlying data summarisation structure.
@@ -30,8 +80,75 @@ public abstract class SummarisationAdapter {
 	 *            The instance to be added.
 	 */
 	public void add(Instance instance) {
-		addImpl(instance);
-		data = null;
+		synchronized (lock) {
+			// The snapshot is released first, so that the summarisation
+			// structure may reuse its storage
+			discardSnapshot();
+			addImpl(instance);
+			epoch++;
+		}
+	}
+
+	/**
+	 * Sets the {@link SlicingMethod} used to create the slices.
+	 * 
+	 * @param slicingMethod
+	 *            The {@link SlicingMethod}
+	 */
+	public void setSlicingMethod(SlicingMethod slicingMethod) {
+		if (slicingMethod == null) {
+			throw new IllegalArgumentException("Slicing method must not be null.");
+		}
+		synchronized (lock) {
+			this.slicingMethod = slicingMethod;
+			discardSnapshot();
+		}
+	}
+
+	/**
+	 * Returns the {@link SlicingMethod} used to create the slices.
+	 * 
+	 * @return The {@link SlicingMethod}.
+	 */
+	public SlicingMethod getSlicingMethod() {
+		return slicingMethod;
+	}
+
+	/**
+	 * Sets whether the columns of a {@link Snapshot} are sorted by repairing
+	 * the sorted order of the previous {@link Snapshot} (see
+	 * {@link #createSnapshot(double[][], double[], Object[], long, long, SlicingMethod)}).
+	 * The sorted columns are the same either way.
+	 * 
+	 * @param incrementalSorting
+	 *            True, if the orders should be repaired, false if the
+	 *            columns should always be sorted from scratch
+	 */
+	public void setIncrementalSorting(boolean incrementalSorting) {
+		synchronized (lock) {
+			this.incrementalSorting = incrementalSorting;
+			discardSnapshot();
+		}
+	}
+
+	/**
+	 * Returns whether the columns of a {@link Snapshot} are sorted by
+	 * repairing the sorted order of the previous {@link Snapshot}.
+	 * 
+	 * @return True, if the orders are repaired.
+	 */
+	public boolean isIncrementalSorting() {
+		return incrementalSorting;
+	}
+
+	/**
+	 * Returns the number of columns sorted by repairing the sorted order of a
+	 * previous {@link Snapshot} so far.
+	 * 
+	 * @return The number of repaired columns.
+	 */
+	public long getNumberOfRepairedSorts() {
+		return sorter.getNumberOfRepairs();
 	}
 
 	/**
@@ -46,8 +163,33 @@ public abstract class SummarisationAdapter {
 	 * Clears the underlying stream summarisation structure.
 	 */
 	public void clear() {
-		clearImpl();
-		data = null;
+		synchronized (lock) {
+			discardSnapshot();
+			clearImpl();
+			sorter.clear();
+			epoch++;
+			clearEpoch = epoch;
+		}
+	}
+
+	/**
+	 * Returns the current epoch, i.e. the number of changes of the underlying
+	 * summarisation structure. The data is unchanged as long as the epoch is.
+	 * 
+	 * @return The current epoch.
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Returns the epoch of the last {@link #clear()}. All data of earlier
+	 * epochs was discarded.
+	 * 
+	 * @return The epoch of the last {@link #clear()}.
+	 */
+	public long getClearEpoch() {
+		return clearEpoch;
 	}
 
 	/**
@@ -73,225 +215,250 @@ public abstract class SummarisationAdapter {
 	public abstract int getNumberOfElements();
 
 	/**
-	 * Returns the data contained projected to the given reference dimension.
+	 * Returns the {@link Snapshot} of the current state of the summarisation
+	 * structure. It is taken only once per state, i.e. the same
+	 * {@link Snapshot} is returned until the next call of
+	 * {@link #add(Instance)} or {@link #clear()}. A {@link Snapshot} never
+	 * changes, so that it can be evaluated on one thread while instances are
+	 * added on another one.
 	 * 
-	 * @param referenceDimension
-	 *            The dimension the data is projected to
-	 * @return The data projected to teh reference dimension.
+	 * The returned {@link Snapshot} is only guaranteed to stay readable until
+	 * the next change, since summarisation structures may reuse storage they
+	 * share with the {@link Snapshot} afterwards (see
+	 * {@link SlidingWindowAdapter}). Evaluations running concurrently to
+	 * changes use {@link #acquireSnapshot()} instead.
+	 * 
+	 * @return The {@link Snapshot} of the current state.
 	 */
-	public DataBundle getProjectedData(int referenceDimension) {
-		if (data == null) {
-			getAndSortData();
+	public Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current;
+		}
+		synchronized (lock) {
+			if (snapshot == null) {
+				snapshot = createSnapshot(epoch, clearEpoch, slicingMethod);
+			}
+			return snapshot;
 		}
+	}
 
-		int n = getNumberOfElements();
-		if (n == 0) {
-			return new DataBundle(new double[0], new double[0]);
+	/**
+	 * Returns the {@link Snapshot} of the current state like
+	 * {@link #getSnapshot()} and adds a reference to it, so that it stays
+	 * readable until {@link Snapshot#release()} is called.
+	 * 
+	 * @return The {@link Snapshot} of the current state.
+	 */
+	public Snapshot acquireSnapshot() {
+		synchronized (lock) {
+			Snapshot current = getSnapshot();
+			current.retain();
+			return current;
 		}
+	}
 
-		// Copying the dimension data
-		double[] dimData = data[referenceDimension].getData();
-		double[] dimWeights = data[referenceDimension].getWeights();
-		double[] dataCopy = new double[n];
-		double[] weightsCopy = new double[n];
+	/**
+	 * Gives up the reference of this adapter to the current {@link Snapshot}
+	 * after a change. Must be called while holding the lock.
+	 */
+	private void discardSnapshot() {
+		if (snapshot != null) {
+			snapshot.release();
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * Creates a {@link Snapshot} of the current state. By default all the
+	 * columns are materialised from {@link #getData()}; summarisation
+	 * structures holding their data as instances may override this method to
+	 * let the {@link Snapshot} materialise only the columns that are used
+	 * (see {@link #createSnapshot(double[][], double[], long, long, SlicingMethod)}).
+	 * 
+	 * @param epoch
+	 *            The epoch of the current state
+	 * @param clearEpoch
+	 *            The epoch of the last clear
+	 * @param slicingMethod
+	 *            The method used to create the slices
+	 * @return The {@link Snapshot} of the current state.
+	 */
+	protected Snapshot createSnapshot(long epoch, long clearEpoch, SlicingMethod slicingMethod) {
+		DataBundle[] data = getNumberOfElements() > 0 ? getData() : null;
+		return new Snapshot(data, epoch, clearEpoch, slicingMethod);
+	}
+
+	/**
+	 * Creates a {@link Snapshot} of the given instances, whose columns are
+	 * materialised only when they are used. The instances are copied, so they
+	 * may be internal arrays of the summarisation structure.
+	 * 
+	 * @param points
+	 *            The instances, each one an array of its values
+	 * @param weights
+	 *            The weights of the instances, taken over by the
+	 *            {@link Snapshot}
+	 * @param epoch
+	 *            The epoch of the current state
+	 * @param clearEpoch
+	 *            The epoch of the last clear
+	 * @param slicingMethod
+	 *            The method used to create the slices
+	 * @return The {@link Snapshot} of the instances.
+	 */
+	protected Snapshot createSnapshot(double[][] points, double[] weights, long epoch, long clearEpoch,
+			SlicingMethod slicingMethod) {
+		int n = points.length;
+		double[][] copies = new double[n][];
 		for (int i = 0; i < n; i++) {
-			dataCopy[i] = dimData[i];
-			weightsCopy[i] = dimWeights[i];
+			copies[i] = points[i].clone();
 		}
+		return new Snapshot(copies, weights, epoch, clearEpoch, slicingMethod);
+	}
 
-		return new DataBundle(dataCopy, weightsCopy);
+	/**
+	 * Creates a {@link Snapshot} of the given instances like
+	 * {@link #createSnapshot(double[][], double[], long, long, SlicingMethod)},
+	 * for summarisation structures whose elements keep their identity over
+	 * time, e.g. micro-clusters. If enabled by
+	 * {@link #setIncrementalSorting(boolean)}, the columns are sorted by
+	 * repairing the sorted order of the previous {@link Snapshot}, so that
+	 * only the elements which changed since are sorted anew.
+	 * 
+	 * @param points
+	 *            The instances, each one an array of its values
+	 * @param weights
+	 *            The weights of the instances, taken over by the
+	 *            {@link Snapshot}
+	 * @param keys
+	 *            The elements the instances belong to, compared by identity
+	 * @param epoch
+	 *            The epoch of the current state
+	 * @param clearEpoch
+	 *            The epoch of the last clear
+	 * @param slicingMethod
+	 *            The method used to create the slices
+	 * @return The {@link Snapshot} of the instances.
+	 */
+	protected Snapshot createSnapshot(double[][] points, double[] weights, Object[] keys, long epoch,
+			long clearEpoch, SlicingMethod slicingMethod) {
+		Snapshot snapshot = createSnapshot(points, weights, epoch, clearEpoch, slicingMethod);
+		if (incrementalSorting && snapshot.getNumberOfElements() > 0) {
+			snapshot.setKeys(keys, sorter);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Takes the {@link Snapshot} of the current state, if this was not done
+	 * since the last change (see {@link #getSnapshot()}).
+	 */
+	public void prepareData() {
+		getSnapshot();
+	}
+
+	/**
+	 * Returns the data contained projected to the given reference dimension,
+	 * see {@link Snapshot#getProjectedData(int)}.
+	 * 
+	 * @param referenceDimension
+	 *            The dimension the data is projected to
+	 * @return The data projected to the reference dimension.
+	 */
+	public DataBundle getProjectedData(int referenceDimension) {
+		return getSnapshot().getProjectedData(referenceDimension);
+	}
+
+	/**
+	 * Returns the sorted marginal sample of the given dimension, see
+	 * {@link Snapshot#getMarginal(int)}.
+	 * 
+	 * @param dimension
+	 *            The dimension
+	 * @return The sorted marginal sample of the dimension.
+	 */
+	public DataBundle getMarginal(int dimension) {
+		return getSnapshot().getMarginal(dimension);
 	}
 
 	/**
 	 * Returns the one dimensional data of a random conditional sample
-	 * corresponding to the last dimension in the int[] and the {@link Subspace}
-	 * which contains this dimension. On every dimension in the {@link Subspace}
-	 * except the specified one random range selections on instances (of the
-	 * specified selection size) are done, representing a conditional sample for
-	 * the given dimension.
+	 * corresponding to the last dimension in the int[], see
+	 * {@link Snapshot#getSlicedData(int[], double)}.
 	 * 
 	 * @param shuffledDimensions
 	 *            The dimensions. The last one is the one for which a random
 	 *            conditional sample should be drawn.
 	 * @param selectionAlpha
 	 *            The fraction of instances that should be selected per
-	 *            dimension (i.e. the number of selected instances becomes
-	 *            smaller per selection step).
+	 *            dimension.
 	 * @return A {@link DataBundle} containing the random conditional sample
 	 *         corresponding to the given dimension.
 	 */
 	public DataBundle getSlicedData(int[] shuffledDimensions, double selectionAlpha) {
-		if (data == null) {
-			getAndSortData();
-		}
-
-		int n = getNumberOfElements();
-		if (n == 0) {
-			return new DataBundle(new double[0], new double[0]);
-		}
-
-		double[] dimData;
-		double[] weights;
-
-		if (fast) {
-			// Do a selection per dimension and do a boolean conjunction on the
-			// selection
-			BitSet selected = new BitSet(n);
-			selected.set(0, n);
-
-			BitSet dimSelected;
-			Selection selection = new Selection(n, selectionAlpha);
-			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
-				dimSelected = selection.selectRandomBlock(data[shuffledDimensions[i]]);
-				// boolean conjunction
-				selected.and(dimSelected);
-			}
-
-			int l = selected.cardinality();
-			dimData = new double[l];
-			weights = new double[l];
-			int j = 0;
-			double[] lastData = data[shuffledDimensions[shuffledDimensions.length - 1]].getData();
-			double[] lastWeights = data[shuffledDimensions[shuffledDimensions.length - 1]].getWeights();
-			for (int i = 0; i < n; i++) {
-				if (selected.get(i)) {
-					dimData[j] = lastData[i];
-					weights[j] = lastWeights[i];
-					j++;
-				}
-			}
-		} else {
-			Selection selectedIndexes = new Selection(n, selectionAlpha);
-			// Fill the list with all the indexes
-			selectedIndexes.fillRange();
-
-			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
-				// Get all the data for the specific dimension that is selected
-				dimData = getSelectedData(shuffledDimensions[i], selectedIndexes);
-				weights = getSelectedWeights(selectedIndexes);
-				// Reduce the number of indexes according to a new selection in
-				// the current dimension
-				selectedIndexes.selectWithWeights(dimData, weights);
-			}
-
-			// Get the selected data from the last dimension and apply weights
-			dimData = getSelectedData(shuffledDimensions[shuffledDimensions.length - 1], selectedIndexes);
-			weights = getSelectedWeights(selectedIndexes);
+		return getSnapshot().getSlicedData(shuffledDimensions, selectionAlpha);
+	}
 
-		}
-		return new DataBundle(dimData, weights);
+	/**
+	 * Returns the one dimensional data of a random conditional sample
+	 * corresponding to the last dimension in the int[], drawing the random
+	 * slices from the given generator, see
+	 * {@link Snapshot#getSlicedData(int[], double, Random)}.
+	 * 
+	 * @param shuffledDimensions
+	 *            The dimensions. The last one is the one for which a random
+	 *            conditional sample should be drawn.
+	 * @param selectionAlpha
+	 *            The fraction of instances that should be selected per
+	 *            dimension.
+	 * @param generator
+	 *            The random number generator. It should not be shared between
+	 *            threads.
+	 * @return A {@link DataBundle} containing the random conditional sample
+	 *         corresponding to the given dimension.
+	 */
+	public DataBundle getSlicedData(int[] shuffledDimensions, double selectionAlpha, Random generator) {
+		return getSnapshot().getSlicedData(shuffledDimensions, selectionAlpha, generator);
 	}
 
 	/**
-	 * This method is mainly for the visualisation. It contains duplicated code
-	 * from above.
+	 * This method is mainly for the visualisation, see
+	 * {@link Snapshot#getSliceIndexes(int[], double)}.
 	 * 
 	 * @param shuffledDimensions
 	 * @param selectionAlpha
 	 * @return
 	 */
 	public Selection getSliceIndexes(int[] shuffledDimensions, double selectionAlpha) {
-		if (data == null) {
-			getAndSortData();
-		}
-
-		int n = getNumberOfElements();
-		if (n == 0) {
-			return null;
-		}
-
-		if (fast) {
-			// Do a selection per dimension and do a boolean conjunction on the
-			// selection
-			BitSet selected = new BitSet(n);
-			selected.set(0, n);
-
-			BitSet dimSelected;
-			Selection selection = new Selection(n, selectionAlpha);
-			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
-				dimSelected = selection.selectRandomBlock(data[i]);
-				// boolean conjunction
-				selected.and(dimSelected);
-			}
-
-			int l = selected.cardinality();
-			Selection selectedIndexes = new Selection(l, selectionAlpha);
-			int j = 0;
-			for (int i = 0; i < n; i++) {
-				if (selected.get(i)) {
-					selectedIndexes.getIndexes()[j] = i;
-					j++;
-				}
-			}
-			return selectedIndexes;
-		} else {
-			Selection selectedIndexes = new Selection(n, selectionAlpha);
-			// Fill the list with all the indexes
-			selectedIndexes.fillRange();
-
-			double[] dimData;
-			double[] weights;
-
-			for (int i = 0; i < shuffledDimensions.length - 1; i++) {
-				// Get all the data for the specific dimension that is selected
-				dimData = getSelectedData(shuffledDimensions[i], selectedIndexes);
-				weights = getSelectedWeights(selectedIndexes);
-				// Reduce the number of indexes according to a new selection in
-				// the current dimension
-				selectedIndexes.selectWithWeights(dimData, weights);
-			}
-			return selectedIndexes;
-		}
-	}
-
-	private void getAndSortData() {
-		data = getData();
-		if (fast) {
-			for (int i = 0; i < data.length; i++) {
-				data[i].sort();
-			}
-		}
+		return getSnapshot().getSliceIndexes(shuffledDimensions, selectionAlpha);
 	}
 
 	/**
-	 * Returns the selected data, indicated by the indexes. The Databundles
-	 * should not be sorted!
+	 * Returns the selected data, indicated by the indexes, see
+	 * {@link Snapshot#getSelectedData(int, Selection)}.
 	 * 
 	 * @param dimension
 	 *            The dimension the data should be taken from
 	 * @param selectedIndexes
 	 *            The {@link Selection}
-	 * @return The data from the given dimension with the given indexes in form
-	 *         of a {@link DataBundle}.
+	 * @return The data from the given dimension with the given indexes.
 	 */
 	public double[] getSelectedData(int dimension, Selection selectedIndexes) {
-		double[] origData = data[dimension].getData();
-		int l = selectedIndexes.size();
-		double[] selectedData = new double[l];
-		for (int i = 0; i < l; i++) {
-			selectedData[i] = origData[selectedIndexes.getIndex(i)];
-		}
-
-		return selectedData;
+		return getSnapshot().getSelectedData(dimension, selectedIndexes);
 	}
 
 	/**
-	 * Returns the selected weights, indicated by the indexes. The Databundles
-	 * should not be sorted!
+	 * Returns the selected weights, indicated by the indexes, see
+	 * {@link Snapshot#getSelectedWeights(Selection)}.
 	 * 
 	 * @param selectedIndexes
 	 *            The {@link Selection}
-	 * @return The weights with the given indexes in form
-	 *         of a {@link DataBundle}.
+	 * @return The weights with the given indexes.
 	 */
 	public double[] getSelectedWeights(Selection selectedIndexes) {
-		double[] origWeights = data[0].getWeights();
-		int l = selectedIndexes.size();
-		double[] weights = new double[l];
-		for (int i = 0; i < l; i++) {
-			weights[i] = origWeights[selectedIndexes.getIndex(i)];
-		}
-
-		return weights;
+		return getSnapshot().getSelectedWeights(selectedIndexes);
 	}
 }
+
+
@@ -1,12 +1,24 @@
 package fullsystem;
 
-import org.apache.commons.math3.util.MathArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
 
 import statisticaltests.KolmogorovSmirnov;
 import statisticaltests.StatisticalTest;
+import streamdatastructures.ConditionalSlice;
 import streamdatastructures.DataBundle;
+import streamdatastructures.ScratchArena;
+import streamdatastructures.Snapshot;
 import streamdatastructures.SummarisationAdapter;
 import subspace.Subspace;
+import subspace.SubspaceSet;
 import weka.core.Instance;
 
 /**
@@ -17,6 +29,20 @@ import weka.core.Instance;
  */
 public class Contrast {
 
+	/**
+	 * The strategies for choosing the slices of the Monte Carlo iterations.
+	 * RANDOM draws the starting points of the slices and the order of the
+	 * dimensions independently in every iteration. STRATIFIED divides the
+	 * range of starting points of every conditioning dimension into m strata
+	 * and visits every stratum once per evaluation (Latin hypercube). HALTON
+	 * takes the starting points from a randomly shifted Halton sequence. Both
+	 * STRATIFIED and HALTON make every dimension of the {@link Subspace} the
+	 * reference dimension equally often.
+	 */
+	public enum SamplingStrategy {
+		RANDOM, STRATIFIED, HALTON
+	};
+
 	/**
 	 * Number of Monte Carlo iterations in the contrast evaluation. m must be
 	 * positive.
@@ -41,6 +67,121 @@ public class Contrast {
 	 */
 	private SummarisationAdapter summarisationAdapter;
 
+	/**
+	 * The number of threads the Monte Carlo iterations are distributed over. If
+	 * it is 1, the iterations are carried out on the calling thread.
+	 */
+	private int parallelism = 1;
+
+	/**
+	 * The {@link ForkJoinPool} executing the Monte Carlo iterations, if
+	 * parallelism is greater than 1.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * The generator for the seeds of the single evaluations. Every Monte Carlo
+	 * iteration derives its own random number generator from the seed of the
+	 * evaluation and its iteration number, so that the result does not depend
+	 * on how the iterations are distributed over the threads.
+	 */
+	private Random seedGenerator;
+
+	/**
+	 * Flag determining whether the Monte Carlo iterations may stop early, once
+	 * the contrast is clearly above or below the decision threshold of an
+	 * evaluation.
+	 */
+	private boolean adaptive = false;
+
+	/**
+	 * The quantile of the standard normal distribution the confidence interval
+	 * of every single check of the early stopping uses. It is corrected for
+	 * the number of checks, so that the whole sequence of checks keeps the
+	 * confidence of the early stopping decision.
+	 */
+	private double z;
+
+	/**
+	 * The minimum number of Monte Carlo iterations before stopping early. The
+	 * stopping criterion is checked after each block of that many iterations.
+	 */
+	private int minIterations;
+
+	/**
+	 * The number of Monte Carlo iterations carried out by all evaluations.
+	 */
+	private AtomicLong totalNumberOfIterations = new AtomicLong();
+
+	/**
+	 * The {@link ContrastCache} in front of the evaluation, null if no cache is
+	 * used.
+	 */
+	private ContrastCache cache;
+
+	/**
+	 * The {@link ScratchArena}s of the threads carrying out Monte Carlo
+	 * iterations. The buffers grow to the size of the summarisation and are
+	 * reused afterwards, so that the iterations do not allocate memory.
+	 */
+	private final ThreadLocal<ScratchArena> arenas = new ThreadLocal<ScratchArena>() {
+		@Override
+		protected ScratchArena initialValue() {
+			return new ScratchArena();
+		}
+	};
+
+	/**
+	 * The {@link SliceCache} sharing the slices of conditioning prefixes
+	 * between evaluations, null if slices are not reused.
+	 */
+	private SliceCache sliceCache;
+
+	/**
+	 * The {@link SamplingStrategy} of the Monte Carlo iterations.
+	 */
+	private SamplingStrategy samplingStrategy = SamplingStrategy.RANDOM;
+
+	/**
+	 * Flag determining whether two dimensional {@link Subspace}s are evaluated
+	 * by a deterministic {@link TwoDimensionalSweep} instead of Monte Carlo
+	 * iterations.
+	 */
+	private boolean sweep = false;
+
+	/**
+	 * Flag determining whether the two dimensional {@link Subspace}s of a
+	 * batch are evaluated with slices shared between all pairs with the same
+	 * conditioning dimension instead of one by one.
+	 */
+	private boolean sharedSlices = false;
+
+	/**
+	 * The {@link TwoDimensionalSweep}s of the threads starting evaluations.
+	 */
+	private final ThreadLocal<TwoDimensionalSweep> sweeps = new ThreadLocal<TwoDimensionalSweep>() {
+		@Override
+		protected TwoDimensionalSweep initialValue() {
+			return new TwoDimensionalSweep(alpha);
+		}
+	};
+
+	/**
+	 * The {@link Snapshot}s pinned by the threads starting evaluations (see
+	 * {@link #pinSnapshot()}).
+	 */
+	private final ThreadLocal<Snapshot> pinnedSnapshots = new ThreadLocal<Snapshot>();
+
+	/**
+	 * The {@link SamplingPlan}s of the threads starting evaluations.
+	 */
+	private final ThreadLocal<SamplingPlan> plans = new ThreadLocal<SamplingPlan>() {
+		@Override
+		protected SamplingPlan initialValue() {
+			return new SamplingPlan();
+		}
+	};
+
 	/**
 	 * Creates an instance of this class.
 	 * 
@@ -59,6 +200,280 @@ public class Contrast {
 		this.alpha = alpha;
 		this.statisticalTest = new KolmogorovSmirnov();
 		this.summarisationAdapter = summarisationAdapter;
+		this.seedGenerator = new Random();
+	}
+
+	/**
+	 * Sets the number of threads used to carry out the Monte Carlo iterations
+	 * of a contrast evaluation. A parallelism of 1 carries out all iterations
+	 * on the calling thread.
+	 * 
+	 * @param parallelism
+	 *            The number of threads. Must be positive.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive.");
+		}
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism;
+		if (parallelism > 1) {
+			pool = new ForkJoinPool(parallelism);
+		}
+	}
+
+	/**
+	 * Returns the number of threads used to carry out the Monte Carlo
+	 * iterations.
+	 * 
+	 * @return The number of threads.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Seeds the random number generation of the contrast evaluation. After
+	 * seeding, the same sequence of evaluations on the same data yields the
+	 * same contrast values, independent of the parallelism.
+	 * 
+	 * @param seed
+	 *            The seed
+	 */
+	public void setSeed(long seed) {
+		synchronized (seedGenerator) {
+			seedGenerator.setSeed(seed);
+		}
+	}
+
+	/**
+	 * Enables the early stopping of the Monte Carlo iterations. An evaluation
+	 * with a decision threshold keeps track of the mean and variance of the
+	 * deviations and stops as soon as the confidence interval of the mean lies
+	 * completely above or below the threshold. At most m iterations are
+	 * carried out. Since the interval is checked repeatedly, each check uses
+	 * the Bonferroni corrected confidence 1 - (1 - confidence) / c, where c is
+	 * the number of checks before the m-th iteration. The probability that
+	 * any check stops on the wrong side of the threshold is thus at most
+	 * 1 - confidence (up to the normal approximation of the mean).
+	 * 
+	 * @param confidence
+	 *            The (two-sided) confidence of the whole sequence of checks,
+	 *            e.g. 0.95
+	 * @param minIterations
+	 *            The minimum number of iterations before stopping. The
+	 *            criterion is checked after each block of that many
+	 *            iterations. Must be at least 2.
+	 */
+	public void enableAdaptiveStopping(double confidence, int minIterations) {
+		if (confidence <= 0 || confidence >= 1) {
+			throw new IllegalArgumentException("Confidence must be in (0, 1).");
+		}
+		if (minIterations < 2) {
+			throw new IllegalArgumentException("At least two iterations are needed.");
+		}
+		// The number of checks which may stop the iterations early
+		int checks = Math.max(1, (m - 1) / minIterations);
+		this.z = new NormalDistribution().inverseCumulativeProbability(1 - (1 - confidence) / (2 * checks));
+		this.minIterations = minIterations;
+		this.adaptive = true;
+	}
+
+	/**
+	 * Disables the early stopping, every evaluation carries out m iterations.
+	 */
+	public void disableAdaptiveStopping() {
+		this.adaptive = false;
+	}
+
+	/**
+	 * Returns whether the Monte Carlo iterations may stop early. Contrasts
+	 * evaluated with a decision threshold are then only reliable with respect
+	 * to that decision and must be evaluated again before they are ranked or
+	 * compared to other contrasts.
+	 * 
+	 * @return True, if adaptive stopping is enabled.
+	 */
+	public boolean isAdaptiveStopping() {
+		return adaptive;
+	}
+
+	/**
+	 * Sets the {@link SamplingStrategy} of the Monte Carlo iterations. The
+	 * variance reducing strategies reach the accuracy of RANDOM with fewer
+	 * iterations, which is most effective if all m iterations are carried out.
+	 * The variance reducing strategies cannot be combined with a
+	 * {@link SliceCache}, see {@link #setSliceCache(SliceCache)}.
+	 * 
+	 * @param samplingStrategy
+	 *            The {@link SamplingStrategy}
+	 */
+	public void setSamplingStrategy(SamplingStrategy samplingStrategy) {
+		if (samplingStrategy == null) {
+			throw new IllegalArgumentException("Sampling strategy must not be null.");
+		}
+		if (samplingStrategy != SamplingStrategy.RANDOM && sliceCache != null) {
+			throw new IllegalArgumentException("Sampling strategy " + samplingStrategy
+					+ " cannot be combined with a slice cache.");
+		}
+		if (samplingStrategy != this.samplingStrategy) {
+			this.samplingStrategy = samplingStrategy;
+			clearCache();
+		}
+	}
+
+	/**
+	 * Returns the {@link SamplingStrategy} of the Monte Carlo iterations.
+	 * 
+	 * @return The {@link SamplingStrategy}.
+	 */
+	public SamplingStrategy getSamplingStrategy() {
+		return samplingStrategy;
+	}
+
+	/**
+	 * Enables or disables the deterministic evaluation of two dimensional
+	 * {@link Subspace}s. With the sweep, every instance starts one slice and
+	 * the result is the exact mean over all these slices, i.e. the contrast has
+	 * no Monte Carlo variance and does not depend on m or the seed. Subspaces
+	 * of more dimensions are still evaluated by Monte Carlo iterations.
+	 * 
+	 * @param sweep
+	 *            Whether two dimensional {@link Subspace}s are evaluated by a
+	 *            {@link TwoDimensionalSweep}
+	 */
+	public void setTwoDimensionalSweep(boolean sweep) {
+		if (sweep != this.sweep) {
+			this.sweep = sweep;
+			clearCache();
+		}
+	}
+
+	/**
+	 * Returns whether two dimensional {@link Subspace}s are evaluated by a
+	 * {@link TwoDimensionalSweep}.
+	 * 
+	 * @return True, if the sweep is enabled.
+	 */
+	public boolean isTwoDimensionalSweep() {
+		return sweep;
+	}
+
+	/**
+	 * Enables or disables the evaluation of batches of two dimensional
+	 * {@link Subspace}s with shared slices (see
+	 * {@link #evaluateTwoDimensionalContrasts(List, double)}). Every
+	 * conditioning dimension is then sliced once per iteration for all pairs
+	 * it belongs to, which changes the random slices and thereby the
+	 * estimated contrasts compared to evaluating the pairs one by one.
+	 * 
+	 * @param sharedSlices
+	 *            Whether batches of two dimensional {@link Subspace}s are
+	 *            evaluated with shared slices
+	 */
+	public void setSharedTwoDimensionalSlices(boolean sharedSlices) {
+		if (sharedSlices != this.sharedSlices) {
+			this.sharedSlices = sharedSlices;
+			clearCache();
+		}
+	}
+
+	/**
+	 * Returns whether batches of two dimensional {@link Subspace}s are
+	 * evaluated with shared slices.
+	 * 
+	 * @return True, if the shared slices are enabled.
+	 */
+	public boolean isSharedTwoDimensionalSlices() {
+		return sharedSlices;
+	}
+
+	/**
+	 * Returns the number of Monte Carlo iterations carried out by all
+	 * evaluations since the creation of this object or the last reset.
+	 * 
+	 * @return The total number of iterations.
+	 */
+	public long getTotalNumberOfIterations() {
+		return totalNumberOfIterations.get();
+	}
+
+	/**
+	 * Resets the total number of iterations to 0.
+	 */
+	public void resetTotalNumberOfIterations() {
+		totalNumberOfIterations.set(0);
+	}
+
+	/**
+	 * Sets the {@link ContrastCache}. Evaluations of a {@link Subspace} with a
+	 * valid entry return the cached contrast. Null disables caching. The
+	 * cache is cleared whenever a setting changes the contrasts, i.e. the
+	 * {@link SamplingStrategy} or the {@link TwoDimensionalSweep}, so it must
+	 * not be shared with other instances of this class.
+	 * 
+	 * @param cache
+	 *            The {@link ContrastCache}
+	 */
+	public void setCache(ContrastCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Removes all entries of the {@link ContrastCache}, if there is one.
+	 */
+	private void clearCache() {
+		ContrastCache current = cache;
+		if (current != null) {
+			current.clear();
+		}
+	}
+
+	/**
+	 * Returns the {@link ContrastCache}.
+	 * 
+	 * @return The {@link ContrastCache}, null if no cache is used.
+	 */
+	public ContrastCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the {@link SliceCache}. With a {@link SliceCache}, the conditioning
+	 * dimensions of an iteration are sliced in ascending order and the slice
+	 * of every prefix is derived from the iteration number and a seed per
+	 * state of the {@link SummarisationAdapter} only. {@link Subspace}s of the
+	 * same size conditioning on a common prefix in an iteration therefore
+	 * share its slice, which is cached and only narrowed by their remaining
+	 * dimensions. The reference dimension is still chosen per evaluation.
+	 * Repeated evaluations of a {@link Subspace} on the same state are not
+	 * independent then. Null disables the reuse.
+	 * 
+	 * The shared slices start at random positions, so a {@link SliceCache}
+	 * requires the {@link SamplingStrategy} RANDOM: the positions of a
+	 * sampling plan belong to a single evaluation and cannot be shared.
+	 * 
+	 * @param sliceCache
+	 *            The {@link SliceCache}
+	 */
+	public void setSliceCache(SliceCache sliceCache) {
+		if (sliceCache != null && samplingStrategy != SamplingStrategy.RANDOM) {
+			throw new IllegalArgumentException("Sampling strategy " + samplingStrategy
+					+ " cannot be combined with a slice cache.");
+		}
+		this.sliceCache = sliceCache;
+	}
+
+	/**
+	 * Returns the {@link SliceCache}.
+	 * 
+	 * @return The {@link SliceCache}, null if slices are not reused.
+	 */
+	public SliceCache getSliceCache() {
+		return sliceCache;
 	}
 
 	/**
@@ -76,6 +491,61 @@ public class Contrast {
 	 */
 	public void clear() {
 		summarisationAdapter.clear();
+		if (cache != null) {
+			cache.clear();
+		}
+		if (sliceCache != null) {
+			sliceCache.clear();
+		}
+	}
+
+	/**
+	 * Pins the {@link Snapshot} of the current state of the
+	 * {@link SummarisationAdapter} for the calling thread. All evaluations
+	 * started by this thread run on the pinned {@link Snapshot} until
+	 * {@link #releaseSnapshot()} is called, even if instances are added
+	 * meanwhile, e.g. so that a {@link subspacebuilder.SubspaceBuilder} sees a single state of
+	 * the stream. Without a pinned {@link Snapshot}, every evaluation takes
+	 * the latest one.
+	 * 
+	 * @return The pinned {@link Snapshot}.
+	 */
+	public Snapshot pinSnapshot() {
+		Snapshot snapshot = summarisationAdapter.acquireSnapshot();
+		Snapshot previous = pinnedSnapshots.get();
+		pinnedSnapshots.set(snapshot);
+		if (previous != null) {
+			previous.release();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Releases the {@link Snapshot} pinned by the calling thread, the
+	 * following evaluations take the latest one again.
+	 */
+	public void releaseSnapshot() {
+		Snapshot snapshot = pinnedSnapshots.get();
+		if (snapshot != null) {
+			pinnedSnapshots.remove();
+			snapshot.release();
+		}
+	}
+
+	/**
+	 * Returns the {@link Snapshot} the evaluations of the calling thread run
+	 * on, i.e. the pinned one or the latest one, and adds a reference to it,
+	 * which the caller releases after the evaluation.
+	 * 
+	 * @return The {@link Snapshot}.
+	 */
+	private Snapshot acquireCurrentSnapshot() {
+		Snapshot snapshot = pinnedSnapshots.get();
+		if (snapshot == null) {
+			return summarisationAdapter.acquireSnapshot();
+		}
+		snapshot.retain();
+		return snapshot;
 	}
 
 	/**
@@ -98,37 +568,512 @@ public class Contrast {
 	 * @return The contrast of the given @link{Subspace}.
 	 */
 	public double evaluateSubspaceContrast(Subspace subspace) {
-		if(subspace == null || subspace.size() < 2){
+		return evaluateSubspaceContrast(subspace, Double.NaN);
+	}
+
+	/**
+	 * Calculates the contrast of the given @link{Subspace}, see
+	 * {@link #evaluateSubspaceContrast(Subspace)}. If adaptive stopping is
+	 * enabled, the iterations stop as soon as the contrast is clearly above or
+	 * below the decision threshold, so that the returned value is only
+	 * reliable with respect to that decision. The number of iterations is
+	 * stored in the {@link Subspace} (see
+	 * {@link Subspace#getNumberOfIterations()}).
+	 * 
+	 * @param subspace
+	 *            The @link{Subspace} the contrast is calculated of.
+	 * @param decisionThreshold
+	 *            The threshold the contrast is compared to afterwards. NaN
+	 *            disables the early stopping for this evaluation.
+	 * @return The contrast of the given @link{Subspace}.
+	 */
+	public double evaluateSubspaceContrast(Subspace subspace, double decisionThreshold) {
+		checkSubspace(subspace);
+		Snapshot snapshot = acquireCurrentSnapshot();
+		try {
+			return evaluateSubspaceContrast(snapshot, subspace, decisionThreshold);
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	/**
+	 * Calculates the contrast of the given {@link Subspace} on the given
+	 * {@link Snapshot}, see {@link #evaluateSubspaceContrast(Subspace, double)}.
+	 * 
+	 * @param snapshot
+	 *            The {@link Snapshot} the evaluation runs on
+	 * @param subspace
+	 *            The {@link Subspace}
+	 * @param decisionThreshold
+	 *            The threshold the contrast is compared to afterwards
+	 * @return The contrast of the {@link Subspace}.
+	 */
+	private double evaluateSubspaceContrast(Snapshot snapshot, Subspace subspace, double decisionThreshold) {
+		int[] dimensions = subspace.getDimensions();
+		long epoch = snapshot.getEpoch();
+		double contrast;
+		subspace.setNumberOfIterations(0);
+		if (cache != null) {
+			contrast = cache.get(dimensions, decisionThreshold, snapshot);
+			if (!Double.isNaN(contrast)) {
+				return contrast;
+			}
+		}
+		long seed = nextSeed();
+		renewSliceCache(epoch);
+		int[] iterations = new int[1];
+		contrast = evaluate(snapshot, dimensions, seed, pool != null, decisionThreshold, iterations, 0);
+		subspace.setNumberOfIterations(iterations[0]);
+		if (cache != null) {
+			cache.put(dimensions, decisionThreshold, snapshot, contrast);
+		}
+		return contrast;
+	}
+
+	/**
+	 * Calculates the contrast of all given {@link Subspace}s and stores it in
+	 * each of them (see {@link Subspace#setContrast(double)}). All
+	 * {@link Subspace}s are evaluated on the same state of the
+	 * {@link SummarisationAdapter}. If the parallelism is greater than 1, the
+	 * {@link Subspace}s are evaluated concurrently.
+	 * 
+	 * @param subspaces
+	 *            The {@link Subspace}s the contrast is calculated of
+	 */
+	public void evaluateSubspaceContrasts(List<Subspace> subspaces) {
+		evaluateSubspaceContrasts(subspaces, Double.NaN);
+	}
+
+	/**
+	 * Calculates the contrast of all given {@link Subspace}s and stores it in
+	 * each of them, see {@link #evaluateSubspaceContrasts(List)}. If adaptive
+	 * stopping is enabled, the evaluation of each {@link Subspace} stops as
+	 * soon as its contrast is clearly above or below the decision threshold.
+	 * 
+	 * @param subspaces
+	 *            The {@link Subspace}s the contrast is calculated of
+	 * @param decisionThreshold
+	 *            The threshold the contrasts are compared to afterwards. NaN
+	 *            disables the early stopping.
+	 */
+	public void evaluateSubspaceContrasts(List<Subspace> subspaces, double decisionThreshold) {
+		if (subspaces.isEmpty()) {
+			return;
+		}
+		// All the subspaces are evaluated on the same snapshot
+		Snapshot snapshot = acquireCurrentSnapshot();
+		try {
+			evaluateSubspaceContrasts(snapshot, subspaces, decisionThreshold);
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	/**
+	 * Calculates the contrast of all given {@link Subspace}s on the given
+	 * {@link Snapshot}, see {@link #evaluateSubspaceContrasts(List, double)}.
+	 * 
+	 * @param snapshot
+	 *            The {@link Snapshot} the evaluation runs on
+	 * @param subspaces
+	 *            The {@link Subspace}s the contrast is calculated of
+	 * @param decisionThreshold
+	 *            The threshold the contrasts are compared to afterwards
+	 */
+	private void evaluateSubspaceContrasts(Snapshot snapshot, List<Subspace> subspaces, double decisionThreshold) {
+		int l = subspaces.size();
+		long epoch = snapshot.getEpoch();
+		// The subspaces without a cached contrast
+		int[] uncached = new int[l];
+		int numberUncached = 0;
+		int[][] dimensions = new int[l][];
+		long[] seeds = new long[l];
+		double[] contrasts = new double[l];
+		int[] numbersOfIterations = new int[l];
+		// The seeds are drawn in the order of the list, so that a seeded
+		// evaluation is reproducible
+		for (int i = 0; i < l; i++) {
+			Subspace subspace = subspaces.get(i);
+			checkSubspace(subspace);
+			int[] subspaceDimensions = subspace.getDimensions();
+			contrasts[i] = Double.NaN;
+			if (cache != null) {
+				contrasts[i] = cache.get(subspaceDimensions, decisionThreshold, snapshot);
+			}
+			if (Double.isNaN(contrasts[i])) {
+				dimensions[numberUncached] = subspaceDimensions;
+				seeds[numberUncached] = nextSeed();
+				uncached[numberUncached] = i;
+				numberUncached++;
+			}
+		}
+		if (numberUncached > 0) {
+			renewSliceCache(epoch);
+			double[] results = new double[numberUncached];
+			int[] iterations = new int[numberUncached];
+			if (pool != null) {
+				pool.invoke(new BatchTask(snapshot, dimensions, seeds, results, iterations, 0, numberUncached,
+						decisionThreshold));
+			} else {
+				for (int i = 0; i < numberUncached; i++) {
+					results[i] = evaluate(snapshot, dimensions[i], seeds[i], false, decisionThreshold, iterations, i);
+				}
+			}
+			for (int i = 0; i < numberUncached; i++) {
+				contrasts[uncached[i]] = results[i];
+				numbersOfIterations[uncached[i]] = iterations[i];
+				if (cache != null) {
+					cache.put(dimensions[i], decisionThreshold, snapshot, results[i]);
+				}
+			}
+		}
+		for (int i = 0; i < l; i++) {
+			subspaces.get(i).setContrast(contrasts[i]);
+			subspaces.get(i).setNumberOfIterations(numbersOfIterations[i]);
+		}
+	}
+
+	/**
+	 * Calculates the contrast of all {@link Subspace}s in the given
+	 * {@link SubspaceSet} and stores it in each of them. See
+	 * {@link #evaluateSubspaceContrasts(List)}.
+	 * 
+	 * @param subspaceSet
+	 *            The {@link SubspaceSet}
+	 */
+	public void evaluateSubspaceContrasts(SubspaceSet subspaceSet) {
+		evaluateSubspaceContrasts(subspaceSet.getSubspaces(), Double.NaN);
+	}
+
+	/**
+	 * Calculates the contrast of all {@link Subspace}s in the given
+	 * {@link SubspaceSet} and stores it in each of them. See
+	 * {@link #evaluateSubspaceContrasts(List, double)}.
+	 * 
+	 * @param subspaceSet
+	 *            The {@link SubspaceSet}
+	 * @param decisionThreshold
+	 *            The threshold the contrasts are compared to afterwards. NaN
+	 *            disables the early stopping.
+	 */
+	public void evaluateSubspaceContrasts(SubspaceSet subspaceSet, double decisionThreshold) {
+		evaluateSubspaceContrasts(subspaceSet.getSubspaces(), decisionThreshold);
+	}
+
+	/**
+	 * Calculates the contrast of all two dimensional {@link Subspace}s among
+	 * the first numberOfDimensions dimensions and returns them as a symmetric
+	 * matrix with zeros on the diagonal. See
+	 * {@link #evaluateTwoDimensionalContrasts(List, double)}.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions
+	 * @return The contrast matrix.
+	 */
+	public double[][] evaluateContrastMatrix(int numberOfDimensions) {
+		ArrayList<Subspace> pairs = new ArrayList<Subspace>();
+		for (int i = 0; i < numberOfDimensions - 1; i++) {
+			for (int j = i + 1; j < numberOfDimensions; j++) {
+				pairs.add(new Subspace(i, j));
+			}
+		}
+		evaluateTwoDimensionalContrasts(pairs, Double.NaN);
+		double[][] contrastMatrix = new double[numberOfDimensions][numberOfDimensions];
+		int dim1;
+		int dim2;
+		for (Subspace pair : pairs) {
+			dim1 = pair.getDimension(0);
+			dim2 = pair.getDimension(1);
+			contrastMatrix[dim1][dim2] = pair.getContrast();
+			contrastMatrix[dim2][dim1] = pair.getContrast();
+		}
+		return contrastMatrix;
+	}
+
+	/**
+	 * Calculates the contrast of the given two dimensional {@link Subspace}s
+	 * and stores it in each of them. By default, the pairs are evaluated one
+	 * by one (see {@link #evaluateSubspaceContrasts(List, double)}). If the
+	 * shared slices are enabled (see
+	 * {@link #setSharedTwoDimensionalSlices(boolean)}), every conditioning
+	 * dimension is instead sliced (m + 1) / 2 times and each slice is
+	 * compared to the marginal samples of all reference dimensions it is
+	 * paired with. The contrast of a pair is then the mean of the deviations
+	 * in both directions, like in a usual evaluation where the reference
+	 * dimension is chosen randomly. The shared slices are not used if
+	 * adaptive stopping is enabled and a decision threshold is given, since
+	 * they cannot stop early for single pairs, nor if the
+	 * {@link TwoDimensionalSweep} is enabled.
+	 * 
+	 * @param pairs
+	 *            The two dimensional {@link Subspace}s
+	 * @param decisionThreshold
+	 *            The threshold the contrasts are compared to afterwards. NaN
+	 *            disables the early stopping.
+	 */
+	public void evaluateTwoDimensionalContrasts(List<Subspace> pairs, double decisionThreshold) {
+		if (!sharedSlices || sweep || (adaptive && !Double.isNaN(decisionThreshold))) {
+			evaluateSubspaceContrasts(pairs, decisionThreshold);
+			return;
+		}
+		if (pairs.isEmpty()) {
+			return;
+		}
+		// All the subspaces are evaluated on the same snapshot
+		Snapshot snapshot = acquireCurrentSnapshot();
+		try {
+			evaluateTwoDimensionalContrasts(snapshot, pairs);
+		} finally {
+			snapshot.release();
+		}
+	}
+
+	/**
+	 * Calculates the contrast of all given two dimensional {@link Subspace}s
+	 * on the given {@link Snapshot} with shared slices, see
+	 * {@link #evaluateTwoDimensionalContrasts(List, double)}.
+	 * 
+	 * @param snapshot
+	 *            The {@link Snapshot} the evaluation runs on
+	 * @param pairs
+	 *            The two dimensional {@link Subspace}s
+	 */
+	private void evaluateTwoDimensionalContrasts(Snapshot snapshot, List<Subspace> pairs) {
+		int l = pairs.size();
+		// Collect the reference dimensions of every conditioning dimension
+		int numberOfDimensions = 0;
+		for (Subspace pair : pairs) {
+			if (pair == null || pair.size() != 2) {
+				throw new IllegalArgumentException("Subspace is not two dimensional.");
+			}
+			numberOfDimensions = Math.max(numberOfDimensions, pair.getDimension(1) + 1);
+		}
+		double[] contrasts = new double[l];
+		int[] numbersOfIterations = new int[l];
+		// The number of uncached pairs of every dimension
+		int[] degrees = new int[numberOfDimensions];
+		boolean uncached = false;
+		for (int i = 0; i < l; i++) {
+			Subspace pair = pairs.get(i);
+			contrasts[i] = Double.NaN;
+			if (cache != null) {
+				contrasts[i] = cache.get(pair.getDimensions(), Double.NaN, snapshot);
+			}
+			if (Double.isNaN(contrasts[i])) {
+				degrees[pair.getDimension(0)]++;
+				degrees[pair.getDimension(1)]++;
+				uncached = true;
+			}
+		}
+		if (uncached) {
+			// The sorted reference dimensions of every conditioning dimension,
+			// so that the memory grows with the number of pairs only
+			int[][] references = new int[numberOfDimensions][];
+			for (int c = 0; c < numberOfDimensions; c++) {
+				references[c] = new int[degrees[c]];
+				degrees[c] = 0;
+			}
+			int dim1;
+			int dim2;
+			for (int i = 0; i < l; i++) {
+				if (Double.isNaN(contrasts[i])) {
+					dim1 = pairs.get(i).getDimension(0);
+					dim2 = pairs.get(i).getDimension(1);
+					references[dim1][degrees[dim1]++] = dim2;
+					references[dim2][degrees[dim2]++] = dim1;
+				}
+			}
+			double[][] sums = new double[numberOfDimensions][];
+			int[][] counts = new int[numberOfDimensions][];
+			for (int c = 0; c < numberOfDimensions; c++) {
+				references[c] = sortDistinct(references[c]);
+				sums[c] = new double[references[c].length];
+				counts[c] = new int[references[c].length];
+			}
+			long seed = nextSeed();
+			if (pool != null) {
+				pool.invoke(new ConditioningTask(snapshot, references, seed, sums, counts, 0, numberOfDimensions));
+			} else {
+				for (int c = 0; c < numberOfDimensions; c++) {
+					conditionOn(snapshot, c, references[c], seed, sums[c], counts[c]);
+				}
+			}
+			int iterations = 2 * ((m + 1) / 2);
+			int position1;
+			int position2;
+			for (int i = 0; i < l; i++) {
+				if (Double.isNaN(contrasts[i])) {
+					dim1 = pairs.get(i).getDimension(0);
+					dim2 = pairs.get(i).getDimension(1);
+					// The positions of each dimension among the references of the
+					// other one
+					position2 = Arrays.binarySearch(references[dim1], dim2);
+					position1 = Arrays.binarySearch(references[dim2], dim1);
+					contrasts[i] = 0;
+					if (counts[dim1][position2] + counts[dim2][position1] > 0) {
+						contrasts[i] = (sums[dim1][position2] + sums[dim2][position1])
+								/ (counts[dim1][position2] + counts[dim2][position1]);
+					}
+					if (cache != null) {
+						cache.put(pairs.get(i).getDimensions(), Double.NaN, snapshot, contrasts[i]);
+					}
+					numbersOfIterations[i] = iterations;
+					totalNumberOfIterations.addAndGet(iterations);
+				}
+			}
+		}
+		for (int i = 0; i < l; i++) {
+			pairs.get(i).setContrast(contrasts[i]);
+			pairs.get(i).setNumberOfIterations(numbersOfIterations[i]);
+		}
+	}
+
+	/**
+	 * Sorts the given dimensions and removes the duplicates.
+	 * 
+	 * @param dimensions
+	 *            The dimensions, sorted in place
+	 * @return The distinct dimensions in ascending order.
+	 */
+	private static int[] sortDistinct(int[] dimensions) {
+		Arrays.sort(dimensions);
+		int distinct = 0;
+		for (int i = 0; i < dimensions.length; i++) {
+			if (i == 0 || dimensions[i] != dimensions[i - 1]) {
+				dimensions[distinct] = dimensions[i];
+				distinct++;
+			}
+		}
+		return distinct == dimensions.length ? dimensions : Arrays.copyOf(dimensions, distinct);
+	}
+
+	/**
+	 * Checks whether the given {@link Subspace} can be evaluated.
+	 * 
+	 * @param subspace
+	 *            The {@link Subspace}
+	 */
+	private void checkSubspace(Subspace subspace) {
+		if (subspace == null || subspace.size() < 2) {
 			throw new IllegalArgumentException("Subspace too small or null.");
 		}
+	}
+
+	/**
+	 * Assigns the {@link SliceCache} to the given epoch of the
+	 * {@link SummarisationAdapter}, if it belongs to an older one.
+	 * 
+	 * @param epoch
+	 *            The current epoch
+	 */
+	private void renewSliceCache(long epoch) {
+		if (sliceCache != null && sliceCache.getEpoch() != epoch) {
+			sliceCache.renew(epoch, nextSeed());
+		}
+	}
+
+	/**
+	 * Returns the seed for the next evaluation.
+	 * 
+	 * @return The seed.
+	 */
+	private long nextSeed() {
+		synchronized (seedGenerator) {
+			return seedGenerator.nextLong();
+		}
+	}
+
+	/**
+	 * Carries out the Monte Carlo iterations for the given dimensions and
+	 * returns the mean deviation.
+	 * 
+	 * @param snapshot
+	 *            The {@link Snapshot} the evaluation runs on
+	 * @param dimensions
+	 *            The dimensions of the {@link Subspace}
+	 * @param seed
+	 *            The seed of this evaluation
+	 * @param parallel
+	 *            Whether the iterations should be distributed over the
+	 *            {@link ForkJoinPool}
+	 * @param decisionThreshold
+	 *            The threshold for the early stopping, NaN if the iterations
+	 *            should not stop early
+	 * @param iterations
+	 *            The array receiving the number of iterations carried out
+	 * @param index
+	 *            The position of this evaluation in the iterations array
+	 * @return The contrast.
+	 */
+	private double evaluate(Snapshot snapshot, int[] dimensions, long seed, boolean parallel, double decisionThreshold,
+			int[] iterations, int index) {
+		if (sweep && dimensions.length == 2) {
+			iterations[index] = 0;
+			return sweeps.get().evaluate(snapshot, dimensions[0], dimensions[1]);
+		}
+		// Calculate the fraction of instances selected per dimension
+		double selectionAlpha = Math.pow(alpha, 1.0 / (dimensions.length - 1));
+		// The intermediate results of the iterations are collected in an array
+		// and summed up in a fixed order afterwards, so that the result is the
+		// same for every parallelism.
+		double[] deviations = arenas.get().getDeviations(m);
+		// The sampling plan of this evaluation, null for independent sampling
+		SamplingPlan plan = null;
+		if (samplingStrategy != SamplingStrategy.RANDOM) {
+			plan = plans.get();
+			plan.prepare(samplingStrategy, dimensions.length, m, seed, true);
+		}
+		boolean stopEarly = adaptive && !Double.isNaN(decisionThreshold);
+		int blockSize = stopEarly ? minIterations : m;
+		int from = 0;
+		int to;
+		// Running mean and sum of squared differences (Welford) of the valid
+		// deviations
+		int count = 0;
+		double runningMean = 0;
+		double squaredDifferences = 0;
+		double delta;
+		double halfWidth;
+		while (from < m) {
+			to = Math.min(m, from + blockSize);
+			if (parallel) {
+				int sequentialThreshold = Math.max(1, (to - from) / (4 * parallelism));
+				pool.invoke(new MonteCarloTask(snapshot, dimensions, selectionAlpha, seed, plan, deviations, from, to,
+						sequentialThreshold));
+			} else {
+				for (int i = from; i < to; i++) {
+					deviations[i] = calculateDeviation(snapshot, dimensions, selectionAlpha, seed, plan, i);
+				}
+			}
+			if (stopEarly) {
+				for (int i = from; i < to; i++) {
+					if (!Double.isNaN(deviations[i])) {
+						count++;
+						delta = deviations[i] - runningMean;
+						runningMean += delta / count;
+						squaredDifferences += delta * (deviations[i] - runningMean);
+					}
+				}
+			}
+			from = to;
+			if (stopEarly && count > 1) {
+				halfWidth = z * Math.sqrt(squaredDifferences / (count - 1) / count);
+				if (runningMean - halfWidth > decisionThreshold || runningMean + halfWidth < decisionThreshold) {
+					break;
+				}
+			}
+		}
+		iterations[index] = from;
+		totalNumberOfIterations.addAndGet(from);
 		// Variable for collecting the intermediate results of the iterations
 		double sum = 0;
 		// A deviation could be NaN, so we wont count that calculation
 		int numberOfCorrectTests = 0;
-		// Calculate the fraction of instances selected per dimension
-		double selectionAlpha = Math.pow(alpha, 1.0 / (subspace.size() - 1));
-		int[] shuffledDimensions;
-		DataBundle projectedData;
-		DataBundle slicedData;
-		double deviation;
-		// Do Monte Carlo iterations
-		for (int i = 0; i < m; i++) {
-			shuffledDimensions = subspace.getDimensions();
-			// Shuffle dimensions
-			MathArrays.shuffle(shuffledDimensions);
-			// Get the projected data
-			projectedData = summarisationAdapter.getProjectedData(shuffledDimensions[shuffledDimensions.length - 1]);		
-			// Get the randomly sliced data
-			slicedData = summarisationAdapter.getSlicedData(shuffledDimensions, selectionAlpha);
-			if (slicedData.size() > 1) {
-				// Calculate the deviation and add it to the overall sum
-				deviation = statisticalTest.calculateWeightedDeviation(projectedData, slicedData);
-				if (!Double.isNaN(deviation)) {
-					sum += deviation;
-					numberOfCorrectTests++;
-				}
-			} else {
-				// System.out.println("Slice too small: " + slicedData.size());
+		for (int i = 0; i < from; i++) {
+			if (!Double.isNaN(deviations[i])) {
+				sum += deviations[i];
+				numberOfCorrectTests++;
 			}
 		}
 		// Return the mean of the intermediate results. If all results were NaN,
@@ -139,4 +1084,509 @@ public class Contrast {
 		}
 		return mean;
 	}
+
+	/**
+	 * Carries out a single Monte Carlo iteration: The dimensions are shuffled,
+	 * the data is sliced on all but the last dimension and the slice is
+	 * compared to the marginal sample of the last dimension. The iteration
+	 * works on the {@link ScratchArena} of the calling thread.
+	 * 
+	 * @param snapshot
+	 *            The {@link Snapshot} the evaluation runs on
+	 * @param dimensions
+	 *            The dimensions of the {@link Subspace}
+	 * @param selectionAlpha
+	 *            The fraction of instances selected per dimension
+	 * @param seed
+	 *            The seed of the evaluation
+	 * @param plan
+	 *            The {@link SamplingPlan} of the evaluation, null for
+	 *            independent sampling
+	 * @param iteration
+	 *            The number of the iteration
+	 * @return The deviation, or NaN if the deviation could not be calculated.
+	 */
+	private double calculateDeviation(Snapshot snapshot, int[] dimensions, double selectionAlpha, long seed,
+			SamplingPlan plan, int iteration) {
+		ScratchArena arena = arenas.get();
+		Random generator = arena.getGenerator();
+		generator.setSeed(iterationSeed(seed, iteration));
+		int k = dimensions.length;
+		int[] shuffledDimensions = arena.getDimensions(k);
+		System.arraycopy(dimensions, 0, shuffledDimensions, 0, k);
+		if (plan == null) {
+			// Shuffle dimensions
+			shuffle(shuffledDimensions, k, generator);
+			arena.getSelection().setStartingPositions(null);
+		} else {
+			// Move the reference dimension of this iteration to the end and
+			// shuffle the conditioning dimensions
+			int reference = plan.getReference(iteration);
+			shuffledDimensions[k - 1] = dimensions[reference];
+			shuffledDimensions[reference] = dimensions[k - 1];
+			shuffle(shuffledDimensions, k - 1, generator);
+			double[] positions = arena.getPositions(k - 1);
+			plan.fillPositions(iteration, generator, positions);
+			arena.getSelection().setStartingPositions(positions);
+		}
+		// Get the marginal data, which is sorted once per snapshot
+		DataBundle marginal = snapshot.getMarginal(shuffledDimensions[shuffledDimensions.length - 1]);
+		// Get the randomly sliced data
+		int sliceSize;
+		SliceCache slices = sliceCache;
+		if (slices == null) {
+			sliceSize = snapshot.getSlicedData(shuffledDimensions, selectionAlpha, generator, arena);
+		} else {
+			sliceSize = getSharedSlicedData(snapshot, slices, shuffledDimensions, selectionAlpha, iteration, arena);
+		}
+		if (sliceSize > 1) {
+			// Calculate the deviation
+			return statisticalTest.calculateWeightedDeviationToMarginal(marginal, arena);
+		}
+		// System.out.println("Slice too small: " + sliceSize);
+		return Double.NaN;
+	}
+
+	/**
+	 * Slices the data (m + 1) / 2 times on the given conditioning dimension
+	 * and adds the deviations of the conditional samples of all given
+	 * reference dimensions to the sums.
+	 * 
+	 * @param snapshot
+	 *            The {@link Snapshot} the evaluation runs on
+	 * @param conditioningDimension
+	 *            The conditioning dimension
+	 * @param references
+	 *            The reference dimensions
+	 * @param seed
+	 *            The seed of the evaluation
+	 * @param sums
+	 *            The sums of the deviations, at the positions of the
+	 *            reference dimensions in references
+	 * @param counts
+	 *            The number of valid deviations, at the positions of the
+	 *            reference dimensions in references
+	 */
+	private void conditionOn(Snapshot snapshot, int conditioningDimension, int[] references, long seed,
+			double[] sums, int[] counts) {
+		if (references.length == 0) {
+			return;
+		}
+		ScratchArena arena = arenas.get();
+		Random generator = arena.getGenerator();
+		long conditioningSeed = iterationSeed(seed, conditioningDimension);
+		int iterations = (m + 1) / 2;
+		SamplingPlan plan = null;
+		double[] positions = arena.getPositions(1);
+		if (samplingStrategy != SamplingStrategy.RANDOM) {
+			plan = plans.get();
+			plan.prepare(samplingStrategy, 2, iterations, conditioningSeed, false);
+		}
+		double deviation;
+		for (int i = 0; i < iterations; i++) {
+			generator.setSeed(iterationSeed(conditioningSeed, i));
+			if (plan == null) {
+				arena.getSelection().setStartingPositions(null);
+			} else {
+				plan.fillPositions(i, generator, positions);
+				arena.getSelection().setStartingPositions(positions);
+			}
+			snapshot.getSlice(conditioningDimension, alpha, generator, arena);
+			for (int k = 0; k < references.length; k++) {
+				if (snapshot.getSlicedData(references[k], arena) > 1) {
+					deviation = statisticalTest.calculateWeightedDeviationToMarginal(
+							snapshot.getMarginal(references[k]), arena);
+					if (!Double.isNaN(deviation)) {
+						sums[k] += deviation;
+						counts[k]++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Slices the data on the conditioning dimensions in ascending order,
+	 * reusing the cached slices of the longest known prefix. The block
+	 * selections of a prefix only depend on the prefix, the iteration and the
+	 * seed of the {@link SliceCache}. The conditional sample is stored in the
+	 * {@link ScratchArena}.
+	 * 
+	 * @param snapshot
+	 *            The {@link Snapshot} the evaluation runs on
+	 * @param slices
+	 *            The {@link SliceCache}
+	 * @param shuffledDimensions
+	 *            The dimensions, the last one is the reference dimension
+	 * @param selectionAlpha
+	 *            The fraction of instances selected per dimension
+	 * @param iteration
+	 *            The number of the iteration
+	 * @param arena
+	 *            The {@link ScratchArena} of the calling thread
+	 * @return The size of the conditional sample.
+	 */
+	private int getSharedSlicedData(Snapshot snapshot, SliceCache slices, int[] shuffledDimensions,
+			double selectionAlpha, int iteration, ScratchArena arena) {
+		int k = shuffledDimensions.length;
+		Arrays.sort(shuffledDimensions, 0, k - 1);
+		// The seed is read once, so that a concurrent renewal of the cache
+		// cannot mix slices derived from different seeds
+		long seed = slices.getSeed();
+		// Find the longest cached prefix
+		ConditionalSlice slice = null;
+		int length = k - 1;
+		long epoch = snapshot.getEpoch();
+		while (length > 0
+				&& (slice = slices.get(epoch, seed, shuffledDimensions, length, selectionAlpha, iteration)) == null) {
+			length--;
+		}
+		// Narrow it by the remaining conditioning dimensions
+		Random sliceGenerator = arena.getSliceGenerator();
+		long prefixSeed = seed;
+		for (int j = 0; j < length; j++) {
+			prefixSeed = iterationSeed(prefixSeed, shuffledDimensions[j]);
+		}
+		arena.getSelection().setStartingPositions(null);
+		for (int j = length; j < k - 1; j++) {
+			prefixSeed = iterationSeed(prefixSeed, shuffledDimensions[j]);
+			sliceGenerator.setSeed(iterationSeed(prefixSeed, iteration));
+			slice = snapshot.getConditionalSlice(slice, shuffledDimensions[j], selectionAlpha, sliceGenerator, arena);
+			slices.put(epoch, seed, shuffledDimensions, j + 1, selectionAlpha, iteration, slice);
+		}
+		return snapshot.getSlicedData(slice, shuffledDimensions[k - 1], arena);
+	}
+
+	/**
+	 * Derives the seed of the random number generator for a single Monte Carlo
+	 * iteration.
+	 * 
+	 * @param seed
+	 *            The seed of the evaluation
+	 * @param iteration
+	 *            The number of the iteration
+	 * @return The seed of the iteration.
+	 */
+	private static long iterationSeed(long seed, int iteration) {
+		// SplitMix64 finaliser to decorrelate the seeds of consecutive
+		// iterations
+		long z = seed + (iteration + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Shuffles the first entries of the given array in place (Fisher-Yates).
+	 * 
+	 * @param array
+	 *            The array
+	 * @param length
+	 *            The number of entries to shuffle
+	 * @param generator
+	 *            The random number generator
+	 */
+	private static void shuffle(int[] array, int length, Random generator) {
+		int temp;
+		int j;
+		for (int i = length - 1; i > 0; i--) {
+			j = generator.nextInt(i + 1);
+			temp = array[i];
+			array[i] = array[j];
+			array[j] = temp;
+		}
+	}
+
+	/**
+	 * A task carrying out a range of Monte Carlo iterations. The range is split
+	 * recursively until it is small enough to be processed sequentially.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private class MonteCarloTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Snapshot snapshot;
+		private final int[] dimensions;
+		private final double selectionAlpha;
+		private final long seed;
+		private final SamplingPlan plan;
+		private final double[] deviations;
+		private final int from;
+		private final int to;
+		private final int sequentialThreshold;
+
+		private MonteCarloTask(Snapshot snapshot, int[] dimensions, double selectionAlpha, long seed,
+				SamplingPlan plan, double[] deviations, int from, int to, int sequentialThreshold) {
+			this.snapshot = snapshot;
+			this.dimensions = dimensions;
+			this.selectionAlpha = selectionAlpha;
+			this.seed = seed;
+			this.plan = plan;
+			this.deviations = deviations;
+			this.from = from;
+			this.to = to;
+			this.sequentialThreshold = sequentialThreshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= sequentialThreshold) {
+				for (int i = from; i < to; i++) {
+					deviations[i] = calculateDeviation(snapshot, dimensions, selectionAlpha, seed, plan, i);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(
+						new MonteCarloTask(snapshot, dimensions, selectionAlpha, seed, plan, deviations, from, middle,
+								sequentialThreshold),
+						new MonteCarloTask(snapshot, dimensions, selectionAlpha, seed, plan, deviations, middle, to,
+								sequentialThreshold));
+			}
+		}
+	}
+
+	/**
+	 * A task slicing a range of conditioning dimensions for the two
+	 * dimensional contrasts. The range is split recursively until a single
+	 * dimension remains. Every task writes only the rows of its dimensions.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private class ConditioningTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Snapshot snapshot;
+		private final int[][] references;
+		private final long seed;
+		private final double[][] sums;
+		private final int[][] counts;
+		private final int from;
+		private final int to;
+
+		private ConditioningTask(Snapshot snapshot, int[][] references, long seed, double[][] sums, int[][] counts,
+				int from, int to) {
+			this.snapshot = snapshot;
+			this.references = references;
+			this.seed = seed;
+			this.sums = sums;
+			this.counts = counts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				conditionOn(snapshot, from, references[from], seed, sums[from], counts[from]);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ConditioningTask(snapshot, references, seed, sums, counts, from, middle),
+						new ConditioningTask(snapshot, references, seed, sums, counts, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * A task evaluating a range of {@link Subspace}s of a batch. The range is
+	 * split recursively until a single {@link Subspace} remains, which is
+	 * evaluated sequentially.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private class BatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Snapshot snapshot;
+		private final int[][] dimensions;
+		private final long[] seeds;
+		private final double[] contrasts;
+		private final int[] iterations;
+		private final int from;
+		private final int to;
+		private final double decisionThreshold;
+
+		private BatchTask(Snapshot snapshot, int[][] dimensions, long[] seeds, double[] contrasts, int[] iterations,
+				int from, int to, double decisionThreshold) {
+			this.snapshot = snapshot;
+			this.dimensions = dimensions;
+			this.seeds = seeds;
+			this.contrasts = contrasts;
+			this.iterations = iterations;
+			this.from = from;
+			this.to = to;
+			this.decisionThreshold = decisionThreshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				contrasts[from] = evaluate(snapshot, dimensions[from], seeds[from], false, decisionThreshold,
+						iterations, from);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(
+						new BatchTask(snapshot, dimensions, seeds, contrasts, iterations, from, middle,
+								decisionThreshold),
+						new BatchTask(snapshot, dimensions, seeds, contrasts, iterations, middle, to,
+								decisionThreshold));
+			}
+		}
+	}
+
+	/**
+	 * The per evaluation state of the variance reducing sampling strategies.
+	 * A plan is prepared by the thread starting an evaluation and only read
+	 * by the threads carrying out its iterations.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static class SamplingPlan {
+
+		/**
+		 * The first prime numbers, the bases of the Halton sequence.
+		 */
+		private static final int[] PRIMES = new int[1024];
+
+		static {
+			int count = 0;
+			for (int candidate = 2; count < PRIMES.length; candidate++) {
+				boolean prime = true;
+				for (int i = 0; i < count && PRIMES[i] * PRIMES[i] <= candidate; i++) {
+					if (candidate % PRIMES[i] == 0) {
+						prime = false;
+						break;
+					}
+				}
+				if (prime) {
+					PRIMES[count] = candidate;
+					count++;
+				}
+			}
+		}
+
+		private final Random generator = new Random();
+		private SamplingStrategy strategy;
+		private boolean rotating;
+		private int numberOfDimensions;
+		private int m;
+		private int offset;
+		private int[][] strata = new int[0][0];
+		private double[] shifts = new double[0];
+
+		/**
+		 * Prepares the plan for an evaluation.
+		 * 
+		 * @param strategy
+		 *            The {@link SamplingStrategy}, either STRATIFIED or HALTON
+		 * @param numberOfDimensions
+		 *            The number of dimensions of the {@link Subspace}
+		 * @param m
+		 *            The number of Monte Carlo iterations
+		 * @param seed
+		 *            The seed of the evaluation
+		 * @param rotating
+		 *            Whether the reference dimension takes turns between the
+		 *            iterations (see {@link #getReference(int)})
+		 */
+		private void prepare(SamplingStrategy strategy, int numberOfDimensions, int m, long seed,
+				boolean rotating) {
+			this.strategy = strategy;
+			this.rotating = rotating;
+			this.numberOfDimensions = numberOfDimensions;
+			this.m = m;
+			generator.setSeed(iterationSeed(seed, -1));
+			offset = generator.nextInt(numberOfDimensions);
+			int steps = numberOfDimensions - 1;
+			if (strategy == SamplingStrategy.STRATIFIED) {
+				if (strata.length < steps || strata[0].length < m) {
+					strata = new int[steps][m];
+				}
+				for (int j = 0; j < steps; j++) {
+					for (int i = 0; i < m; i++) {
+						strata[j][i] = i;
+					}
+					shuffle(strata[j], m, generator);
+				}
+			} else {
+				if (shifts.length < steps) {
+					shifts = new double[steps];
+				}
+				for (int j = 0; j < steps; j++) {
+					shifts[j] = generator.nextDouble();
+				}
+			}
+		}
+
+		/**
+		 * Returns the index of the reference dimension of the given iteration.
+		 * The dimensions take turns, so that each is the reference dimension
+		 * equally often.
+		 * 
+		 * @param iteration
+		 *            The number of the iteration
+		 * @return The index of the reference dimension.
+		 */
+		private int getReference(int iteration) {
+			return (iteration + offset) % numberOfDimensions;
+		}
+
+		/**
+		 * Fills in the relative starting positions of the slices of the given
+		 * iteration, one per conditioning dimension.
+		 * 
+		 * @param iteration
+		 *            The number of the iteration
+		 * @param generator
+		 *            The random number generator of the iteration
+		 * @param positions
+		 *            The array receiving the positions
+		 */
+		private void fillPositions(int iteration, Random generator, double[] positions) {
+			// The iterations sharing a reference dimension take consecutive
+			// points of the Halton sequence, otherwise the turns of the
+			// reference dimension would align with its digits
+			int point = rotating ? iteration / numberOfDimensions : iteration;
+			for (int j = 0; j < numberOfDimensions - 1; j++) {
+				if (strategy == SamplingStrategy.STRATIFIED) {
+					// A uniform position inside the stratum of the iteration
+					positions[j] = (strata[j][iteration] + generator.nextDouble()) / m;
+				} else {
+					// Cranley-Patterson rotation of the Halton point
+					positions[j] = radicalInverse(point + 1, PRIMES[j % PRIMES.length]) + shifts[j];
+					if (positions[j] >= 1) {
+						positions[j] -= 1;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the radical inverse of a number in the given base, the
+		 * coordinate of the Halton sequence.
+		 * 
+		 * @param i
+		 *            The number
+		 * @param base
+		 *            The base
+		 * @return The radical inverse in [0, 1).
+		 */
+		private static double radicalInverse(int i, int base) {
+			double factor = 1;
+			double result = 0;
+			while (i > 0) {
+				factor /= base;
+				result += factor * (i % base);
+				i /= base;
+			}
+			return result;
+		}
+	}
 }
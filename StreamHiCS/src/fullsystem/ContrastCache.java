@@ -0,0 +1,245 @@
+package fullsystem;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import streamdatastructures.Snapshot;
+import streamdatastructures.SummarisationAdapter;
+import streamdatastructures.SummarisationAdapter.SlicingMethod;
+import subspace.Subspace;
+
+/**
+ * This class represents a cache for contrast values in front of a
+ * {@link Contrast} instance. An entry is identified by the dimensions of a
+ * {@link Subspace}, regardless of their order, and stores the epoch of the
+ * {@link SummarisationAdapter} it was calculated at. It is reused as long as
+ * the epoch is unchanged or, if a tolerance is set, as long as fewer than
+ * tolerance many {@link weka.core.Instance}s were added since. An entry is
+ * never returned for a {@link Snapshot} older than the entry, and a newer
+ * entry is not replaced by one calculated on an older {@link Snapshot}. The
+ * cache holds a bounded number of entries and evicts the least recently used
+ * one.
+ * 
+ * An entry is only returned for a {@link Snapshot} with the same
+ * {@link SlicingMethod}. The other settings of the evaluation are not part of
+ * an entry: a cache belongs to a single {@link Contrast} instance, which
+ * clears it when its settings change.
+ * 
+ * @author agent
+ *
+ */
+public class ContrastCache {
+
+	/**
+	 * The maximum number of entries.
+	 */
+	private int maxSize;
+
+	/**
+	 * An entry is valid while fewer than tolerance changes of the
+	 * {@link SummarisationAdapter} happened since it was calculated. With 0
+	 * or 1 an entry is only valid for the epoch it was calculated at.
+	 */
+	private int tolerance;
+
+	/**
+	 * The entries in order of their last access.
+	 */
+	private LinkedHashMap<Key, Entry> entries;
+
+	/**
+	 * The number of lookups which returned a value.
+	 */
+	private long hits = 0;
+
+	/**
+	 * The number of lookups which did not return a value.
+	 */
+	private long misses = 0;
+
+	/**
+	 * Creates an instance of this class. Entries are only valid while the
+	 * epoch is unchanged.
+	 * 
+	 * @param maxSize
+	 *            The maximum number of entries. Must be positive.
+	 */
+	public ContrastCache(int maxSize) {
+		this(maxSize, 0);
+	}
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param maxSize
+	 *            The maximum number of entries. Must be positive.
+	 * @param tolerance
+	 *            An entry stays valid while fewer than this number of
+	 *            {@link weka.core.Instance}s were added. Must not be
+	 *            negative.
+	 */
+	public ContrastCache(int maxSize, int tolerance) {
+		if (maxSize <= 0 || tolerance < 0) {
+			throw new IllegalArgumentException("Non-positive size or negative tolerance.");
+		}
+		this.maxSize = maxSize;
+		this.tolerance = tolerance;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > ContrastCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Looks up the contrast for the given dimensions.
+	 * 
+	 * @param dimensions
+	 *            The dimensions of the {@link Subspace}
+	 * @param decisionThreshold
+	 *            The decision threshold of the evaluation, NaN for a full
+	 *            evaluation. An entry calculated with early stopping is only
+	 *            returned for the same decision threshold.
+	 * @param snapshot
+	 *            The {@link Snapshot} of the current state of the
+	 *            {@link SummarisationAdapter}
+	 * @return The cached contrast, or NaN if there is no valid entry.
+	 */
+	public synchronized double get(int[] dimensions, double decisionThreshold, Snapshot snapshot) {
+		Entry entry = entries.get(new Key(dimensions));
+		long epoch = snapshot.getEpoch();
+		// An entry calculated on a newer state is not valid for an older
+		// snapshot
+		if (entry != null && entry.epoch >= snapshot.getClearEpoch() && epoch >= entry.epoch
+				&& (epoch == entry.epoch || epoch - entry.epoch < tolerance)
+				&& entry.slicingMethod == snapshot.getSlicingMethod()
+				&& (Double.isNaN(entry.decisionThreshold) || entry.decisionThreshold == decisionThreshold)) {
+			hits++;
+			return entry.contrast;
+		}
+		misses++;
+		return Double.NaN;
+	}
+
+	/**
+	 * Stores the contrast for the given dimensions, unless the entry for them
+	 * was calculated on a newer state than the given {@link Snapshot}.
+	 * 
+	 * @param dimensions
+	 *            The dimensions of the {@link Subspace}
+	 * @param decisionThreshold
+	 *            The decision threshold of the evaluation, NaN for a full
+	 *            evaluation
+	 * @param snapshot
+	 *            The {@link Snapshot} the contrast was calculated on
+	 * @param contrast
+	 *            The contrast
+	 */
+	public synchronized void put(int[] dimensions, double decisionThreshold, Snapshot snapshot, double contrast) {
+		Key key = new Key(dimensions);
+		Entry entry = entries.get(key);
+		if (entry != null && entry.epoch > snapshot.getEpoch()) {
+			return;
+		}
+		entries.put(key, new Entry(contrast, decisionThreshold, snapshot.getEpoch(), snapshot.getSlicingMethod()));
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of entries.
+	 * 
+	 * @return The number of entries.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups which returned a value.
+	 * 
+	 * @return The number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups which did not return a value.
+	 * 
+	 * @return The number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Resets the hit and miss counters.
+	 */
+	public synchronized void resetCounters() {
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * The canonical form of a set of dimensions, i.e. the sorted dimensions.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static class Key {
+
+		private final int[] dimensions;
+		private final int hash;
+
+		private Key(int[] dimensions) {
+			this.dimensions = dimensions.clone();
+			Arrays.sort(this.dimensions);
+			this.hash = Arrays.hashCode(this.dimensions);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			return Arrays.equals(dimensions, ((Key) o).dimensions);
+		}
+	}
+
+	/**
+	 * A cached contrast value.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static class Entry {
+
+		private final double contrast;
+		private final double decisionThreshold;
+		private final long epoch;
+		private final SlicingMethod slicingMethod;
+
+		private Entry(double contrast, double decisionThreshold, long epoch, SlicingMethod slicingMethod) {
+			this.contrast = contrast;
+			this.decisionThreshold = decisionThreshold;
+			this.epoch = epoch;
+			this.slicingMethod = slicingMethod;
+		}
+	}
+}
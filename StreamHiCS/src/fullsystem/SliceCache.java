@@ -0,0 +1,252 @@
+package fullsystem;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import streamdatastructures.ConditionalSlice;
+import streamdatastructures.Snapshot;
+import streamdatastructures.SummarisationAdapter;
+import subspace.Subspace;
+
+/**
+ * This class represents a cache for the {@link ConditionalSlice}s of the
+ * Monte Carlo iterations of a {@link Contrast} instance. An entry is
+ * identified by a prefix of sorted conditioning dimensions, the selection
+ * alpha and the number of the iteration. {@link Subspace}s of the same size
+ * whose iterations condition on a common prefix reuse its slice and only
+ * narrow it by their remaining dimensions. The entries are only valid for one
+ * epoch of the {@link SummarisationAdapter}; the cache holds a bounded number
+ * of entries and evicts the least recently used one.
+ * 
+ * @author agent
+ *
+ */
+public class SliceCache {
+
+	/**
+	 * The maximum number of entries.
+	 */
+	private int maxSize;
+
+	/**
+	 * The entries in order of their last access.
+	 */
+	private LinkedHashMap<Key, ConditionalSlice> entries;
+
+	/**
+	 * The epoch of the {@link SummarisationAdapter} the entries belong to.
+	 */
+	private long epoch = -1;
+
+	/**
+	 * The seed the random block selections of the slices are derived from.
+	 */
+	private long seed;
+
+	/**
+	 * The number of lookups which returned a slice.
+	 */
+	private long hits = 0;
+
+	/**
+	 * The number of lookups which did not return a slice.
+	 */
+	private long misses = 0;
+
+	/**
+	 * Creates an instance of this class.
+	 * 
+	 * @param maxSize
+	 *            The maximum number of entries. Must be positive.
+	 */
+	public SliceCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Non-positive size.");
+		}
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<Key, ConditionalSlice>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, ConditionalSlice> eldest) {
+				return size() > SliceCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Removes all entries and assigns the cache to a new epoch.
+	 * 
+	 * @param epoch
+	 *            The epoch of the {@link SummarisationAdapter}
+	 * @param seed
+	 *            The seed the slices of the epoch are derived from
+	 */
+	public synchronized void renew(long epoch, long seed) {
+		entries.clear();
+		this.epoch = epoch;
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the epoch of the {@link SummarisationAdapter} the entries belong
+	 * to.
+	 * 
+	 * @return The epoch, -1 if the cache was not used yet.
+	 */
+	public synchronized long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Returns the seed the slices of the current epoch are derived from.
+	 * 
+	 * @return The seed.
+	 */
+	public synchronized long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Looks up the slice of the given prefix. Slices of other epochs or seeds
+	 * are never returned, since an evaluation on an older {@link Snapshot} may
+	 * run while the cache is renewed for a newer one. An evaluation therefore
+	 * reads the seed once by {@link #getSeed()} and passes it to every lookup,
+	 * so that all slices it uses are derived from the same seed.
+	 * 
+	 * @param epoch
+	 *            The epoch of the {@link Snapshot} the slice is sought for
+	 * @param seed
+	 *            The seed the evaluation derives its slices from
+	 * @param dimensions
+	 *            The conditioning dimensions in ascending order
+	 * @param length
+	 *            The length of the prefix
+	 * @param selectionAlpha
+	 *            The fraction of instances selected per dimension
+	 * @param iteration
+	 *            The number of the Monte Carlo iteration
+	 * @return The cached {@link ConditionalSlice}, or null if there is none.
+	 */
+	public synchronized ConditionalSlice get(long epoch, long seed, int[] dimensions, int length,
+			double selectionAlpha, int iteration) {
+		ConditionalSlice slice = null;
+		if (epoch == this.epoch && seed == this.seed) {
+			slice = entries.get(new Key(dimensions, length, selectionAlpha, iteration));
+		}
+		if (slice != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return slice;
+	}
+
+	/**
+	 * Stores the slice of the given prefix, if it belongs to the epoch and
+	 * seed of the cache.
+	 * 
+	 * @param epoch
+	 *            The epoch of the {@link Snapshot} the slice was taken from
+	 * @param seed
+	 *            The seed the slice was derived from
+	 * @param dimensions
+	 *            The conditioning dimensions in ascending order
+	 * @param length
+	 *            The length of the prefix
+	 * @param selectionAlpha
+	 *            The fraction of instances selected per dimension
+	 * @param iteration
+	 *            The number of the Monte Carlo iteration
+	 * @param slice
+	 *            The {@link ConditionalSlice}
+	 */
+	public synchronized void put(long epoch, long seed, int[] dimensions, int length, double selectionAlpha,
+			int iteration, ConditionalSlice slice) {
+		if (epoch == this.epoch && seed == this.seed) {
+			entries.put(new Key(dimensions, length, selectionAlpha, iteration), slice);
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		epoch = -1;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 * 
+	 * @return The number of entries.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups which returned a slice.
+	 * 
+	 * @return The number of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups which did not return a slice.
+	 * 
+	 * @return The number of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Resets the hit and miss counters.
+	 */
+	public synchronized void resetCounters() {
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * The identification of a slice.
+	 * 
+	 * @author agent
+	 *
+	 */
+	private static class Key {
+
+		private final int[] dimensions;
+		private final double selectionAlpha;
+		private final int iteration;
+		private final int hash;
+
+		private Key(int[] dimensions, int length, double selectionAlpha, int iteration) {
+			this.dimensions = Arrays.copyOf(dimensions, length);
+			this.selectionAlpha = selectionAlpha;
+			this.iteration = iteration;
+			this.hash = 31 * (31 * Arrays.hashCode(this.dimensions) + Double.valueOf(selectionAlpha).hashCode())
+					+ iteration;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return iteration == other.iteration && selectionAlpha == other.selectionAlpha
+					&& Arrays.equals(dimensions, other.dimensions);
+		}
+	}
+}
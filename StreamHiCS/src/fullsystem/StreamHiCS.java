@@ -6,7 +6,7 @@ import changechecker.ChangeChecker;
 import environment.Stopwatch;
 import pruning.AbstractPruner;
 import pruning.TopDownPruner;
-import streamdatastructures.CorrelationSummary;
+import streamdatastructures.CorrelationEstimator;
 import subspace.Subspace;
 import subspace.SubspaceSet;
 import subspacebuilder.SubspaceBuilder;
@@ -59,10 +59,10 @@ public class StreamHiCS implements Callback {
 	private AbstractPruner pruner;
 
 	/**
-	 * The {@link CorrelationSummary} to calculate the Pearsons's correlation
+	 * The {@link CorrelationEstimator} to calculate the Pearsons's correlation
 	 * coefficient for pairs of dimensions.
 	 */
-	private CorrelationSummary correlationSummary;
+	private CorrelationEstimator correlationSummary;
 
 	/**
 	 * The {@link Stopwatch} instance.
@@ -93,13 +93,13 @@ public class StreamHiCS implements Callback {
 	 * @param callback
 	 *            The {@link Callback} instance
 	 * @param correlationSummary
-	 *            The {@link CorrelationSummary}
+	 *            The {@link CorrelationEstimator}
 	 * @param stopwatch
 	 *            The {@link Stopwatch} instance
 	 */
 	public StreamHiCS(double epsilon, double threshold, double pruningDifference, Contrast contrastEvaluator,
 			SubspaceBuilder subspaceBuilder, ChangeChecker changeChecker, Callback callback,
-			CorrelationSummary correlationSummary, Stopwatch stopwatch) {
+			CorrelationEstimator correlationSummary, Stopwatch stopwatch) {
 		correlatedSubspaces = new SubspaceSet();
 		if (epsilon < 0) {
 			throw new IllegalArgumentException("Non-positive input value.");
@@ -196,11 +196,28 @@ public class StreamHiCS implements Callback {
 
 	/**
 	 * Carries out an evaluation of the stored correlated {@link Subspace}s and
-	 * searches for new ones.
+	 * searches for new ones. The evaluation runs on a single
+	 * {@link streamdatastructures.Snapshot} of the summarisation, so that
+	 * instances may be added on another thread meanwhile.
 	 * 
 	 * @return True, if the correlated subspaces were updated, false otherwise.
 	 */
 	public boolean evaluateCorrelatedSubspaces() {
+		contrastEvaluator.pinSnapshot();
+		try {
+			return updateCorrelatedSubspaces();
+		} finally {
+			contrastEvaluator.releaseSnapshot();
+		}
+	}
+
+	/**
+	 * Carries out an evaluation of the stored correlated {@link Subspace}s and
+	 * searches for new ones on the pinned snapshot.
+	 * 
+	 * @return True, if the correlated subspaces were updated, false otherwise.
+	 */
+	private boolean updateCorrelatedSubspaces() {
 		boolean update = false;
 		if (correlatedSubspaces.isEmpty()) {
 			// Find new correlated subspaces
@@ -218,19 +235,24 @@ public class StreamHiCS implements Callback {
 			// the iterator when removing elements at the same time
 			int l = correlatedSubspaces.size();
 			SubspaceSet keep = new SubspaceSet();
+			// Remember the old contrasts, since the evaluation overwrites them
+			double[] oldContrasts = new double[l];
+			for (int i = 0; i < l; i++) {
+				oldContrasts[i] = correlatedSubspaces.getSubspace(i).getContrast();
+			}
+			contrastEvaluator.evaluateSubspaceContrasts(correlatedSubspaces);
 			for (int i = 0; i < l; i++) {
 				Subspace subspace = correlatedSubspaces.getSubspace(i);
-				contrast = contrastEvaluator.evaluateSubspaceContrast(subspace);
+				contrast = subspace.getContrast();
 				// System.out.println(contrast);
 
 				// If contrast has changed more than epsilon or has fallen below
 				// the threshold we start a new complete evaluation.
-				if (Math.abs(contrast - subspace.getContrast()) > epsilon || contrast < threshold) {
+				if (Math.abs(contrast - oldContrasts[i]) > epsilon || contrast < threshold) {
 					update = true;
 				} else {
 					keep.addSubspace(subspace);
 				}
-				subspace.setContrast(contrast);
 			}
 			// If a subspace has changed we update the correlated
 			// subspaces.
@@ -0,0 +1,288 @@
+package fullsystem;
+
+import streamdatastructures.DataBundle;
+import streamdatastructures.Selection;
+import streamdatastructures.Snapshot;
+import subspace.Subspace;
+
+/**
+ * This class calculates the contrast of a two dimensional {@link Subspace}
+ * deterministically. Instead of drawing m random slices, a window of weight
+ * alpha * (total weight) is slid along the sorted order of the conditioning
+ * dimension, and the Kolmogorov-Smirnov deviation of the window from the
+ * marginal sample of the reference dimension is averaged over all windows.
+ * There is one window per instance, grown around it exactly like the block of
+ * a random slice starting at that instance, so the result is the expected
+ * value of the Monte Carlo estimate with infinitely many iterations. The
+ * contrast is the mean of both directions.
+ *
+ * The distribution of the window in the reference dimension is held in a
+ * segment tree over the distinct reference values, storing T * F(g) - S(g) for
+ * every value g, where F is the marginal distribution, S the cumulative weight
+ * of the window and T = alpha * (total weight) the target weight of a window.
+ * Moving the window adds or removes single instances, which is a range update
+ * of the tree, and the deviation is the maximum absolute value divided by T.
+ * All windows of a direction are therefore evaluated in O(n log n).
+ *
+ * The deviation is normalised by the target weight T instead of the weight W
+ * of the window itself. It differs from the exact Kolmogorov-Smirnov statistic
+ * of the window by at most |W - T| / T. For unit weights and distinct values
+ * the window weight is below T + 1, i.e. the error is below 1 / (alpha * n);
+ * for weighted data (e.g. micro-clusters) it is bounded by the largest weight
+ * and the weight of tied values at the edges, divided by T.
+ *
+ * @author agent
+ *
+ */
+public class TwoDimensionalSweep {
+
+	/**
+	 * The relative weight of a window.
+	 */
+	private double alpha;
+
+	/**
+	 * The maximum of the values in the subtree of a node.
+	 */
+	private double[] max;
+
+	/**
+	 * The minimum of the values in the subtree of a node.
+	 */
+	private double[] min;
+
+	/**
+	 * The pending additions to the subtree of a node.
+	 */
+	private double[] lazy;
+
+	/**
+	 * The {@link Selection} determining the window around every instance.
+	 */
+	private Selection selection;
+
+	/**
+	 * Creates an instance of this class.
+	 *
+	 * @param alpha
+	 *            The fraction of the total weight in a window
+	 */
+	public TwoDimensionalSweep(double alpha) {
+		this.alpha = alpha;
+		this.selection = new Selection(0, alpha);
+	}
+
+	/**
+	 * Calculates the contrast of the two dimensional {@link Subspace} of the
+	 * given dimensions as the mean of the sweeps in both directions.
+	 *
+	 * @param snapshot
+	 *            The {@link Snapshot} providing the data
+	 * @param dimension1
+	 *            The first dimension
+	 * @param dimension2
+	 *            The second dimension
+	 * @return The contrast.
+	 */
+	public double evaluate(Snapshot snapshot, int dimension1, int dimension2) {
+		return (sweep(snapshot, dimension1, dimension2) + sweep(snapshot, dimension2, dimension1)) / 2;
+	}
+
+	/**
+	 * Slides the window along the conditioning dimension and returns the mean
+	 * deviation of the windows in the reference dimension.
+	 *
+	 * @param snapshot
+	 *            The {@link Snapshot} providing the data
+	 * @param conditioningDimension
+	 *            The conditioning dimension
+	 * @param referenceDimension
+	 *            The reference dimension
+	 * @return The mean deviation, 0 if no window contains two instances.
+	 */
+	public double sweep(Snapshot snapshot, int conditioningDimension, int referenceDimension) {
+		DataBundle conditioning = snapshot.getMarginal(conditioningDimension);
+		DataBundle reference = snapshot.getMarginal(referenceDimension);
+		int n = conditioning.size();
+		if (n < 2) {
+			return 0;
+		}
+
+		// Group the instances by their value in the reference dimension
+		int[] referenceOrder = reference.getSortedOrder();
+		double[] referenceData = reference.getSortedData();
+		double[] referenceCdf = reference.getSortedCumulativeWeights();
+		int[] groups = new int[n];
+		double[] groupCdf = new double[n];
+		int numberOfGroups = 0;
+		for (int i = 0; i < n; i++) {
+			if (i > 0 && referenceData[i] != referenceData[i - 1]) {
+				numberOfGroups++;
+			}
+			groups[referenceOrder[i]] = numberOfGroups;
+			groupCdf[numberOfGroups] = referenceCdf[i];
+		}
+		numberOfGroups++;
+
+		// The windows along the conditioning dimension
+		int[] order = conditioning.getSortedOrder();
+		double[] data = conditioning.getSortedData();
+		double[] weights = conditioning.getSortedWeights();
+		double[] prefixWeights = conditioning.getSortedPrefixWeights();
+		double target = alpha * prefixWeights[n];
+
+		build(numberOfGroups, groupCdf, target);
+
+		// The current window is [lower, upper], initially empty
+		int lower = 0;
+		int upper = -1;
+		int newLower;
+		int newUpper;
+		int edge;
+		double deviation = 0;
+		double sum = 0;
+		int count = 0;
+		for (int s = 0; s < n; s++) {
+			// The block a random slice starting at the instance would select
+			selection.selectBlock(s, data, prefixWeights, n, 0.000001);
+			newLower = selection.getLower();
+			newUpper = selection.getUpper();
+			if (newLower != lower || newUpper != upper) {
+				// Move the window, only the instances between the old and the
+				// new lower and upper edges enter or leave it. The edges
+				// advance with the starting instance, so all moves together
+				// take O(n log n).
+				edge = Math.max(lower, newLower);
+				for (int i = Math.min(lower, newLower); i < edge; i++) {
+					move(i, lower, upper, newLower, newUpper, groups[order[i]], weights[i], numberOfGroups);
+				}
+				for (int i = Math.max(edge, Math.min(upper, newUpper) + 1); i <= Math.max(upper, newUpper); i++) {
+					move(i, lower, upper, newLower, newUpper, groups[order[i]], weights[i], numberOfGroups);
+				}
+				lower = newLower;
+				upper = newUpper;
+				deviation = Math.max(max[1], -min[1]) / target;
+			}
+			if (upper - lower > 0) {
+				sum += deviation;
+				count++;
+			}
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+		return sum / count;
+	}
+
+	/**
+	 * Adds the instance at the given position of the sorted order to the
+	 * window if it is only in the new window, or removes it if it is only in
+	 * the old one.
+	 *
+	 * @param i
+	 *            The position of the instance in the sorted order
+	 * @param lower
+	 *            The lower edge of the old window
+	 * @param upper
+	 *            The upper edge of the old window
+	 * @param newLower
+	 *            The lower edge of the new window
+	 * @param newUpper
+	 *            The upper edge of the new window
+	 * @param group
+	 *            The group of the instance in the reference dimension
+	 * @param weight
+	 *            The weight of the instance
+	 * @param numberOfGroups
+	 *            The number of groups
+	 */
+	private void move(int i, int lower, int upper, int newLower, int newUpper, int group, double weight,
+			int numberOfGroups) {
+		boolean inOld = i >= lower && i <= upper;
+		boolean inNew = i >= newLower && i <= newUpper;
+		if (inNew && !inOld) {
+			add(group, -weight, numberOfGroups);
+		} else if (inOld && !inNew) {
+			add(group, weight, numberOfGroups);
+		}
+	}
+
+	/**
+	 * Builds the segment tree over the groups with the initial values
+	 * target * F(g).
+	 *
+	 * @param numberOfGroups
+	 *            The number of groups
+	 * @param groupCdf
+	 *            The marginal distribution at the end of every group
+	 * @param target
+	 *            The target weight of a window
+	 */
+	private void build(int numberOfGroups, double[] groupCdf, double target) {
+		int size = 1;
+		while (size < numberOfGroups) {
+			size <<= 1;
+		}
+		if (max == null || max.length < 2 * size) {
+			max = new double[2 * size];
+			min = new double[2 * size];
+			lazy = new double[2 * size];
+		}
+		build(1, 0, numberOfGroups - 1, groupCdf, target);
+	}
+
+	/**
+	 * Builds the subtree of a node covering the groups from left to right.
+	 */
+	private void build(int node, int left, int right, double[] groupCdf, double target) {
+		lazy[node] = 0;
+		if (left == right) {
+			max[node] = target * groupCdf[left];
+			min[node] = max[node];
+			return;
+		}
+		int middle = (left + right) >>> 1;
+		build(2 * node, left, middle, groupCdf, target);
+		build(2 * node + 1, middle + 1, right, groupCdf, target);
+		max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+		min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+	}
+
+	/**
+	 * Adds the given value to all groups from the given one on, i.e. removes
+	 * an instance of the group with a negative weight from the window or adds
+	 * it with a positive one.
+	 *
+	 * @param group
+	 *            The group of the instance
+	 * @param value
+	 *            The value to add
+	 * @param numberOfGroups
+	 *            The number of groups
+	 */
+	private void add(int group, double value, int numberOfGroups) {
+		add(1, 0, numberOfGroups - 1, group, value);
+	}
+
+	/**
+	 * Adds the value to the groups from the given one on in the subtree of a
+	 * node covering the groups from left to right.
+	 */
+	private void add(int node, int left, int right, int group, double value) {
+		if (right < group) {
+			return;
+		}
+		if (left >= group) {
+			max[node] += value;
+			min[node] += value;
+			lazy[node] += value;
+			return;
+		}
+		int middle = (left + right) >>> 1;
+		add(2 * node, left, middle, group, value);
+		add(2 * node + 1, middle + 1, right, group, value);
+		max[node] = Math.max(max[2 * node], max[2 * node + 1]) + lazy[node];
+		min[node] = Math.min(min[2 * node], min[2 * node + 1]) + lazy[node];
+	}
+}
@@ -18,6 +18,10 @@ public class Subspace {
 	 * The contrast of the subspace at the time it was last evaluated.
 	 */
 	private double contrast = 0;
+	/**
+	 * The number of Monte Carlo iterations of the last evaluation.
+	 */
+	private int numberOfIterations = 0;
 
 	/**
 	 * Returns the contrast value-
@@ -38,6 +42,28 @@ public class Subspace {
 		this.contrast = contrast;
 	}
 
+	/**
+	 * Returns the number of Monte Carlo iterations carried out by the
+	 * evaluation of the contrast. It is 0 if the contrast was taken from a
+	 * cache or calculated deterministically.
+	 * 
+	 * @return The number of iterations.
+	 */
+	public int getNumberOfIterations() {
+		return numberOfIterations;
+	}
+
+	/**
+	 * Sets the number of Monte Carlo iterations carried out by the evaluation
+	 * of the contrast.
+	 * 
+	 * @param numberOfIterations
+	 *            The number of iterations
+	 */
+	public void setNumberOfIterations(int numberOfIterations) {
+		this.numberOfIterations = numberOfIterations;
+	}
+
 	/**
 	 * Create a {@link Subspace} object.
 	 */
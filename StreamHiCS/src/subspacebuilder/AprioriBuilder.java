@@ -1,7 +1,9 @@
 package subspacebuilder;
 
+import java.util.ArrayList;
+
 import fullsystem.Contrast;
-import streamdatastructures.CorrelationSummary;
+import streamdatastructures.CorrelationEstimator;
 import subspace.Subspace;
 import subspace.SubspaceSet;
 
@@ -45,10 +47,10 @@ public class AprioriBuilder extends SubspaceBuilder {
 	private Contrast contrastEvaluator;
 
 	/**
-	 * The {@link CorrelationSummary} to calculate the Pearsons's correlation
+	 * The {@link CorrelationEstimator} to calculate the Pearsons's correlation
 	 * coefficient for pairs of dimensions.
 	 */
-	private CorrelationSummary correlationSummary;
+	private CorrelationEstimator correlationSummary;
 	// private Stopwatch stopwatch;
 
 	/**
@@ -63,10 +65,10 @@ public class AprioriBuilder extends SubspaceBuilder {
 	 * @param contrastEvaluator
 	 *            The {@link Contrast} instance
 	 * @param correlationSummary
-	 *            The {@link CorrelationSummary}
+	 *            The {@link CorrelationEstimator}
 	 */
 	public AprioriBuilder(int numberOfDimensions, double threshold, int cutoff, Contrast contrastEvaluator,
-			CorrelationSummary correlationSummary) {
+			CorrelationEstimator correlationSummary) {
 		this.correlatedSubspaces = new SubspaceSet();
 		this.numberOfDimensions = numberOfDimensions;
 		this.threshold = threshold;
@@ -79,45 +81,28 @@ public class AprioriBuilder extends SubspaceBuilder {
 	public SubspaceSet buildCorrelatedSubspaces() {
 		correlatedSubspaces.clear();
 		SubspaceSet c_K = new SubspaceSet();
-		double contrast = 0;
 		// Create all 2-dimensional candidates
 		// stopwatch.start("2D-contrast");
-
-		if (correlationSummary != null) {
-			double[][] coefficientMatrix = correlationSummary.getCorrelationMatrix();
-			for (int i = 0; i < numberOfDimensions - 1; i++) {
-				for (int j = i + 1; j < numberOfDimensions; j++) {
-					if (coefficientMatrix[i][j] >= threshold) {
-						Subspace s = new Subspace();
-						s.addDimension(i);
-						s.addDimension(j);
-						contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-						if(contrast >= threshold){
-							s.setContrast(contrast);
-							c_K.addSubspace(s);
-						}
-					}
-				}
-			}
-		} else {
-			for (int i = 0; i < numberOfDimensions - 1; i++) {
-				for (int j = i + 1; j < numberOfDimensions; j++) {
-					Subspace s = new Subspace();
-					s.addDimension(i);
-					s.addDimension(j);
-					// Only use subspaces for the further process which are
-					// correlated
-					contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-					s.setContrast(contrast);
-					if (contrast >= threshold) {
-						c_K.addSubspace(s);
-					}
-				}
+		ArrayList<Subspace> candidates = createTwoDimensionalCandidates(numberOfDimensions, threshold,
+				correlationSummary);
+		// Candidates far from the threshold may be decided early
+		contrastEvaluator.evaluateTwoDimensionalContrasts(candidates, threshold);
+		for (Subspace s : candidates) {
+			// Only use subspaces for the further process which are
+			// correlated
+			if (s.getContrast() >= threshold) {
+				c_K.addSubspace(s);
 			}
 		}
 
 		// stopwatch.stop("2D-contrast");
 
+		// Early stopped contrasts only decide the threshold, so the survivors
+		// are evaluated fully before they are ranked
+		if (contrastEvaluator.isAdaptiveStopping()) {
+			contrastEvaluator.evaluateTwoDimensionalContrasts(c_K.getSubspaces(), Double.NaN);
+		}
+
 		// Select cutoff subspaces
 		c_K.selectTopK(cutoff);
 
@@ -142,8 +127,8 @@ public class AprioriBuilder extends SubspaceBuilder {
 	 */
 	private void aprioriFull(SubspaceSet c_K) {
 		SubspaceSet c_Kplus1 = new SubspaceSet();
+		SubspaceSet candidates = new SubspaceSet();
 		c_K.sort();
-		double contrast = 0;
 		// double meanBaseContrasts = 0;
 		for (int i = 0; i < c_K.size() - 1; i++) {
 			for (int j = i + 1; j < c_K.size(); j++) {
@@ -151,18 +136,23 @@ public class AprioriBuilder extends SubspaceBuilder {
 				// meanBaseContrasts = (c_K.getSubspace(i).getContrast() +
 				// c_K.getSubspace(j).getContrast()) / 2;
 				Subspace kPlus1Candidate = Subspace.mergeFull(c_K.getSubspace(i), c_K.getSubspace(j));
-				if (kPlus1Candidate != null && !c_Kplus1.contains(kPlus1Candidate)) {
-					// Calculate the contrast of the subspace
-					contrast = contrastEvaluator.evaluateSubspaceContrast(kPlus1Candidate);
-					kPlus1Candidate.setContrast(contrast);
-					// contrast > meanBaseContrasts - 0.5*pruningDifference &&
-					if (contrast >= threshold) {
-						c_Kplus1.addSubspace(kPlus1Candidate);
-					}
+				if (kPlus1Candidate != null) {
+					candidates.addSubspace(kPlus1Candidate);
 				}
 			}
 		}
+		// Calculate the contrast of all candidates
+		contrastEvaluator.evaluateSubspaceContrasts(candidates, threshold);
+		for (Subspace kPlus1Candidate : candidates.getSubspaces()) {
+			// contrast > meanBaseContrasts - 0.5*pruningDifference &&
+			if (kPlus1Candidate.getContrast() >= threshold) {
+				c_Kplus1.addSubspace(kPlus1Candidate);
+			}
+		}
 		if (!c_Kplus1.isEmpty()) {
+			if (contrastEvaluator.isAdaptiveStopping()) {
+				contrastEvaluator.evaluateSubspaceContrasts(c_Kplus1);
+			}
 			// Select the subspaces with highest contrast
 			c_Kplus1.selectTopK(cutoff);
 			correlatedSubspaces.addSubspaces(c_Kplus1);
@@ -1,5 +1,6 @@
 package subspacebuilder;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Set;
 import org.jgrapht.UndirectedGraph;
@@ -8,7 +9,7 @@ import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.graph.SimpleGraph;
 
 import fullsystem.Contrast;
-import streamdatastructures.CorrelationSummary;
+import streamdatastructures.CorrelationEstimator;
 import subspace.Subspace;
 import subspace.SubspaceSet;
 
@@ -35,10 +36,10 @@ public class CliqueBuilder extends SubspaceBuilder {
 	private Contrast contrastEvaluator;
 
 	/**
-	 * The {@link CorrelationSummary} to calculate the Pearsons's correlation
+	 * The {@link CorrelationEstimator} to calculate the Pearsons's correlation
 	 * coefficient for pairs of dimensions.
 	 */
-	private CorrelationSummary correlationSummary;
+	private CorrelationEstimator correlationSummary;
 	// private Stopwatch stopwatch;
 
 	/**
@@ -51,10 +52,10 @@ public class CliqueBuilder extends SubspaceBuilder {
 	 * @param contrastEvaluator
 	 *            The {@link Contrast} instance
 	 * @param correlationSummary
-	 *            The {@link CorrelationSummary}
+	 *            The {@link CorrelationEstimator}
 	 */
 	public CliqueBuilder(int numberOfDimensions, double threshold, Contrast contrastEvaluator,
-			CorrelationSummary correlationSummary) {
+			CorrelationEstimator correlationSummary) {
 		this.numberOfDimensions = numberOfDimensions;
 		this.threshold = threshold;
 		this.contrastEvaluator = contrastEvaluator;
@@ -63,7 +64,6 @@ public class CliqueBuilder extends SubspaceBuilder {
 
 	@Override
 	public SubspaceSet buildCorrelatedSubspaces() {
-		double contrast = 0;
 		// Create all 2-dimensional candidates
 		// stopwatch.start("2D-contrast");
 
@@ -74,35 +74,14 @@ public class CliqueBuilder extends SubspaceBuilder {
 			vertices[i] = integer;
 			graph.addVertex(integer);
 		}
-		if (correlationSummary != null) {
-			double[][] coefficientMatrix = correlationSummary.getCorrelationMatrix();
-			for (int i = 0; i < numberOfDimensions - 1; i++) {
-				for (int j = i + 1; j < numberOfDimensions; j++) {
-					if (coefficientMatrix[i][j] >= threshold) {
-						Subspace s = new Subspace();
-						s.addDimension(i);
-						s.addDimension(j);
-						contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-						if (contrast >= threshold) {
-							graph.addEdge(vertices[i], vertices[j]);
-						}
-					}
-				}
-			}
-		} else {
-			for (int i = 0; i < numberOfDimensions - 1; i++) {
-				for (int j = i + 1; j < numberOfDimensions; j++) {
-					Subspace s = new Subspace();
-					s.addDimension(i);
-					s.addDimension(j);
-					// Only use subspaces for the further process which are
-					// correlated
-					contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-					s.setContrast(contrast);
-					if (contrast >= threshold) {
-						graph.addEdge(vertices[i], vertices[j]);
-					}
-				}
+		ArrayList<Subspace> candidates = createTwoDimensionalCandidates(numberOfDimensions, threshold,
+				correlationSummary);
+		contrastEvaluator.evaluateTwoDimensionalContrasts(candidates, threshold);
+		for (Subspace s : candidates) {
+			// Only use subspaces for the further process which are
+			// correlated
+			if (s.getContrast() >= threshold) {
+				graph.addEdge(vertices[s.getDimension(0)], vertices[s.getDimension(1)]);
 			}
 		}
 
@@ -1,9 +1,10 @@
 package subspacebuilder;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 
 import fullsystem.Contrast;
-import streamdatastructures.CorrelationSummary;
+import streamdatastructures.CorrelationEstimator;
 import subspace.Subspace;
 import subspace.SubspaceSet;
 
@@ -40,10 +41,10 @@ public class ComponentBuilder extends SubspaceBuilder {
 	private Contrast contrastEvaluator;
 
 	/**
-	 * The {@link CorrelationSummary} to calculate the Pearsons's correlation
+	 * The {@link CorrelationEstimator} to calculate the Pearsons's correlation
 	 * coefficient for pairs of dimensions.
 	 */
-	private CorrelationSummary correlationSummary;
+	private CorrelationEstimator correlationSummary;
 	// private Stopwatch stopwatch;
 
 	/**
@@ -56,10 +57,10 @@ public class ComponentBuilder extends SubspaceBuilder {
 	 * @param contrastEvaluator
 	 *            The {@link Contrast} instance
 	 * @param correlationSummary
-	 *            The {@link CorrelationSummary}
+	 *            The {@link CorrelationEstimator}
 	 */
 	public ComponentBuilder(int numberOfDimensions, double threshold, Contrast contrastEvaluator,
-			CorrelationSummary correlationSummary) {
+			CorrelationEstimator correlationSummary) {
 		this.numberOfDimensions = numberOfDimensions;
 		this.threshold = threshold;
 		// this.cutoff = cutoff;
@@ -69,46 +70,22 @@ public class ComponentBuilder extends SubspaceBuilder {
 
 	@Override
 	public SubspaceSet buildCorrelatedSubspaces() {
-		double contrast = 0;
 		// Create all 2-dimensional candidates
 		// stopwatch.start("2D-contrast");
 
 		// SubspaceSet set = new SubspaceSet();
 		double[][] adjacencyMatrix = new double[numberOfDimensions][numberOfDimensions];
-		if (correlationSummary != null) {
-			double[][] coefficientMatrix = correlationSummary.getCorrelationMatrix();
-			for (int i = 0; i < numberOfDimensions - 1; i++) {
-				for (int j = i + 1; j < numberOfDimensions; j++) {
-					if (coefficientMatrix[i][j] >= threshold) {
-						Subspace s = new Subspace();
-						s.addDimension(i);
-						s.addDimension(j);
-						contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-						// if (contrast >= threshold) {
-						// set.addSubspace(s);
-						adjacencyMatrix[i][j] = contrast;
-						adjacencyMatrix[j][i] = contrast;
-						// }
-					}
-				}
-			}
-		} else {
-			for (int i = 0; i < numberOfDimensions - 1; i++) {
-				for (int j = i + 1; j < numberOfDimensions; j++) {
-					Subspace s = new Subspace();
-					s.addDimension(i);
-					s.addDimension(j);
-					// Only use subspaces for the further process which are
-					// correlated
-					contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-					s.setContrast(contrast);
-					// if (contrast >= threshold) {
-					adjacencyMatrix[i][j] = contrast;
-					adjacencyMatrix[j][i] = contrast;
-					// set.addSubspace(s);
-					// }
-				}
-			}
+		ArrayList<Subspace> candidates = createTwoDimensionalCandidates(numberOfDimensions, threshold,
+				correlationSummary);
+		// The two-dimensional contrasts are only compared to the threshold
+		contrastEvaluator.evaluateTwoDimensionalContrasts(candidates, threshold);
+		int dim1;
+		int dim2;
+		for (Subspace s : candidates) {
+			dim1 = s.getDimension(0);
+			dim2 = s.getDimension(1);
+			adjacencyMatrix[dim1][dim2] = s.getContrast();
+			adjacencyMatrix[dim2][dim1] = s.getContrast();
 		}
 		// Finding the connected components using depth-first search
 		SubspaceSet correlatedSubspaces = new SubspaceSet();
@@ -132,9 +109,7 @@ public class ComponentBuilder extends SubspaceBuilder {
 				}
 			}
 			if (s.size() > 1) {
-				contrast = contrastEvaluator.evaluateSubspaceContrast(s);
 				//if(contrast >= threshold){
-					s.setContrast(contrast);
 					correlatedSubspaces.addSubspace(s);
 				//}else{
 				//	System.out.println("Discarded: " + s.toString());
@@ -142,6 +117,7 @@ public class ComponentBuilder extends SubspaceBuilder {
 			}
 			nextStart = nextVisit(visited);
 		}
+		contrastEvaluator.evaluateSubspaceContrasts(correlatedSubspaces);
 
 		return correlatedSubspaces;
 	}
@@ -1,5 +1,7 @@
 package subspacebuilder;
 
+import java.util.ArrayList;
+
 import org.apache.commons.math3.util.MathArrays;
 
 import fullsystem.Contrast;
@@ -68,20 +70,25 @@ public class FastBuilder extends SubspaceBuilder {
 		correlatedSubspaces.clear();
 		double contrast = 0;
 		// Create all 2-dimensional candidates
+		ArrayList<Subspace> candidates = new ArrayList<Subspace>();
 		for (int i = 0; i < numberOfDimensions - 1; i++) {
 			for (int j = i + 1; j < numberOfDimensions; j++) {
-				Subspace s = new Subspace();
-				s.addDimension(i);
-				s.addDimension(j);
-				// Only use subspace for the further process which are
-				// correlated
-				contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-				s.setContrast(contrast);
-				if (contrast >= threshold) {
-					correlatedSubspaces.addSubspace(s);
-				}
+				candidates.add(new Subspace(i, j));
 			}
 		}
+		contrastEvaluator.evaluateTwoDimensionalContrasts(candidates, threshold);
+		for (Subspace s : candidates) {
+			// Only use subspace for the further process which are
+			// correlated
+			if (s.getContrast() >= threshold) {
+				correlatedSubspaces.addSubspace(s);
+			}
+		}
+		// Early stopped contrasts only decide the threshold, so the survivors
+		// are evaluated fully before they serve as baseline of the extension
+		if (contrastEvaluator.isAdaptiveStopping()) {
+			contrastEvaluator.evaluateTwoDimensionalContrasts(correlatedSubspaces.getSubspaces(), Double.NaN);
+		}
 
 		if (!correlatedSubspaces.isEmpty()) {
 			// Count the occurence of the dimensions
@@ -1,7 +1,7 @@
 package subspacebuilder;
 
 import fullsystem.Contrast;
-import streamdatastructures.CorrelationSummary;
+import streamdatastructures.CorrelationEstimator;
 import subspace.Subspace;
 import subspace.SubspaceSet;
 
@@ -51,10 +51,10 @@ public class HierarchicalBuilderCutoff extends SubspaceBuilder {
 	private Contrast contrastEvaluator;
 
 	/**
-	 * The {@link CorrelationSummary} to calculate the Pearsons's correlation
+	 * The {@link CorrelationEstimator} to calculate the Pearsons's correlation
 	 * coefficient for pairs of dimensions.
 	 */
-	private CorrelationSummary correlationSummary;
+	private CorrelationEstimator correlationSummary;
 
 	/**
 	 * Holds the contrast of all two-dimensional {@link Subspace}s.
@@ -81,7 +81,7 @@ public class HierarchicalBuilderCutoff extends SubspaceBuilder {
 	 *            in the splitting process
 	 */
 	public HierarchicalBuilderCutoff(int numberOfDimensions, double threshold, int cutoff, Contrast contrastEvaluator,
-			CorrelationSummary correlationSummary, boolean partition) {
+			CorrelationEstimator correlationSummary, boolean partition) {
 		this.correlatedSubspaces = new SubspaceSet();
 		this.notCorrelatedSubspaces = new SubspaceSet();
 		this.numberOfDimensions = numberOfDimensions;
@@ -99,7 +99,8 @@ public class HierarchicalBuilderCutoff extends SubspaceBuilder {
 
 		Subspace fullSpace = new Subspace();
 		if (correlationSummary != null) {
-			contrastMatrix = correlationSummary.getCorrelationMatrix();
+			// Reuse the matrix of the last build
+			contrastMatrix = correlationSummary.getCorrelationMatrix(contrastMatrix);
 
 			boolean add = false;
 			for (int i = 0; i < numberOfDimensions; i++) {
@@ -117,23 +118,10 @@ public class HierarchicalBuilderCutoff extends SubspaceBuilder {
 			 * fullSpace.addDimension(i); }
 			 */
 		} else {
-			contrastMatrix = new double[numberOfDimensions][numberOfDimensions];
-			double contrast = 0;
 			// Calculate the contrast for all two dimensional subspaces and
 			// store them in a lookup matrix since they are needed for
 			// splitting.
-			Subspace s;
-			for (int i = 0; i < numberOfDimensions - 1; i++) {
-				for (int j = i + 1; j < numberOfDimensions; j++) {
-					s = new Subspace();
-					s.addDimension(i);
-					s.addDimension(j);
-					contrast = contrastEvaluator.evaluateSubspaceContrast(s);
-					s.setContrast(contrast);
-					contrastMatrix[i][j] = contrast;
-					contrastMatrix[j][i] = contrast;
-				}
-			}
+			contrastMatrix = contrastEvaluator.evaluateContrastMatrix(numberOfDimensions);
 			// Create the full space
 			for (int i = 0; i < numberOfDimensions; i++) {
 				fullSpace.addDimension(i);
@@ -172,13 +160,14 @@ public class HierarchicalBuilderCutoff extends SubspaceBuilder {
 					// System.out.println(splittingResult.toString());
 					for (Subspace sr : splittingResult.getSubspaces()) {
 						if (sr.size() > 1) {
-							sr.setContrast(contrastEvaluator.evaluateSubspaceContrast(sr));
 							c_Kplus1.addSubspace(sr);
 						}
 					}
 				}
 			}
 		}
+		// Calculate the contrast of all new candidates
+		contrastEvaluator.evaluateSubspaceContrasts(c_Kplus1);
 
 		if (!c_Kplus1.isEmpty()) {
 			// Select the subspaces with highest contrast
@@ -1,5 +1,8 @@
 package subspacebuilder;
 
+import java.util.ArrayList;
+
+import streamdatastructures.CorrelationEstimator;
 import subspace.Subspace;
 import subspace.SubspaceSet;
 
@@ -19,4 +22,45 @@ public abstract class SubspaceBuilder {
 	 */
 	public abstract SubspaceSet buildCorrelatedSubspaces();
 
+	/**
+	 * Creates the two dimensional candidate {@link Subspace}s. Without a
+	 * {@link CorrelationEstimator} all pairs of dimensions are candidates.
+	 * Otherwise the pairs whose correlation coefficient reaches the threshold,
+	 * reduced by the screening margin of an approximate summary, are taken
+	 * from the candidate index of the {@link CorrelationEstimator}, which is
+	 * maintained from then on.
+	 * 
+	 * @param numberOfDimensions
+	 *            The number of dimensions of the full space
+	 * @param threshold
+	 *            The threshold
+	 * @param correlationSummary
+	 *            The {@link CorrelationEstimator}, may be null
+	 * @return The candidate {@link Subspace}s, ordered by their dimensions.
+	 */
+	protected static ArrayList<Subspace> createTwoDimensionalCandidates(int numberOfDimensions, double threshold,
+			CorrelationEstimator correlationSummary) {
+		ArrayList<Subspace> candidates = new ArrayList<Subspace>();
+		if (correlationSummary != null) {
+			// An approximate summary reports the pairs which may reach the
+			// threshold
+			double screeningThreshold = threshold - correlationSummary.getScreeningMargin();
+			correlationSummary.requireCandidateThreshold(screeningThreshold);
+			int numberOfCandidates = correlationSummary.getNumberOfCandidates();
+			for (int c = 0; c < numberOfCandidates; c++) {
+				// The index may have been built for a lower threshold
+				if (correlationSummary.getCandidateCoefficient(c) >= screeningThreshold) {
+					candidates.add(new Subspace(correlationSummary.getCandidateFirstDimension(c),
+							correlationSummary.getCandidateSecondDimension(c)));
+				}
+			}
+		} else {
+			for (int i = 0; i < numberOfDimensions - 1; i++) {
+				for (int j = i + 1; j < numberOfDimensions; j++) {
+					candidates.add(new Subspace(i, j));
+				}
+			}
+		}
+		return candidates;
+	}
 }